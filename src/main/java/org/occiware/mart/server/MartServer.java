@@ -18,25 +18,61 @@
  */
 package org.occiware.mart.server;
 
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
+import org.occiware.mart.server.servlet.impl.DeleteQuery;
+import org.occiware.mart.server.servlet.impl.GetQuery;
+import org.occiware.mart.server.servlet.impl.PostQuery;
+import org.occiware.mart.server.servlet.impl.PutQuery;
+import org.occiware.mart.server.servlet.model.ActionExecutor;
+import org.occiware.mart.server.servlet.model.ActionJobManager;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorExecutor;
+import org.occiware.mart.server.servlet.model.ConnectorGuard;
+import org.occiware.mart.server.servlet.model.ExtensionModelCache;
+import org.occiware.mart.server.servlet.model.RateLimiter;
+import org.occiware.mart.server.servlet.model.RetrieveCache;
+import org.occiware.mart.server.servlet.model.RetrieveExecutor;
+import org.occiware.mart.server.servlet.model.ServerMetrics;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.LoggerConfig;
 import org.occiware.mart.server.servlet.utils.Utils;
+import org.occiware.mart.server.servlet.utils.VirtualThreads;
 
+import javax.net.ssl.SSLSessionContext;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -47,14 +83,116 @@ class MartServer {
     private static final String KEY_PORT = "server.port";
     private static final String KEY_PROTOCOL = "server.protocol";
     private static final String KEY_LOG_DIRECTORY = "server.log.directory";
+    private static final String KEY_INDEX_ATTRIBUTES = "server.index.attributes";
+    private static final String KEY_FILTER_PARALLEL_THRESHOLD = "server.filter.parallel.threshold";
+    private static final String KEY_FILTER_PARALLELISM = "server.filter.parallelism";
+    private static final String KEY_AGGREGATE_ATTRIBUTES = "server.aggregate.attributes";
+    private static final String KEY_ACTION_JOB_THREADS = "server.action.job.threads";
+    private static final String KEY_ACTION_JOB_QUEUE = "server.action.job.queue";
+    private static final String KEY_ACTION_THREADS = "server.action.threads";
+    private static final String KEY_ACTION_PARALLELISM = "server.action.parallelism";
+    private static final String KEY_ACTION_EXTENSION_CONCURRENCY = "server.action.extension.concurrency";
+    private static final String KEY_RETRIEVE_THREADS = "server.retrieve.threads";
+    private static final String KEY_RETRIEVE_QUEUE = "server.retrieve.queue";
+    private static final String KEY_RETRIEVE_TIMEOUT = "server.retrieve.timeout";
+    private static final String KEY_RETRIEVE_CACHE_SIZE = "server.retrieve.cache.size";
+    private static final String KEY_RETRIEVE_CACHE_TTL = "server.retrieve.cache.ttl";
+    private static final String KEY_REQUEST_ASYNC = "server.request.async";
+    private static final String KEY_CONNECTOR_THREADS = "server.connector.threads";
+    private static final String KEY_CONNECTOR_QUEUE = "server.connector.queue";
+    private static final String KEY_CONNECTOR_TIMEOUT = "server.connector.timeout";
+    private static final String KEY_THREADS = "server.threads";
+    private static final String KEY_HTTP_THREADS_MIN = "server.http.threads.min";
+    private static final String KEY_HTTP_THREADS_MAX = "server.http.threads.max";
+    private static final String KEY_HTTP_QUEUE = "server.http.queue";
+    private static final String KEY_HTTP_ACCEPTORS = "server.http.acceptors";
+    private static final String KEY_HTTP_SELECTORS = "server.http.selectors";
+    private static final String KEY_HTTP_IDLE_TIMEOUT = "server.http.idle.timeout";
+    private static final String KEY_HTTP_ACCEPT_QUEUE = "server.http.accept.queue";
+    private static final String KEY_HTTP_OUTPUT_BUFFER = "server.http.output.buffer";
+    private static final String KEY_STARTUP_PARALLEL = "server.startup.parallel";
+    private static final String KEY_SHUTDOWN_TIMEOUT = "server.shutdown.timeout";
+    private static final String KEY_METRICS_JMX = "server.metrics.jmx";
+    private static final String KEY_MODEL_CACHE = "server.model.cache";
+    private static final String KEY_MODEL_CACHE_DIRECTORY = "server.model.cache.directory";
+    private static final String KEY_HTTP2 = "server.http2";
+    private static final String KEY_SSL_KEYSTORE = "server.ssl.keystore";
+    private static final String KEY_SSL_KEYSTORE_PASSWORD = "server.ssl.keystore.password";
+    private static final String KEY_SSL_KEY_PASSWORD = "server.ssl.key.password";
+    private static final String KEY_SSL_KEYSTORE_TYPE = "server.ssl.keystore.type";
+    private static final String KEY_SSL_PROTOCOLS = "server.ssl.protocols";
+    private static final String KEY_SSL_CIPHERS = "server.ssl.ciphers";
+    private static final String KEY_SSL_SESSION_CACHE_SIZE = "server.ssl.session.cache.size";
+    private static final String KEY_SSL_SESSION_TIMEOUT = "server.ssl.session.timeout";
+    private static final String KEY_EXTENSION_PREFIX = "server.extension.";
+    private static final String KEY_RATELIMIT_PREFIX = "server.ratelimit.";
+    private static final String KEY_RATELIMIT_CLIENT = "server.ratelimit.client";
+    private static final String KEY_RATELIMIT_CLIENTS = "server.ratelimit.clients";
+    private static final String RATELIMIT_RATE = "rate";
+    private static final String RATELIMIT_BURST = "burst";
+    private static final String EXTENSION_CONCURRENCY = "concurrency";
+    private static final String EXTENSION_TIMEOUT = "timeout";
+    private static final String EXTENSION_BREAKER_FAILURES = "breaker.failures";
+    private static final String EXTENSION_BREAKER_OPEN = "breaker.open";
+    private static final String THREADS_PLATFORM = "platform";
+    private static final String THREADS_VIRTUAL = "virtual";
     private static final String HTTP_PROTOCOL = "http";
     private static final String HTTPS_PROTOCOL = "https";
     private static String configFilePath;
     private static int port;
     private static String logDirectoryPath;
     private static String httpProtocol;
+    private static String indexAttributes;
+    private static int filterParallelThreshold;
+    private static int filterParallelism;
+    private static String aggregateAttributes;
+    private static int actionJobThreads;
+    private static int actionJobQueue;
+    private static int actionThreads;
+    private static int actionParallelism;
+    private static int actionExtensionConcurrency;
+    private static int retrieveThreads;
+    private static int retrieveQueue;
+    private static int retrieveTimeout;
+    private static int retrieveCacheSize;
+    private static int retrieveCacheTtl;
+    private static Map<String, Long> retrieveCacheKindTtls;
+    private static boolean requestAsync;
+    private static int connectorThreads;
+    private static int connectorQueue;
+    private static int connectorTimeout;
+    private static String threadsMode;
+    private static int httpThreadsMin;
+    private static int httpThreadsMax;
+    private static int httpQueue;
+    private static int httpAcceptors;
+    private static int httpSelectors;
+    private static int httpIdleTimeout;
+    private static int httpAcceptQueue;
+    private static int httpOutputBuffer;
+    private static boolean startupParallel;
+    private static int shutdownTimeout;
+    private static boolean metricsJmx;
+    private static boolean modelCache;
+    private static String modelCacheDirectory;
+    private static boolean http2;
+    private static String sslKeystore;
+    private static String sslKeystorePassword;
+    private static String sslKeyPassword;
+    private static String sslKeystoreType;
+    private static String sslProtocols;
+    private static String sslCiphers;
+    private static int sslSessionCacheSize;
+    private static int sslSessionTimeout;
+    private static ConnectorGuard.Settings extensionDefaultSettings;
+    private static Map<String, ConnectorGuard.Settings> extensionSettings;
+    private static RateLimiter.Limit rateLimit;
+    private static Map<String, RateLimiter.Limit> rateLimitMethods;
+    private static String rateLimitClient;
+    private static int rateLimitClients;
 
     public static void main(String[] args) {
+        long startTime = System.nanoTime();
 
         setDefaultServerConfigValues();
 
@@ -78,35 +216,115 @@ class MartServer {
             configFilePath = System.getProperty("user.home") + File.separator + "martserver.config";
         }
         readFileConfig();
+        long configTime = System.nanoTime();
 
-        ResourceConfig config = new ResourceConfig();
-        config.packages("org.occiware.mart.server.servlet");
+        // The query resources are registered explicitly, no package scan.
+        ResourceConfig config = new ResourceConfig(GetQuery.class, PostQuery.class, PutQuery.class, DeleteQuery.class);
         ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        // Queries are suspended (AsyncResponse) and may be resumed by the connector executor.
+        servlet.setAsyncSupported(true);
+        // Jersey is initialized when the server starts, not on the first query.
+        servlet.setInitOrder(0);
 
-        Server server = new Server(port);
-        ServletContextHandler context = new ServletContextHandler(server, "/*");
+        Server server = createServer();
+        ServletContextHandler context = new ServletContextHandler(null, "/*");
         context.addServlet(servlet, "/*");
+        // Requests in progress, completed before the server stops.
+        StatisticsHandler statistics = new StatisticsHandler();
+        // Requests of each client limited by http method, refused before reaching the query resources.
+        RateLimiter.configure(rateLimit, rateLimitMethods, rateLimitClients);
+        if (RateLimiter.isEnabled()) {
+            RateLimitHandler rateLimitHandler = new RateLimitHandler(rateLimitClient);
+            rateLimitHandler.setHandler(context);
+            statistics.setHandler(rateLimitHandler);
+        } else {
+            statistics.setHandler(context);
+        }
+        server.setHandler(statistics);
+        ServerShutdown shutdown = new ServerShutdown(server, statistics, Math.max(shutdownTimeout, 0));
+        Runtime.getRuntime().addShutdownHook(shutdown);
 
         ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
-        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        long modelTime = System.nanoTime();
+        // Extension models read from local files while their jar is unchanged.
+        ExtensionModelCache.configure(modelCache ? modelCacheDirectory : null);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER, startupParallel);
+        long extensionsTime = System.nanoTime();
+        // Sorted indexes used for sort parameter on collections.
+        for (String attrName : indexAttributes.split(",")) {
+            ConfigurationManager.createAttributeIndex(attrName);
+        }
+        ConfigurationManager.configureParallelFilter(filterParallelism, filterParallelThreshold);
+        // Count and sum maintained for aggregation queries.
+        for (String attrName : aggregateAttributes.split(",")) {
+            ConfigurationManager.createIncrementalAggregate(attrName);
+        }
+        // Executor of asynchronous actions (parameter async=true).
+        ActionJobManager.configure(actionJobThreads, actionJobQueue);
+        // Parallel execution of collection actions.
+        ActionExecutor.configure(actionThreads, actionParallelism, actionExtensionConcurrency);
+        // Parallel retrieve of collection entities with a deadline.
+        ExecutorService queryExecutor = null;
+        if (threadsMode.equals(THREADS_VIRTUAL)) {
+            queryExecutor = VirtualThreads.newExecutor("mart-query-");
+            if (queryExecutor == null) {
+                System.out.println("Virtual threads are not available on Java " + System.getProperty("java.version") + ", using platform thread pools.");
+            }
+        }
+        if (queryExecutor != null) {
+            RetrieveExecutor.configure(VirtualThreads.newExecutor("mart-retrieve-"), retrieveTimeout);
+        } else {
+            RetrieveExecutor.configure(retrieveThreads, retrieveQueue, retrieveTimeout);
+        }
+        // Time to live of the connector retrieves.
+        RetrieveCache.configure(retrieveCacheSize, retrieveCacheTtl, retrieveCacheKindTtls);
+        // Queries executed out of the http threads.
+        if (queryExecutor != null) {
+            // Jetty threads only read and write the http messages, each query and its connector calls run on a virtual thread.
+            ConnectorExecutor.configure(true, queryExecutor, connectorTimeout);
+        } else {
+            ConnectorExecutor.configure(requestAsync, connectorThreads, connectorQueue, connectorTimeout);
+        }
+        // Bulkhead, timeout and circuit breaker of the connector calls by extension.
+        ConnectorGuard.configure(extensionDefaultSettings, extensionSettings);
+        if (queryExecutor != null) {
+            ConnectorGuard.configure(VirtualThreads.newExecutor("mart-extension-"));
+        }
+        // Metrics of /-/metrics/ readable by JMX.
+        if (metricsJmx && ServerMetrics.registerMBean()) {
+            System.out.println("Metrics MBean registered : " + ServerMetrics.MBEAN_NAME);
+        }
 
         // Initialize logger appenders.
         LoggerConfig.initAppenders(logDirectoryPath);
 
+        long setupTime = System.nanoTime();
+
         try {
             server.start();
+            long httpTime = System.nanoTime();
+            printServerSummary(server);
+            System.out.println("Startup : configuration " + toMillis(startTime, configTime) + " ms"
+                    + ", OCCI model " + toMillis(configTime, modelTime) + " ms"
+                    + ", extensions " + toMillis(modelTime, extensionsTime) + " ms (" + (startupParallel ? "parallel" : "sequential") + ", " + ExtensionModelCache.getHits() + " from cache)"
+                    + ", indexes and executors " + toMillis(extensionsTime, setupTime) + " ms"
+                    + ", http server and resources " + toMillis(setupTime, httpTime) + " ms"
+                    + ", ready " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after the JVM start");
             server.join();
         } catch (Exception ex) {
             System.err.println("Exception thrown : " + ex.getClass().getSimpleName());
             ex.printStackTrace();
         } finally {
-            System.out.println("Destroying server...");
-            try {
-                server.stop();
-            } catch (Exception ex) {
-                System.out.println("Failed to stop the server");
+            // When stopped by the shutdown hook, the hook drains the requests and reports.
+            if (!shutdown.isRunning()) {
+                System.out.println("Destroying server...");
+                try {
+                    server.stop();
+                } catch (Exception ex) {
+                    System.out.println("Failed to stop the server");
+                }
+                server.destroy();
             }
-            server.destroy();
         }
     }
 
@@ -172,6 +390,136 @@ class MartServer {
                         httpProtocol = protocol;
                     }
                 }
+                if (prop.containsKey(KEY_INDEX_ATTRIBUTES)) {
+                    indexAttributes = prop.getProperty(KEY_INDEX_ATTRIBUTES, "");
+                    System.out.println("Attributes indexed for sort : " + indexAttributes);
+                }
+                if (prop.containsKey(KEY_AGGREGATE_ATTRIBUTES)) {
+                    aggregateAttributes = prop.getProperty(KEY_AGGREGATE_ATTRIBUTES, "");
+                    System.out.println("Attributes aggregated incrementally : " + aggregateAttributes);
+                }
+                actionJobThreads = readPositiveIntProperty(prop, KEY_ACTION_JOB_THREADS, actionJobThreads);
+                actionJobQueue = readPositiveIntProperty(prop, KEY_ACTION_JOB_QUEUE, actionJobQueue);
+                actionThreads = readPositiveIntProperty(prop, KEY_ACTION_THREADS, actionThreads);
+                actionParallelism = readPositiveIntProperty(prop, KEY_ACTION_PARALLELISM, actionParallelism);
+                actionExtensionConcurrency = readPositiveIntProperty(prop, KEY_ACTION_EXTENSION_CONCURRENCY, actionExtensionConcurrency);
+                retrieveThreads = readPositiveIntProperty(prop, KEY_RETRIEVE_THREADS, retrieveThreads);
+                retrieveQueue = readPositiveIntProperty(prop, KEY_RETRIEVE_QUEUE, retrieveQueue);
+                retrieveTimeout = readIntProperty(prop, KEY_RETRIEVE_TIMEOUT, retrieveTimeout);
+                if (prop.containsKey(KEY_REQUEST_ASYNC)) {
+                    requestAsync = Boolean.parseBoolean(prop.getProperty(KEY_REQUEST_ASYNC).trim());
+                    System.out.println("Asynchronous query execution : " + requestAsync);
+                }
+                if (prop.containsKey(KEY_THREADS)) {
+                    String mode = prop.getProperty(KEY_THREADS).trim();
+                    if (mode.equalsIgnoreCase(THREADS_VIRTUAL) || mode.equalsIgnoreCase(THREADS_PLATFORM)) {
+                        threadsMode = mode.toLowerCase();
+                    } else {
+                        System.out.println(KEY_THREADS + " must be " + THREADS_PLATFORM + " or " + THREADS_VIRTUAL + ", back to default : " + threadsMode);
+                    }
+                }
+                connectorThreads = readPositiveIntProperty(prop, KEY_CONNECTOR_THREADS, connectorThreads);
+                connectorQueue = readPositiveIntProperty(prop, KEY_CONNECTOR_QUEUE, connectorQueue);
+                connectorTimeout = readIntProperty(prop, KEY_CONNECTOR_TIMEOUT, connectorTimeout);
+                retrieveCacheSize = readPositiveIntProperty(prop, KEY_RETRIEVE_CACHE_SIZE, retrieveCacheSize);
+                retrieveCacheTtl = readIntProperty(prop, KEY_RETRIEVE_CACHE_TTL, retrieveCacheTtl);
+                // Time to live by kind : server.retrieve.cache.ttl.<kind term>=<milliseconds>.
+                for (String key : prop.stringPropertyNames()) {
+                    if (key.startsWith(KEY_RETRIEVE_CACHE_TTL + ".")) {
+                        String kindTerm = key.substring(KEY_RETRIEVE_CACHE_TTL.length() + 1);
+                        retrieveCacheKindTtls.put(kindTerm, (long) readIntProperty(prop, key, retrieveCacheTtl));
+                    }
+                }
+                if (prop.containsKey(KEY_STARTUP_PARALLEL)) {
+                    startupParallel = Boolean.parseBoolean(prop.getProperty(KEY_STARTUP_PARALLEL).trim());
+                }
+                shutdownTimeout = readIntProperty(prop, KEY_SHUTDOWN_TIMEOUT, shutdownTimeout);
+                if (prop.containsKey(KEY_METRICS_JMX)) {
+                    metricsJmx = Boolean.parseBoolean(prop.getProperty(KEY_METRICS_JMX).trim());
+                }
+                if (prop.containsKey(KEY_MODEL_CACHE)) {
+                    modelCache = Boolean.parseBoolean(prop.getProperty(KEY_MODEL_CACHE).trim());
+                }
+                modelCacheDirectory = prop.getProperty(KEY_MODEL_CACHE_DIRECTORY, modelCacheDirectory).trim();
+                if (prop.containsKey(KEY_HTTP2)) {
+                    http2 = Boolean.parseBoolean(prop.getProperty(KEY_HTTP2).trim());
+                }
+                sslKeystore = prop.getProperty(KEY_SSL_KEYSTORE, sslKeystore);
+                sslKeystorePassword = prop.getProperty(KEY_SSL_KEYSTORE_PASSWORD, sslKeystorePassword);
+                sslKeyPassword = prop.getProperty(KEY_SSL_KEY_PASSWORD, sslKeystorePassword);
+                sslKeystoreType = prop.getProperty(KEY_SSL_KEYSTORE_TYPE, sslKeystoreType).trim();
+                sslProtocols = prop.getProperty(KEY_SSL_PROTOCOLS, sslProtocols).trim();
+                sslCiphers = prop.getProperty(KEY_SSL_CIPHERS, sslCiphers).trim();
+                sslSessionCacheSize = readIntProperty(prop, KEY_SSL_SESSION_CACHE_SIZE, sslSessionCacheSize);
+                sslSessionTimeout = readIntProperty(prop, KEY_SSL_SESSION_TIMEOUT, sslSessionTimeout);
+                if (httpProtocol.equalsIgnoreCase(HTTPS_PROTOCOL) && (sslKeystore == null || !Files.isRegularFile(Paths.get(sslKeystore)))) {
+                    System.out.println(KEY_SSL_KEYSTORE + " must be set to a keystore file with " + KEY_PROTOCOL + "=" + HTTPS_PROTOCOL + ", back to default protocol : " + HTTP_PROTOCOL);
+                    httpProtocol = HTTP_PROTOCOL;
+                }
+                httpThreadsMin = readPositiveIntProperty(prop, KEY_HTTP_THREADS_MIN, httpThreadsMin);
+                httpThreadsMax = readPositiveIntProperty(prop, KEY_HTTP_THREADS_MAX, httpThreadsMax);
+                if (httpThreadsMax < httpThreadsMin) {
+                    System.out.println(KEY_HTTP_THREADS_MAX + " must be greater than or equal to " + KEY_HTTP_THREADS_MIN + ", set to " + httpThreadsMin);
+                    httpThreadsMax = httpThreadsMin;
+                }
+                httpQueue = readIntProperty(prop, KEY_HTTP_QUEUE, httpQueue);
+                httpAcceptors = readIntProperty(prop, KEY_HTTP_ACCEPTORS, httpAcceptors);
+                httpSelectors = readIntProperty(prop, KEY_HTTP_SELECTORS, httpSelectors);
+                httpIdleTimeout = readPositiveIntProperty(prop, KEY_HTTP_IDLE_TIMEOUT, httpIdleTimeout);
+                httpAcceptQueue = readIntProperty(prop, KEY_HTTP_ACCEPT_QUEUE, httpAcceptQueue);
+                httpOutputBuffer = readPositiveIntProperty(prop, KEY_HTTP_OUTPUT_BUFFER, httpOutputBuffer);
+                if (threadsMode.equals(THREADS_VIRTUAL) && VirtualThreads.isSupported()) {
+                    // The connector calls are executed on virtual threads, the concurrency only protects the backends.
+                    extensionDefaultSettings = new ConnectorGuard.Settings(ConnectorGuard.DEFAULT_VIRTUAL_CONCURRENCY,
+                            extensionDefaultSettings.getTimeoutMillis(), extensionDefaultSettings.getBreakerFailures(),
+                            extensionDefaultSettings.getBreakerOpenMillis());
+                }
+                extensionDefaultSettings = readExtensionSettings(prop, KEY_EXTENSION_PREFIX, extensionDefaultSettings);
+                // Limits by extension : server.extension.<extension name>.concurrency, .timeout, .breaker.failures and .breaker.open.
+                for (String key : prop.stringPropertyNames()) {
+                    if (!key.startsWith(KEY_EXTENSION_PREFIX)) {
+                        continue;
+                    }
+                    for (String parameter : new String[]{EXTENSION_CONCURRENCY, EXTENSION_TIMEOUT, EXTENSION_BREAKER_FAILURES, EXTENSION_BREAKER_OPEN}) {
+                        if (key.endsWith("." + parameter) && key.length() > KEY_EXTENSION_PREFIX.length() + parameter.length() + 1) {
+                            String extensionName = key.substring(KEY_EXTENSION_PREFIX.length(), key.length() - parameter.length() - 1);
+                            if (!extensionSettings.containsKey(extensionName)) {
+                                extensionSettings.put(extensionName, readExtensionSettings(prop, KEY_EXTENSION_PREFIX + extensionName + ".", extensionDefaultSettings));
+                            }
+                            break;
+                        }
+                    }
+                }
+                rateLimit = readRateLimit(prop, KEY_RATELIMIT_PREFIX, rateLimit);
+                // Limits by http method : server.ratelimit.<method>.rate and .burst.
+                for (String key : prop.stringPropertyNames()) {
+                    if (!key.startsWith(KEY_RATELIMIT_PREFIX)) {
+                        continue;
+                    }
+                    for (String parameter : new String[]{RATELIMIT_RATE, RATELIMIT_BURST}) {
+                        if (key.endsWith("." + parameter) && key.length() > KEY_RATELIMIT_PREFIX.length() + parameter.length() + 1) {
+                            // The method is read as written in the key (server.ratelimit.GET.rate or server.ratelimit.get.rate).
+                            String methodName = key.substring(KEY_RATELIMIT_PREFIX.length(), key.length() - parameter.length() - 1);
+                            String method = methodName.toUpperCase();
+                            if (!rateLimitMethods.containsKey(method)) {
+                                rateLimitMethods.put(method, readRateLimit(prop, KEY_RATELIMIT_PREFIX + methodName + ".", rateLimit));
+                            }
+                            break;
+                        }
+                    }
+                }
+                rateLimitClient = prop.getProperty(KEY_RATELIMIT_CLIENT, rateLimitClient).trim().toLowerCase();
+                if (!rateLimitClient.equals(RateLimitHandler.CLIENT_IP) && !rateLimitClient.equals(RateLimitHandler.CLIENT_AGENT) && !rateLimitClient.equals(RateLimitHandler.CLIENT_USER)) {
+                    System.out.println(KEY_RATELIMIT_CLIENT + " must be " + RateLimitHandler.CLIENT_IP + ", " + RateLimitHandler.CLIENT_AGENT + " or " + RateLimitHandler.CLIENT_USER + ", back to default : " + RateLimitHandler.CLIENT_IP);
+                    rateLimitClient = RateLimitHandler.CLIENT_IP;
+                }
+                rateLimitClients = readPositiveIntProperty(prop, KEY_RATELIMIT_CLIENTS, rateLimitClients);
+                filterParallelThreshold = readIntProperty(prop, KEY_FILTER_PARALLEL_THRESHOLD, filterParallelThreshold);
+                filterParallelism = readIntProperty(prop, KEY_FILTER_PARALLELISM, filterParallelism);
+                if (filterParallelism < 1) {
+                    System.out.println(KEY_FILTER_PARALLELISM + " must be greater than 0, back to default : " + Runtime.getRuntime().availableProcessors());
+                    filterParallelism = Runtime.getRuntime().availableProcessors();
+                }
             } catch (IOException ex) {
                 System.out.println("Cannot find configuration file for Mart server, setting default values.");
             }
@@ -187,6 +535,266 @@ class MartServer {
         port = 8080;
         logDirectoryPath = Paths.get("logs").toAbsolutePath().toString() + FileSystems.getDefault().getSeparator();
         httpProtocol = HTTP_PROTOCOL;
+        indexAttributes = "";
+        filterParallelThreshold = ConfigurationManager.DEFAULT_PARALLEL_FILTER_THRESHOLD;
+        filterParallelism = Runtime.getRuntime().availableProcessors();
+        aggregateAttributes = "";
+        actionJobThreads = ActionJobManager.DEFAULT_THREADS;
+        actionJobQueue = ActionJobManager.DEFAULT_QUEUE_SIZE;
+        actionThreads = ActionExecutor.DEFAULT_THREADS;
+        actionParallelism = ActionExecutor.DEFAULT_PARALLELISM;
+        actionExtensionConcurrency = ActionExecutor.DEFAULT_EXTENSION_CONCURRENCY;
+        retrieveThreads = RetrieveExecutor.DEFAULT_THREADS;
+        retrieveQueue = RetrieveExecutor.DEFAULT_QUEUE_SIZE;
+        retrieveTimeout = (int) RetrieveExecutor.DEFAULT_TIMEOUT_MILLIS;
+        retrieveCacheSize = RetrieveCache.DEFAULT_MAX_SIZE;
+        retrieveCacheTtl = (int) RetrieveCache.DEFAULT_TTL_MILLIS;
+        retrieveCacheKindTtls = new HashMap<>();
+        requestAsync = false;
+        threadsMode = THREADS_PLATFORM;
+        connectorThreads = ConnectorExecutor.DEFAULT_THREADS;
+        connectorQueue = ConnectorExecutor.DEFAULT_QUEUE_SIZE;
+        connectorTimeout = (int) ConnectorExecutor.DEFAULT_TIMEOUT_MILLIS;
+        // Jetty default values.
+        httpThreadsMin = 8;
+        httpThreadsMax = 200;
+        httpQueue = 0;
+        httpAcceptors = -1;
+        httpSelectors = -1;
+        httpIdleTimeout = 30000;
+        httpAcceptQueue = 0;
+        httpOutputBuffer = 32768;
+        startupParallel = true;
+        shutdownTimeout = 30000;
+        metricsJmx = true;
+        modelCache = true;
+        modelCacheDirectory = ExtensionModelCache.DEFAULT_DIRECTORY;
+        http2 = false;
+        sslKeystore = null;
+        sslKeystorePassword = null;
+        sslKeyPassword = null;
+        sslKeystoreType = "JKS";
+        // TLSv1.3 is not supported by this jetty version : connections closed by the server may hang until the idle timeout.
+        sslProtocols = "TLSv1.2";
+        sslCiphers = "";
+        sslSessionCacheSize = -1;
+        sslSessionTimeout = -1;
+        extensionDefaultSettings = new ConnectorGuard.Settings(ConnectorGuard.DEFAULT_CONCURRENCY, ConnectorGuard.DEFAULT_TIMEOUT_MILLIS,
+                ConnectorGuard.DEFAULT_BREAKER_FAILURES, ConnectorGuard.DEFAULT_BREAKER_OPEN_MILLIS);
+        extensionSettings = new HashMap<>();
+        rateLimit = new RateLimiter.Limit(0, 0);
+        rateLimitMethods = new HashMap<>();
+        rateLimitClient = RateLimitHandler.CLIENT_IP;
+        rateLimitClients = RateLimiter.DEFAULT_MAX_CLIENTS;
+    }
+
+    private static long toMillis(final long startNanos, final long endNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    /**
+     * Create the jetty server with the http thread pool and connector of the configuration.
+     *
+     * @return the server, not started.
+     */
+    private static Server createServer() {
+        // Requests waiting for an http thread, 0 or less : no limit.
+        BlockingArrayQueue<Runnable> queue;
+        if (httpQueue > 0) {
+            queue = new BlockingArrayQueue<>(Math.min(httpThreadsMin, httpQueue), httpThreadsMin, httpQueue);
+        } else {
+            queue = new BlockingArrayQueue<>(httpThreadsMin, httpThreadsMin);
+        }
+        QueuedThreadPool threadPool = new QueuedThreadPool(httpThreadsMax, httpThreadsMin, 60000, queue);
+        threadPool.setName("mart-http");
+        Server server = new Server(threadPool);
+
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        httpConfig.setOutputBufferSize(httpOutputBuffer);
+        ConnectionFactory[] connectionFactories;
+        if (httpProtocol.equalsIgnoreCase(HTTPS_PROTOCOL)) {
+            connectionFactories = createTlsConnectionFactories(httpConfig);
+        } else if (http2) {
+            // HTTP/1.1 and h2c (cleartext HTTP/2, by upgrade or prior knowledge) on the same port.
+            connectionFactories = new ConnectionFactory[]{new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig)};
+        } else {
+            connectionFactories = new ConnectionFactory[]{new HttpConnectionFactory(httpConfig)};
+        }
+        // Acceptors and selectors, -1 : computed by jetty from the number of processors.
+        ServerConnector connector = new ServerConnector(server, httpAcceptors, httpSelectors, connectionFactories);
+        connector.setPort(port);
+        connector.setIdleTimeout(httpIdleTimeout);
+        connector.setAcceptQueueSize(httpAcceptQueue);
+        server.addConnector(connector);
+        return server;
+    }
+
+    /**
+     * Connection factories of the https connector : TLS then h2 (if enabled) or HTTP/1.1, negotiated with ALPN.
+     *
+     * @param httpConfig
+     * @return the connection factories, TLS first.
+     */
+    private static ConnectionFactory[] createTlsConnectionFactories(final HttpConfiguration httpConfig) {
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath(sslKeystore);
+        sslContextFactory.setKeyStorePassword(sslKeystorePassword);
+        sslContextFactory.setKeyManagerPassword(sslKeyPassword);
+        sslContextFactory.setKeyStoreType(sslKeystoreType);
+        // Empty : protocols or ciphers enabled by default in java and jetty (SSLv3 and weak ciphers excluded).
+        if (!sslProtocols.isEmpty()) {
+            sslContextFactory.setIncludeProtocols(sslProtocols.split("\\s*,\\s*"));
+        }
+        if (!sslCiphers.isEmpty()) {
+            sslContextFactory.setIncludeCipherSuites(sslCiphers.split("\\s*,\\s*"));
+        }
+        // The clients reconnecting resume their TLS session (abbreviated handshake) instead of a full handshake.
+        sslContextFactory.setSessionCachingEnabled(true);
+        sslContextFactory.setSslSessionCacheSize(sslSessionCacheSize);
+        sslContextFactory.setSslSessionTimeout(sslSessionTimeout);
+
+        HttpConfiguration httpsConfig = new HttpConfiguration(httpConfig);
+        httpsConfig.setSecureScheme(HTTPS_PROTOCOL);
+        httpsConfig.setSecurePort(port);
+        httpsConfig.addCustomizer(new SecureRequestCustomizer());
+        HttpConnectionFactory http1 = new HttpConnectionFactory(httpsConfig);
+
+        if (http2 && !isAlpnAvailable()) {
+            System.out.println("ALPN is not available, h2 is disabled on " + HTTPS_PROTOCOL + ", only HTTP/1.1 is used. "
+                    + "With this jetty version, ALPN needs the alpn-boot jar of the java 8 version in the boot classpath (-Xbootclasspath/p:).");
+        }
+        if (!http2 || !isAlpnAvailable()) {
+            return new ConnectionFactory[]{new SslConnectionFactory(sslContextFactory, http1.getProtocol()), http1};
+        }
+        // h2 refuses the ciphers blacklisted by RFC 7540, so they are sorted last.
+        sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+        sslContextFactory.setUseCipherSuitesOrder(true);
+        HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpsConfig);
+        ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+        // Clients without ALPN use HTTP/1.1.
+        alpn.setDefaultProtocol(http1.getProtocol());
+        return new ConnectionFactory[]{new SslConnectionFactory(sslContextFactory, alpn.getProtocol()), alpn, h2, http1};
+    }
+
+    /**
+     * @return true if the ALPN classes used by jetty are in the boot classpath.
+     */
+    private static boolean isAlpnAvailable() {
+        try {
+            Class.forName("org.eclipse.jetty.alpn.ALPN", false, null);
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Print the effective values of the http server, once started.
+     *
+     * @param server
+     */
+    private static void printServerSummary(final Server server) {
+        QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        System.out.println("Http threads : min " + threadPool.getMinThreads() + ", max " + threadPool.getMaxThreads()
+                + ", queue " + (httpQueue > 0 ? String.valueOf(httpQueue) : "unbounded"));
+        for (Connector serverConnector : server.getConnectors()) {
+            ServerConnector connector = (ServerConnector) serverConnector;
+            HttpConfiguration httpConfig = connector.getConnectionFactory(HttpConnectionFactory.class).getHttpConfiguration();
+            System.out.println("Http connector on port " + connector.getLocalPort() + " " + connector.getProtocols()
+                    + " : acceptors " + connector.getAcceptors()
+                    + ", selectors " + connector.getSelectorManager().getSelectorCount()
+                    + ", idle timeout " + connector.getIdleTimeout() + " ms"
+                    + ", accept queue " + (connector.getAcceptQueueSize() > 0 ? String.valueOf(connector.getAcceptQueueSize()) : "system default")
+                    + ", output buffer " + httpConfig.getOutputBufferSize() + " bytes");
+            SslConnectionFactory sslConnectionFactory = connector.getConnectionFactory(SslConnectionFactory.class);
+            if (sslConnectionFactory != null) {
+                SslContextFactory sslContextFactory = sslConnectionFactory.getSslContextFactory();
+                SSLSessionContext sessionContext = sslContextFactory.getSslContext().getServerSessionContext();
+                System.out.println("TLS : protocols " + Arrays.toString(sslContextFactory.getSelectedProtocols())
+                        + ", " + sslContextFactory.getSelectedCipherSuites().length + " cipher suites"
+                        + ", session cache size " + (sessionContext.getSessionCacheSize() > 0 ? String.valueOf(sessionContext.getSessionCacheSize()) : "unlimited")
+                        + ", session timeout " + sessionContext.getSessionTimeout() + " s");
+            }
+        }
+        if (RateLimiter.isEnabled()) {
+            StringBuilder limits = new StringBuilder("Rate limits by " + rateLimitClient + " : ");
+            limits.append(rateLimit.getRate() > 0 ? rateLimit.getRate() + " requests/s, burst " + rateLimit.getBurst() : "none");
+            for (Map.Entry<String, RateLimiter.Limit> entry : rateLimitMethods.entrySet()) {
+                limits.append(", ").append(entry.getKey()).append(' ')
+                        .append(entry.getValue().getRate() > 0 ? entry.getValue().getRate() + " requests/s, burst " + entry.getValue().getBurst() : "none");
+            }
+            System.out.println(limits);
+        }
+    }
+
+    /**
+     * Read the limits of the connector calls of an extension.
+     *
+     * @param prop
+     * @param keyPrefix       server.extension. for the default limits, server.extension.&lt;extension name&gt;. for an extension.
+     * @param defaultSettings
+     * @return the settings, with the default values for the parameters not set.
+     */
+    private static ConnectorGuard.Settings readExtensionSettings(final Properties prop, final String keyPrefix, final ConnectorGuard.Settings defaultSettings) {
+        return new ConnectorGuard.Settings(
+                readPositiveIntProperty(prop, keyPrefix + EXTENSION_CONCURRENCY, defaultSettings.getConcurrency()),
+                readIntProperty(prop, keyPrefix + EXTENSION_TIMEOUT, (int) defaultSettings.getTimeoutMillis()),
+                readIntProperty(prop, keyPrefix + EXTENSION_BREAKER_FAILURES, defaultSettings.getBreakerFailures()),
+                readIntProperty(prop, keyPrefix + EXTENSION_BREAKER_OPEN, (int) defaultSettings.getBreakerOpenMillis()));
+    }
+
+    /**
+     * Read a rate limit : keyPrefix + rate (requests per second, 0 : not limited) and keyPrefix + burst.
+     *
+     * @param prop
+     * @param keyPrefix
+     * @param defaultLimit
+     * @return the limit, with the default rate for the rate not set and the rate as burst for the burst not set.
+     */
+    private static RateLimiter.Limit readRateLimit(final Properties prop, final String keyPrefix, final RateLimiter.Limit defaultLimit) {
+        int rate = readIntProperty(prop, keyPrefix + RATELIMIT_RATE, defaultLimit.getRate());
+        // One second of requests by default.
+        int burst = readIntProperty(prop, keyPrefix + RATELIMIT_BURST, rate);
+        return new RateLimiter.Limit(rate, burst);
+    }
+
+    /**
+     * Read an integer value of the configuration file.
+     *
+     * @param prop
+     * @param key
+     * @param defaultValue
+     * @return the value or the default value if not set or not a number.
+     */
+    private static int readIntProperty(final Properties prop, final String key, final int defaultValue) {
+        String value = prop.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.out.println(key + " --< key is not set properly : " + value);
+            System.out.println("Back to default value : " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Read an integer value of the configuration file that must be greater than 0.
+     *
+     * @param prop
+     * @param key
+     * @param defaultValue
+     * @return the value or the default value if not set, not a number or lower than 1.
+     */
+    private static int readPositiveIntProperty(final Properties prop, final String key, final int defaultValue) {
+        int value = readIntProperty(prop, key, defaultValue);
+        if (value < 1) {
+            System.out.println(key + " must be greater than 0, back to default : " + defaultValue);
+            return defaultValue;
+        }
+        return value;
     }
 
 
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.occiware.mart.server.servlet.model.RateLimiter;
+import org.occiware.mart.server.servlet.utils.Constants;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Refuse the requests of a client over its rate limit (429 Too Many Requests with Retry-After)
+ * before they reach the query resources.
+ */
+class RateLimitHandler extends HandlerWrapper {
+
+    static final String CLIENT_IP = "ip";
+    static final String CLIENT_AGENT = "agent";
+    static final String CLIENT_USER = "user";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Client identification : ip, agent (User-Agent header) or user (user authenticated by the server, otherwise ip).
+     */
+    private final String clientKey;
+
+    RateLimitHandler(final String clientKey) {
+        this.clientKey = clientKey;
+    }
+
+    @Override
+    public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+        long retryAfterMillis = RateLimiter.acquire(getClient(request), request.getMethod());
+        if (retryAfterMillis == 0) {
+            super.handle(target, baseRequest, request, response);
+            return;
+        }
+        long retryAfterSeconds = (retryAfterMillis + 999) / 1000;
+        baseRequest.setHandled(true);
+        response.setStatus(TOO_MANY_REQUESTS);
+        response.setHeader("Server", Constants.OCCI_SERVER_HEADER);
+        response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+        response.setContentType("text/plain");
+        response.getWriter().print("Too many requests, retry in " + retryAfterSeconds + " seconds");
+    }
+
+    private String getClient(final HttpServletRequest request) {
+        switch (clientKey) {
+            case CLIENT_AGENT:
+                String agent = request.getHeader("User-Agent");
+                return agent == null ? "" : agent;
+            case CLIENT_USER:
+                // Only a user authenticated by the server, a user name sent by the client is not verified.
+                String user = request.getRemoteUser();
+                return user == null ? request.getRemoteAddr() : user;
+            default:
+                return request.getRemoteAddr();
+        }
+    }
+}
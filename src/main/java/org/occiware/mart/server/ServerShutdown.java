@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.occiware.mart.server.servlet.model.ActionExecutor;
+import org.occiware.mart.server.servlet.model.ActionJobManager;
+import org.occiware.mart.server.servlet.model.ConnectorExecutor;
+import org.occiware.mart.server.servlet.model.ConnectorGuard;
+import org.occiware.mart.server.servlet.model.RetrieveExecutor;
+import org.occiware.mart.server.servlet.utils.LoggerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shutdown hook of the server (SIGTERM, Ctrl-C...). The connectors stop
+ * accepting connections, the requests in progress are completed, then the
+ * asynchronous action jobs and the connector calls, all before a deadline.
+ * What has been completed or abandoned is reported and the logs are flushed.
+ */
+class ServerShutdown extends Thread {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerShutdown.class);
+
+    private final Server server;
+
+    /**
+     * Counts the requests in progress, jetty waits for them to complete when stopping.
+     */
+    private final StatisticsHandler statistics;
+
+    private final long timeoutMillis;
+
+    private volatile boolean running = false;
+
+    /**
+     * @param server
+     * @param statistics    handler of all the requests of the server.
+     * @param timeoutMillis time given to the requests and the connector calls in progress to complete, 0 : no wait.
+     */
+    ServerShutdown(final Server server, final StatisticsHandler statistics, final long timeoutMillis) {
+        super("mart-shutdown");
+        this.server = server;
+        this.statistics = statistics;
+        this.timeoutMillis = timeoutMillis;
+        server.setStopTimeout(timeoutMillis);
+    }
+
+    /**
+     * @return true if the server is stopped by this hook.
+     */
+    boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        running = true;
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int requests = statistics.getRequestsActive();
+        LOGGER.info("Shutdown of the server, " + requests + " requests in progress, deadline : " + timeoutMillis + " ms");
+
+        // The connectors are closed first, then jetty waits for the requests in progress until the deadline.
+        try {
+            server.stop();
+        } catch (Exception ex) {
+            LOGGER.error("Failed to stop the server : " + ex.getMessage());
+        }
+        int requestsAbandoned = statistics.getRequestsActive();
+
+        // The requests are ended, the jobs and the connector calls they started are given the remaining time.
+        int jobsAbandoned = ActionJobManager.shutdown(remainingMillis(deadline));
+        int actionsAbandoned = ActionExecutor.shutdown(remainingMillis(deadline));
+        int queriesAbandoned = ConnectorExecutor.shutdown(remainingMillis(deadline));
+        int retrievesAbandoned = RetrieveExecutor.shutdown(remainingMillis(deadline));
+        int callsAbandoned = ConnectorGuard.shutdown(remainingMillis(deadline));
+
+        String report = "Shutdown : " + requests + " requests in progress, " + Math.max(requests - requestsAbandoned, 0) + " completed, " + requestsAbandoned + " abandoned"
+                + " ; abandoned at the deadline : " + jobsAbandoned + " action jobs, " + actionsAbandoned + " entity actions, "
+                + queriesAbandoned + " queries, " + retrievesAbandoned + " retrieves, " + callsAbandoned + " connector calls"
+                + " ; done in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms";
+        if (requestsAbandoned + jobsAbandoned + actionsAbandoned + queriesAbandoned + retrievesAbandoned + callsAbandoned > 0) {
+            LOGGER.warn(report);
+        } else {
+            LOGGER.info(report);
+        }
+        System.out.println(report);
+        LoggerConfig.shutdown();
+    }
+
+    private static long remainingMillis(final long deadline) {
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+    }
+}
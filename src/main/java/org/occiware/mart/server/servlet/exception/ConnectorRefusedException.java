@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.exception;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Response;
+
+/**
+ * A connector call refused before being started, because too many calls are in progress
+ * or because the circuit of the extension is open.
+ */
+public class ConnectorRefusedException extends ServiceUnavailableException {
+
+    private static final long serialVersionUID = -2716480552390671385L;
+
+    public ConnectorRefusedException(String message, Response response) {
+        super(message, response);
+    }
+
+}
@@ -18,6 +18,8 @@
  */
 package org.occiware.mart.server.servlet.facade;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.occiware.clouddesigner.occi.Action;
 import org.occiware.clouddesigner.occi.Entity;
 import org.occiware.clouddesigner.occi.Kind;
@@ -25,25 +27,40 @@ import org.occiware.clouddesigner.occi.Mixin;
 import org.occiware.mart.server.servlet.exception.AttributeParseException;
 import org.occiware.mart.server.servlet.exception.CategoryParseException;
 import org.occiware.mart.server.servlet.exception.ResponseParseException;
+import org.occiware.mart.server.servlet.impl.PathParser;
 import org.occiware.mart.server.servlet.impl.parser.ParserFactory;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
+import org.occiware.mart.server.servlet.model.ActionExecutor;
+import org.occiware.mart.server.servlet.model.ActionJob;
+import org.occiware.mart.server.servlet.model.ActionJobManager;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorExecutor;
+import org.occiware.mart.server.servlet.model.RequestMetrics;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.CollectionFilter;
 import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.CursorToken;
 import org.occiware.mart.server.servlet.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.BadRequestException;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * @author Christophe Gourdin
@@ -59,6 +76,20 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
     private String contentType = Constants.MEDIA_TYPE_TEXT_OCCI;
     private String acceptType = Constants.MEDIA_TYPE_TEXT_OCCI;
 
+    /**
+     * Media type of the responses of the output parser, recorded in the query metrics.
+     */
+    private String responseMediaType = Constants.MEDIA_TYPE_TEXT_OCCI;
+    /**
+     * Route type of the query, for the query metrics.
+     */
+    private RequestMetrics.Route route = RequestMetrics.Route.OTHER;
+    /**
+     * Versions claimed with If-Match by the query, given back if the change fails.
+     * Key : entity id, value : previous version and claimed version.
+     */
+    private final Map<String, long[]> versionClaims = new HashMap<>();
+
     @Override
     public Response inputQuery(String path, HttpHeaders headers, HttpServletRequest request) {
 
@@ -89,6 +120,7 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
 
         inputParser = ParserFactory.build(contentType);
         outputParser = ParserFactory.build(acceptType);
+        responseMediaType = ParserFactory.getMediaType(acceptType);
         inputParser.setServerURI(uri.getBaseUri());
         outputParser.setServerURI(uri.getBaseUri());
         try {
@@ -144,10 +176,207 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
         return response;
     }
 
+    /**
+     * Execute the query with the connector executor, the suspended response is resumed with the query response.
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse
+     */
+    protected void executeQuery(final String path, final HttpHeaders headers, final HttpServletRequest request, final AsyncResponse asyncResponse) {
+        executeQuery(request, asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                return inputQuery(path, headers, request);
+            }
+        });
+    }
+
+    /**
+     * Execute a query with the connector executor and record its duration, from its reception, in the query metrics.
+     *
+     * @param request
+     * @param asyncResponse
+     * @param query
+     */
+    protected void executeQuery(final HttpServletRequest request, final AsyncResponse asyncResponse, final Callable<Response> query) {
+        final long start = System.nanoTime();
+        final String method = request.getMethod();
+        ConnectorExecutor.execute(asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                int status = Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+                try {
+                    Response response = query.call();
+                    status = response == null ? Response.Status.NO_CONTENT.getStatusCode() : response.getStatus();
+                    return response;
+                } catch (WebApplicationException ex) {
+                    status = ex.getResponse().getStatus();
+                    throw ex;
+                } finally {
+                    endEntityChanges(status);
+                    RequestMetrics.record(method, route, responseMediaType, status, System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    /**
+     * Set the route type of the query for the query metrics.
+     *
+     * @param pathParser
+     */
+    protected void setRoute(final PathParser pathParser) {
+        if (pathParser.isInterfQuery()) {
+            route = RequestMetrics.Route.INTERFACE;
+        } else if (pathParser.isActionInvocationQuery()) {
+            route = RequestMetrics.Route.ACTION;
+        } else if (pathParser.isMixinTagDefinitionRequest()) {
+            route = RequestMetrics.Route.MIXIN_TAG;
+        } else if (pathParser.isEntityQuery()) {
+            route = RequestMetrics.Route.ENTITY;
+        } else if (pathParser.isCollectionQuery()) {
+            route = RequestMetrics.Route.COLLECTION;
+        } else {
+            route = RequestMetrics.Route.OTHER;
+        }
+    }
+
     protected UriInfo getUri() {
         return uri;
     }
 
+    /**
+     * Check the If-Match and If-None-Match headers of a change on an entity (PUT or POST).
+     * With If-Match, the entity is given a new version before the change : of concurrent
+     * changes based on the same version, only the first one is done, without lock.
+     * The version is claimed before the change and not after it, else two changes could
+     * pass the check before any of them is done. If the change fails, the previous version
+     * is given back by endEntityChange() unless the entity has been changed meanwhile.
+     *
+     * @param headers
+     * @param entityId may be null for a new entity.
+     * @return 412 Precondition Failed if a condition is false, null to do the change.
+     */
+    protected Response checkEntityPreconditions(final HttpHeaders headers, final String entityId) {
+        Entity entity = entityId == null ? null : ConfigurationManager.findEntity(ConfigurationManager.DEFAULT_OWNER, entityId);
+        String message = null;
+        if (entity != null && Utils.isEtagMatching(headers, Constants.HEADER_IF_NONE_MATCH, ConfigurationManager.getEtag(entity), true)) {
+            message = Utils.isAnyEtag(headers, Constants.HEADER_IF_NONE_MATCH) ? "The entity " + entityId + " already exists" : "The entity " + entityId + " has not been changed";
+        } else if (Utils.hasHeader(headers, Constants.HEADER_IF_MATCH)) {
+            if (entity == null) {
+                message = "The entity " + entityId + " doesn't exist";
+            } else if (!Utils.isAnyEtag(headers, Constants.HEADER_IF_MATCH)) {
+                long version = ConfigurationManager.getVersion(entityId);
+                long claimed = -1;
+                if (Utils.isEtagMatching(headers, Constants.HEADER_IF_MATCH, new EntityTag(String.valueOf(version)), false)) {
+                    claimed = ConfigurationManager.claimVersion(entityId, version);
+                }
+                if (claimed < 0) {
+                    message = "The entity " + entityId + " has been changed, get its current version";
+                } else {
+                    versionClaims.put(entityId, new long[]{version, claimed});
+                }
+            }
+        }
+        if (message == null) {
+            return null;
+        }
+        try {
+            return outputParser.parseResponse(message, Response.Status.PRECONDITION_FAILED);
+        } catch (ResponseParseException ex) {
+            throw new InternalServerErrorException(ex);
+        }
+    }
+
+    /**
+     * @param response response of a change on an entity.
+     * @param entityId
+     * @return the response with the new eTag of the entity if the change is done.
+     */
+    protected Response withEtag(final Response response, final String entityId) {
+        endEntityChange(response, entityId);
+        if (response == null || entityId == null || response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            return response;
+        }
+        Entity entity = ConfigurationManager.findEntity(ConfigurationManager.DEFAULT_OWNER, entityId);
+        if (entity == null) {
+            return response;
+        }
+        return Response.fromResponse(response).tag(ConfigurationManager.getEtag(entity)).build();
+    }
+
+    /**
+     * End a change on an entity checked by checkEntityPreconditions(). If the change is not done,
+     * the version claimed with If-Match is given back : the eTags known by the clients stay valid.
+     *
+     * @param response response of the change, null if the change has thrown an exception.
+     * @param entityId
+     * @return the response.
+     */
+    protected Response endEntityChange(final Response response, final String entityId) {
+        long[] claim = entityId == null ? null : versionClaims.remove(entityId);
+        if (claim != null && (response == null || response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL)) {
+            ConfigurationManager.restoreVersion(entityId, claim[1], claim[0]);
+        }
+        return response;
+    }
+
+    /**
+     * End the changes of the query not ended by endEntityChange(), when the query has thrown an exception.
+     *
+     * @param status status of the query response.
+     */
+    private void endEntityChanges(final int status) {
+        for (Map.Entry<String, long[]> claim : versionClaims.entrySet()) {
+            if (status >= Response.Status.BAD_REQUEST.getStatusCode()) {
+                ConfigurationManager.restoreVersion(claim.getKey(), claim.getValue()[1], claim.getValue()[0]);
+            }
+        }
+        versionClaims.clear();
+    }
+
+    /**
+     * Render an action job in json or in plain text.
+     *
+     * @param job
+     * @param status
+     * @return a response with the job and its location.
+     */
+    protected Response renderActionJob(final ActionJob job, final Response.Status status) {
+        String location = getUri().getBaseUri().toString();
+        if (location.endsWith("/")) {
+            location = location.substring(0, location.length() - 1);
+        }
+        location += ActionJobManager.getJobLocation(job);
+        return Response.fromResponse(renderActionOutcomes(job, status))
+                .header("Location", location)
+                .build();
+    }
+
+    /**
+     * Render the outcomes of an action on entities in json or in plain text.
+     *
+     * @param job
+     * @param status
+     * @return
+     */
+    protected Response renderActionOutcomes(final ActionJob job, final Response.Status status) {
+        Response.ResponseBuilder responseBuilder = Response.status(status)
+                .header("Server", Constants.OCCI_SERVER_HEADER);
+        if (acceptType.equals(Constants.MEDIA_TYPE_JSON) || acceptType.equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
+            try {
+                responseBuilder.entity(new ObjectMapper().writeValueAsString(job)).type(Constants.MEDIA_TYPE_JSON);
+            } catch (JsonProcessingException ex) {
+                throw new InternalServerErrorException(ex);
+            }
+        } else {
+            responseBuilder.entity(job.toString()).type(MediaType.TEXT_PLAIN);
+        }
+        return responseBuilder.build();
+    }
+
     @Override
     public String getAcceptType() {
         return acceptType;
@@ -159,6 +388,22 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
     }
 
 
+    /**
+     * @return the number of entities of a collection action executed at the same time (parameter parallelism).
+     */
+    protected int getActionParallelism() {
+        String parallelism = inputParser.getParameter(Constants.PARALLELISM_KEY);
+        if (parallelism == null || parallelism.isEmpty()) {
+            return ActionExecutor.getDefaultParallelism();
+        }
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(parallelism), ActionExecutor.getMaxParallelism()));
+        } catch (NumberFormatException ex) {
+            LOGGER.error("The parameter \"parallelism\" is not set correctly, this must be a number.");
+            return ActionExecutor.getDefaultParallelism();
+        }
+    }
+
     /**
      * Get collections based on location and Accept = text/uri-list or give entities details for other accept types.
      * Examples of query for filtering and pagination:
@@ -172,6 +417,17 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
      */
     @Override
     public List<Entity> getEntityCollection(final String path) throws ConfigurationException {
+        return ConfigurationManager.findAllEntities(ConfigurationManager.DEFAULT_OWNER, buildCollectionFilter(path));
+    }
+
+    /**
+     * Build the collection filter of a collection path from the request parameters (filters, pagination and sort).
+     *
+     * @param path
+     * @return
+     * @throws ConfigurationException if the path is an undefined mixin tag location.
+     */
+    protected CollectionFilter buildCollectionFilter(final String path) throws ConfigurationException {
         // Get pagination if any (current page number and number max of items, for the last if none defined, used to 20 items per page by default).
         String pageTmp = inputParser.getParameter(Constants.CURRENT_PAGE_KEY);
         String itemsNumber = inputParser.getParameter(Constants.NUMBER_ITEMS_PER_PAGE_KEY);
@@ -193,6 +449,25 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
                 LOGGER.error("Default to " + page);
             }
         }
+        // Cursor pagination (parameter next, empty for the first page), page is not used.
+        String nextToken = inputParser.getParameter(Constants.NEXT_KEY);
+        long cursor = -1;
+        if (nextToken != null) {
+            try {
+                cursor = CursorToken.decode(nextToken);
+            } catch (IllegalArgumentException ex) {
+                throw new BadRequestException("The parameter \"next\" is not a valid continuation token.");
+            }
+            if (itemsNumber != null && !itemsNumber.isEmpty()) {
+                try {
+                    items = Integer.valueOf(itemsNumber);
+                } catch (NumberFormatException ex) {
+                    LOGGER.error("The parameter \"number\" is not set correctly, please check the parameter, this must be a number.");
+                    LOGGER.error("Default to " + items);
+                }
+            }
+            page = Constants.DEFAULT_CURRENT_PAGE;
+        }
         String operatorTmp = inputParser.getParameter(Constants.OPERATOR_KEY);
         if (operatorTmp == null) {
             operatorTmp = "0";
@@ -203,7 +478,6 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
         } catch (NumberFormatException ex) {
         }
 
-        List<Entity> entities;
         // Collection on categories. // Like : get on myhost/compute/
         boolean isCollectionOnCategoryPath = Utils.isCollectionOnCategory(path);
 
@@ -219,6 +493,11 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
         filter.setCategoryFilter(categoryFilter);
         filter.setAttributeFilter(attributeFilter);
         filter.setValue(attributeValue);
+        filter.setSortKeys(CollectionFilter.parseSortKeys(inputParser.getParameter(Constants.SORT_KEY)));
+        if (cursor >= 0 && !filter.getSortKeys().isEmpty()) {
+            throw new BadRequestException("The parameter \"next\" cannot be used with \"sort\", cursor pagination follows the creation order.");
+        }
+        filter.setCursor(cursor);
         if (isCollectionOnCategoryPath && (categoryFilter == null || categoryFilter.isEmpty())) {
             filter.setCategoryFilter(Utils.getCategoryFilterSchemeTerm(path, ConfigurationManager.DEFAULT_OWNER));
         } else {
@@ -239,10 +518,7 @@ public abstract class AbstractEntryPoint implements IEntryPoint {
             }
         }
 
-        entities = ConfigurationManager.findAllEntities(ConfigurationManager.DEFAULT_OWNER, filter);
-        return entities;
-
-
+        return filter;
     }
 
 
@@ -27,6 +27,7 @@ import org.occiware.mart.server.servlet.exception.ResponseParseException;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
 import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.FieldsFilter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.HttpHeaders;
@@ -235,6 +236,13 @@ public abstract class AbstractRequestParser implements IRequestParser {
         return getRequestPameters().get(key);
     }
 
+    /**
+     * @return the sparse fieldset of the request (parameter fields), all fields if not set.
+     */
+    protected FieldsFilter getFieldsFilter() {
+        return FieldsFilter.parse(getParameter(Constants.FIELDS_KEY));
+    }
+
     @Override
     public String getAcceptedTypes() {
         return Constants.MEDIA_TYPE_TEXT_OCCI + ";" + Constants.MEDIA_TYPE_JSON + ";" + Constants.MEDIA_TYPE_JSON_OCCI + ";" + MediaType.TEXT_PLAIN;
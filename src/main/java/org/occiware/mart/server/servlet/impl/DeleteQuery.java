@@ -24,6 +24,7 @@ import org.occiware.mart.server.servlet.exception.ResponseParseException;
 import org.occiware.mart.server.servlet.facade.AbstractDeleteQuery;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorGuard;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.Constants;
 import org.occiware.mart.server.servlet.utils.Utils;
@@ -35,8 +36,12 @@ import javax.ws.rs.DELETE;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.*;
 
@@ -46,14 +51,30 @@ import java.util.*;
  * @author cgourdin
  */
 @Path("/")
+// Asynchronous methods have no return type, the media types they produce must be declared.
+@Produces({Constants.MEDIA_TYPE_TEXT_OCCI, Constants.MEDIA_TYPE_TEXT_URI_LIST, Constants.MEDIA_TYPE_JSON,
+        Constants.MEDIA_TYPE_JSON_OCCI, MediaType.TEXT_PLAIN, MediaType.WILDCARD})
 public class DeleteQuery extends AbstractDeleteQuery {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DeleteQuery.class);
 
+    /**
+     * DELETE entry point, the query is executed by the connector executor (see inputQuery).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse resumed with the query response.
+     */
     @Path("{path:.*}")
     @DELETE
+    public void asyncInputQuery(@PathParam("path") final String path, @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+                                @Suspended final AsyncResponse asyncResponse) {
+        executeQuery(path, headers, request, asyncResponse);
+    }
+
     @Override
-    public Response inputQuery(@PathParam("path") String path, @Context HttpHeaders headers, @Context HttpServletRequest request) {
+    public Response inputQuery(String path, HttpHeaders headers, HttpServletRequest request) {
         LOGGER.info("--> Call DELETE method input query for relative path mode --> " + path);
 
         Response response = super.inputQuery(path, headers, request);
@@ -67,6 +88,7 @@ public class DeleteQuery extends AbstractDeleteQuery {
             response = null;
 
             PathParser pathParser = new PathParser(data, path, inputParser.getRequestPameters());
+            setRoute(pathParser);
 
             String location = pathParser.getLocation();
             if (location == null || location.trim().isEmpty()) {
@@ -255,7 +277,7 @@ public class DeleteQuery extends AbstractDeleteQuery {
                 }
 
                 for (Entity entityInf : entities) {
-                    entityInf.occiDelete();
+                    ConnectorGuard.occiDelete(entityInf);
                     ConfigurationManager.removeOrDissociateFromConfiguration(ConfigurationManager.DEFAULT_OWNER, entityInf.getId());
                 }
                 response = outputParser.parseEmptyResponse(Response.Status.OK);
@@ -297,7 +319,7 @@ public class DeleteQuery extends AbstractDeleteQuery {
 
         entityId = entity.getId();
         title = entity.getTitle();
-        entity.occiDelete();
+        ConnectorGuard.occiDelete(entity);
         ConfigurationManager.removeOrDissociateFromConfiguration(ConfigurationManager.DEFAULT_OWNER, entityId);
         LOGGER.info("Remove entity: " + title + " --> " + entityId);
         response = outputParser.parseEmptyResponse(Response.Status.OK);
@@ -18,43 +18,138 @@
  */
 package org.occiware.mart.server.servlet.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.occiware.clouddesigner.occi.Entity;
 import org.occiware.mart.server.servlet.exception.ResponseParseException;
 import org.occiware.mart.server.servlet.facade.AbstractGetQuery;
 import org.occiware.mart.server.servlet.impl.parser.json.JsonOcciParser;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
+import org.occiware.mart.server.servlet.model.ActionJob;
+import org.occiware.mart.server.servlet.model.ActionJobManager;
+import org.occiware.mart.server.servlet.model.AggregateQuery;
+import org.occiware.mart.server.servlet.model.AggregateResult;
+import org.occiware.mart.server.servlet.model.CollectionGenerations;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.QueryPlan;
+import org.occiware.mart.server.servlet.model.RetrieveCache;
+import org.occiware.mart.server.servlet.model.RetrieveExecutor;
+import org.occiware.mart.server.servlet.model.ServerMetrics;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
 import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.CursorToken;
 import org.occiware.mart.server.servlet.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
+import javax.ws.rs.HEAD;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * @author Christophe Gourdin
  */
 @Path("/")
+// Asynchronous methods have no return type, the media types they produce must be declared.
+@Produces({Constants.MEDIA_TYPE_TEXT_OCCI, Constants.MEDIA_TYPE_TEXT_URI_LIST, Constants.MEDIA_TYPE_JSON,
+        Constants.MEDIA_TYPE_JSON_OCCI, MediaType.TEXT_PLAIN, MediaType.WILDCARD})
 public class GetQuery extends AbstractGetQuery {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GetQuery.class);
 
+    /**
+     * Maximum number of stale entity ids given in header.
+     */
+    private static final int MAX_STALE_IDS_IN_HEADER = 100;
+
+    /**
+     * HEAD request, collections are only counted.
+     */
+    private boolean headQuery = false;
+
+    /**
+     * Cache-Control: no-cache, entities are retrieved from their connector whatever the retrieve cache.
+     */
+    private boolean refresh = false;
+
+    /**
+     * Headers of the query, used for the conditional requests on collections.
+     */
+    private HttpHeaders requestHeaders;
+
+    /**
+     * HEAD on an entity or a collection, the response headers are those of the GET query.
+     * On collections the entities are only counted (see getEntitiesCount).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @return
+     */
+    public Response headQuery(String path, HttpHeaders headers, HttpServletRequest request) {
+        LOGGER.info("Call HEAD method for path: " + path);
+        headQuery = true;
+        return inputQuery(path, headers, request);
+    }
+
+    /**
+     * HEAD entry point, the query is executed by the connector executor (see headQuery).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse resumed with the query response.
+     */
+    @Path("{path:.*}/")
+    @HEAD
+    public void asyncHeadQuery(@PathParam("path") final String path, @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+                               @Suspended final AsyncResponse asyncResponse) {
+        executeQuery(request, asyncResponse, new Callable<Response>() {
+            @Override
+            public Response call() {
+                return headQuery(path, headers, request);
+            }
+        });
+    }
+
+    /**
+     * GET entry point, the query is executed by the connector executor (see inputQuery).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse resumed with the query response.
+     */
     @Path("{path:.*}/")
     @GET
+    public void asyncInputQuery(@PathParam("path") final String path, @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+                                @Suspended final AsyncResponse asyncResponse) {
+        executeQuery(path, headers, request, asyncResponse);
+    }
+
     @Override
-    public Response inputQuery(@PathParam("path") String path, @Context HttpHeaders headers, @Context HttpServletRequest request) {
+    public Response inputQuery(String path, HttpHeaders headers, HttpServletRequest request) {
         LOGGER.info("Call GET method in inputQuery() for path: " + path);
 
         Response response = super.inputQuery(path, headers, request);
@@ -62,6 +157,16 @@ public class GetQuery extends AbstractGetQuery {
             return response;
         }
 
+        String jobId = ActionJobManager.getJobIdFromPath(path);
+        if (jobId != null) {
+            return getActionJob(jobId);
+        }
+        if (ServerMetrics.isMetricsPath(path)) {
+            return getMetrics();
+        }
+        refresh = Utils.isNoCacheRequested(headers);
+        requestHeaders = headers;
+
         List<InputData> datas = inputParser.getInputDatas();
         InputData data = null;
         if (!datas.isEmpty()) {
@@ -78,6 +183,7 @@ public class GetQuery extends AbstractGetQuery {
         }
 
         PathParser pathParser = new PathParser(data, path, inputParser.getRequestPameters());
+        setRoute(pathParser);
 
         String location = pathParser.getLocation();
         if (location == null || location.trim().isEmpty()) {
@@ -156,7 +262,19 @@ public class GetQuery extends AbstractGetQuery {
             }
 
             if (entity != null) {
-                entity.occiRetrieve();
+                EntityTag eTag = ConfigurationManager.getEtag(entity);
+                // The client has the current version : no connector call and no rendering.
+                if (!refresh && Utils.isEtagMatching(headers, Constants.HEADER_IF_NONE_MATCH, eTag, true)) {
+                    return notModified(eTag);
+                }
+                if (!headQuery) {
+                    RetrieveCache.retrieve(entity, refresh);
+                    // The version changes if the connector has changed the entity.
+                    eTag = ConfigurationManager.getEtag(entity);
+                }
+                if (refresh && Utils.isEtagMatching(headers, Constants.HEADER_IF_NONE_MATCH, eTag, true)) {
+                    return notModified(eTag);
+                }
 
                 if (getAcceptType().equals(Constants.MEDIA_TYPE_TEXT_URI_LIST)) {
                     try {
@@ -172,7 +290,7 @@ public class GetQuery extends AbstractGetQuery {
                 } else {
                     try {
                         response = outputParser.parseResponse(entity);
-                        return response;
+                        return Response.fromResponse(response).tag(eTag).build();
                     } catch (ResponseParseException ex) {
                         // This must never go here. If that's the case this is a bug in parser.
                         throw new InternalServerErrorException(ex);
@@ -190,6 +308,15 @@ public class GetQuery extends AbstractGetQuery {
 
         if (pathParser.isCollectionQuery()) {
             // Collections part.
+            if (headQuery || Boolean.parseBoolean(inputParser.getParameter(Constants.COUNT_KEY))) {
+                return getEntitiesCount(path);
+            }
+            if (Boolean.parseBoolean(inputParser.getParameter(Constants.EXPLAIN_KEY))) {
+                return getEntitiesExplain(path);
+            }
+            if (inputParser.getParameter(Constants.AGGREGATE_KEY) != null) {
+                return getEntitiesAggregate(path);
+            }
             response = getEntities(path);
             return response;
         } else {
@@ -202,6 +329,55 @@ public class GetQuery extends AbstractGetQuery {
         }
     }
 
+    /**
+     * @param eTag
+     * @return 304 Not Modified with the entity eTag.
+     */
+    private Response notModified(final EntityTag eTag) {
+        return Response.notModified(eTag)
+                .header("Server", Constants.OCCI_SERVER_HEADER)
+                .build();
+    }
+
+    /**
+     * @param generation generation of the collection.
+     * @return the eTag of a collection : its generation and a hash of the query parameters and of the accept type.
+     */
+    private EntityTag getCollectionEtag(final CollectionGenerations.Generation generation) {
+        String query = getUri().getRequestUri().getRawQuery();
+        int hash = 31 * (query == null ? 0 : query.hashCode()) + getAcceptType().hashCode();
+        return new EntityTag(generation.getValue() + "-" + Integer.toHexString(hash));
+    }
+
+    /**
+     * A collection is not modified if the If-None-Match header contains its eTag or,
+     * without If-None-Match header, if it has not changed since the If-Modified-Since date.
+     *
+     * @param eTag
+     * @param generation
+     * @return true if the client has the current collection.
+     */
+    private boolean isCollectionNotModified(final EntityTag eTag, final CollectionGenerations.Generation generation) {
+        if (Utils.hasHeader(requestHeaders, Constants.HEADER_IF_NONE_MATCH)) {
+            return Utils.isEtagMatching(requestHeaders, Constants.HEADER_IF_NONE_MATCH, eTag, true);
+        }
+        return Utils.hasHeader(requestHeaders, Constants.HEADER_IF_MODIFIED_SINCE)
+                && !Utils.isModifiedSince(requestHeaders, generation.getLastModified());
+    }
+
+    /**
+     * @param response
+     * @param eTag
+     * @param generation
+     * @return the response with the eTag and the last modified date of the collection.
+     */
+    private Response withCollectionValidators(final Response response, final EntityTag eTag, final CollectionGenerations.Generation generation) {
+        return Response.fromResponse(response)
+                .tag(eTag)
+                .lastModified(new Date(generation.getLastModified()))
+                .build();
+    }
+
     /**
      * Get a query interface.
      *
@@ -234,9 +410,21 @@ public class GetQuery extends AbstractGetQuery {
         Response response;
         String acceptType = getAcceptType();
         List<Entity> entities;
+        CollectionFilter filter;
+        CollectionGenerations.Generation generation;
+        EntityTag eTag;
+        Set<String> staleIds = Collections.emptySet();
         try {
             try {
-                entities = getEntityCollection(path);
+                filter = buildCollectionFilter(path);
+                // Taken before reading the collection : a change done while reading gives a new eTag.
+                generation = ConfigurationManager.getCollectionGeneration(ConfigurationManager.DEFAULT_OWNER, filter);
+                eTag = getCollectionEtag(generation);
+                // The client has the current collection : the entities are not read, retrieved nor rendered.
+                if (!refresh && isCollectionNotModified(eTag, generation)) {
+                    return withCollectionValidators(notModified(eTag), eTag, generation);
+                }
+                entities = ConfigurationManager.findAllEntities(ConfigurationManager.DEFAULT_OWNER, filter);
             } catch (ConfigurationException ex) {
                 LOGGER.error(ex.getMessage());
                 response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
@@ -253,7 +441,7 @@ public class GetQuery extends AbstractGetQuery {
                 if (locations.isEmpty()) {
 
                     if (acceptType.equals(Constants.MEDIA_TYPE_JSON) || acceptType.equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
-                        response = outputParser.parseResponse("{ }");
+                        response = withCollectionValidators(outputParser.parseResponse("{ }"), eTag, generation);
                     } else {
                         response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
                     }
@@ -263,26 +451,236 @@ public class GetQuery extends AbstractGetQuery {
             } else {
                 if (entities.isEmpty()) {
                     if (acceptType.equals(Constants.MEDIA_TYPE_JSON) || acceptType.equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
-                        response = outputParser.parseResponse(JsonOcciParser.EMPTY_JSON);
+                        response = withCollectionValidators(outputParser.parseResponse(JsonOcciParser.EMPTY_JSON), eTag, generation);
                     } else {
                         response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
                     }
                     return response;
                 }
-                List<Entity> entitiesInf = new LinkedList<>();
-                // Update all the list of entities before setting response.
-                for (Entity entityInf : entities) {
-                    entityInf.occiRetrieve();
-                    entitiesInf.add(entityInf);
+                // Update all the list of entities before setting response, in parallel with a deadline.
+                // The entities still written by their connector at the deadline are replaced by a copy.
+                staleIds = RetrieveExecutor.retrieveAll(entities, RetrieveExecutor.getTimeoutMillis(), refresh);
+                if (refresh && staleIds.isEmpty() && isCollectionNotModified(eTag, generation)
+                        && ConfigurationManager.getCollectionGeneration(ConfigurationManager.DEFAULT_OWNER, filter).getValue() == generation.getValue()) {
+                    // Nothing has changed on the connectors.
+                    return withCollectionValidators(notModified(eTag), eTag, generation);
                 }
-                response = outputParser.parseResponse(entitiesInf);
+                response = outputParser.parseResponse(new LinkedList<>(entities));
             }
 
         } catch (ResponseParseException ex) {
             // Must never happen if input query is ok.
             throw new InternalServerErrorException(ex);
         }
+        if (!staleIds.isEmpty()) {
+            response = addStaleHeaders(response, staleIds);
+        }
+        if (filter.isCursorPagination() && !entities.isEmpty() && entities.size() == filter.getNumberOfItemsPerPage()) {
+            // The page is full, give the token to resume after its last entity.
+            long sequence = ConfigurationManager.getCreationSequence(entities.get(entities.size() - 1));
+            response = Response.fromResponse(response)
+                    .header(Constants.HEADER_NEXT, CursorToken.encode(sequence))
+                    .build();
+        }
+        return withCollectionValidators(response, eTag, generation);
+    }
+
+    /**
+     * Mark a collection response as stale : some entities have not been
+     * retrieved from their connector in time and are rendered with their last
+     * known state.
+     *
+     * @param response
+     * @param staleIds ids of the stale entities.
+     * @return the response with the stale headers.
+     */
+    private Response addStaleHeaders(final Response response, final Set<String> staleIds) {
+        // Header values are limited, only the first ids are given.
+        StringBuilder ids = new StringBuilder();
+        int count = 0;
+        for (String staleId : staleIds) {
+            if (count++ == MAX_STALE_IDS_IN_HEADER) {
+                break;
+            }
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(staleId);
+        }
+        return Response.fromResponse(response)
+                .header("Warning", "110 - \"Response is Stale\"")
+                .header(Constants.HEADER_STALE_COUNT, staleIds.size())
+                .header(Constants.HEADER_STALE_ENTITIES, ids.toString())
+                .build();
+    }
+
+    /**
+     * Count the entities of a collection (HEAD or parameter count=true), the
+     * entities are not retrieved nor rendered. The total count and the
+     * pagination are given in headers.
+     *
+     * @param path
+     * @return an empty response with count headers.
+     */
+    public Response getEntitiesCount(final String path) {
+        Response response;
+        CollectionFilter filter;
+        try {
+            try {
+                filter = buildCollectionFilter(path);
+            } catch (ConfigurationException ex) {
+                LOGGER.error(ex.getMessage());
+                response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
+                return response;
+            }
+        } catch (ResponseParseException ex) {
+            throw new InternalServerErrorException(ex);
+        }
+        CollectionGenerations.Generation generation = ConfigurationManager.getCollectionGeneration(ConfigurationManager.DEFAULT_OWNER, filter);
+        EntityTag eTag = getCollectionEtag(generation);
+        if (isCollectionNotModified(eTag, generation)) {
+            return withCollectionValidators(notModified(eTag), eTag, generation);
+        }
+        int total = ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, filter);
+        int limit = filter.getLimit();
+        int pageCount = Math.max(0, (limit < 0 ? total : Math.min(total, limit)) - filter.getOffset());
+
+        response = Response.fromResponse(outputParser.parseEmptyResponse(Response.Status.OK))
+                .header(Constants.HEADER_TOTAL_COUNT, total)
+                .header(Constants.HEADER_PAGE, filter.getCurrentPage())
+                .header(Constants.HEADER_NUMBER, filter.getNumberOfItemsPerPage())
+                .header(Constants.HEADER_PAGE_COUNT, pageCount)
+                .build();
+        return withCollectionValidators(response, eTag, generation);
+    }
+
+    /**
+     * Explain a collection query (parameter explain=true), the query is
+     * executed without retrieving nor rendering the entities. The plan gives
+     * the chosen access path, the alternatives with their cost and the
+     * estimated and actual number of entities.
+     *
+     * @param path
+     * @return the query plan in json or in plain text.
+     */
+    public Response getEntitiesExplain(final String path) {
+        Response response;
+        CollectionFilter filter;
+        try {
+            try {
+                filter = buildCollectionFilter(path);
+            } catch (ConfigurationException ex) {
+                LOGGER.error(ex.getMessage());
+                response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
+                return response;
+            }
+        } catch (ResponseParseException ex) {
+            throw new InternalServerErrorException(ex);
+        }
+        QueryPlan plan = ConfigurationManager.explainEntities(ConfigurationManager.DEFAULT_OWNER, filter);
+        String acceptType = getAcceptType();
+        if (acceptType.equals(Constants.MEDIA_TYPE_JSON) || acceptType.equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
+            try {
+                response = Response.ok(new ObjectMapper().writeValueAsString(plan), Constants.MEDIA_TYPE_JSON)
+                        .header("Server", Constants.OCCI_SERVER_HEADER)
+                        .build();
+            } catch (JsonProcessingException ex) {
+                throw new InternalServerErrorException(ex);
+            }
+        } else {
+            response = Response.ok(plan.toString(), MediaType.TEXT_PLAIN)
+                    .header("Server", Constants.OCCI_SERVER_HEADER)
+                    .build();
+        }
+        return response;
+    }
+
+    /**
+     * Aggregate a collection (parameters aggregate and group), the entities
+     * are not retrieved from connectors nor rendered. The whole collection
+     * respecting the filter is aggregated, pagination is not applied.
+     *
+     * @param path
+     * @return a row by group with the measures, in json or in plain text.
+     */
+    public Response getEntitiesAggregate(final String path) {
+        Response response;
+        CollectionFilter filter;
+        AggregateQuery query;
+        try {
+            try {
+                query = AggregateQuery.parse(inputParser.getParameter(Constants.AGGREGATE_KEY), inputParser.getParameter(Constants.GROUP_KEY));
+            } catch (IllegalArgumentException ex) {
+                response = outputParser.parseResponse(ex.getMessage(), Response.Status.BAD_REQUEST);
+                return response;
+            }
+            try {
+                filter = buildCollectionFilter(path);
+            } catch (ConfigurationException ex) {
+                LOGGER.error(ex.getMessage());
+                response = outputParser.parseResponse("resource " + path + " not found", Response.Status.NOT_FOUND);
+                return response;
+            }
+        } catch (ResponseParseException ex) {
+            throw new InternalServerErrorException(ex);
+        }
+        AggregateResult result = ConfigurationManager.aggregateEntities(ConfigurationManager.DEFAULT_OWNER, filter, query);
+        String acceptType = getAcceptType();
+        if (acceptType.equals(Constants.MEDIA_TYPE_JSON) || acceptType.equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
+            Map<String, Object> content = new HashMap<>();
+            content.put("aggregates", result.getRows(query));
+            try {
+                response = Response.ok(new ObjectMapper().writeValueAsString(content), Constants.MEDIA_TYPE_JSON)
+                        .header("Server", Constants.OCCI_SERVER_HEADER)
+                        .build();
+            } catch (JsonProcessingException ex) {
+                throw new InternalServerErrorException(ex);
+            }
+        } else {
+            response = Response.ok(result.toText(query), MediaType.TEXT_PLAIN)
+                    .header("Server", Constants.OCCI_SERVER_HEADER)
+                    .build();
+        }
         return response;
     }
 
+    /**
+     * Give the progress and the outcomes of an asynchronous action job.
+     *
+     * @param jobId
+     * @return the job, 404 if unknown or removed after its retention delay.
+     */
+    public Response getActionJob(final String jobId) {
+        ActionJob job = ActionJobManager.getJob(jobId);
+        if (job == null) {
+            try {
+                return outputParser.parseResponse("job " + jobId + " not found", Response.Status.NOT_FOUND);
+            } catch (ResponseParseException ex) {
+                throw new InternalServerErrorException(ex);
+            }
+        }
+        return renderActionJob(job, Response.Status.OK);
+    }
+
+    /**
+     * Give the server metrics in json or in plain text.
+     *
+     * @return
+     */
+    public Response getMetrics() {
+        Response.ResponseBuilder responseBuilder = Response.ok()
+                .header("Server", Constants.OCCI_SERVER_HEADER)
+                .header(Constants.HEADER_CACHE_CONTROL, Constants.CACHE_CONTROL_NO_CACHE);
+        if (getAcceptType().equals(Constants.MEDIA_TYPE_JSON) || getAcceptType().equals(Constants.MEDIA_TYPE_JSON_OCCI)) {
+            try {
+                responseBuilder.entity(new ObjectMapper().writeValueAsString(ServerMetrics.getMetrics())).type(Constants.MEDIA_TYPE_JSON);
+            } catch (JsonProcessingException ex) {
+                throw new InternalServerErrorException(ex);
+            }
+        } else {
+            responseBuilder.entity(ServerMetrics.toText()).type(ServerMetrics.PROMETHEUS_MEDIA_TYPE);
+        }
+        return responseBuilder.build();
+    }
+
 }
@@ -19,11 +19,15 @@
 package org.occiware.mart.server.servlet.impl;
 
 import org.occiware.clouddesigner.occi.*;
-import org.occiware.clouddesigner.occi.util.OcciHelper;
 import org.occiware.mart.server.servlet.exception.ResponseParseException;
 import org.occiware.mart.server.servlet.facade.AbstractPostQuery;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
+import org.occiware.mart.server.servlet.model.ActionJob;
+import org.occiware.mart.server.servlet.model.ActionJobManager;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorGuard;
+import org.occiware.mart.server.servlet.model.RetrieveCache;
+import org.occiware.mart.server.servlet.model.exceptions.ActionExecutionException;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.Constants;
 import org.occiware.mart.server.servlet.utils.Utils;
@@ -32,11 +36,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * execute actions, update attributes on entities, update mixin tag associations
@@ -44,14 +51,30 @@ import java.util.*;
  * @author Christophe Gourdin
  */
 @Path("/")
+// Asynchronous methods have no return type, the media types they produce must be declared.
+@Produces({Constants.MEDIA_TYPE_TEXT_OCCI, Constants.MEDIA_TYPE_TEXT_URI_LIST, Constants.MEDIA_TYPE_JSON,
+        Constants.MEDIA_TYPE_JSON_OCCI, MediaType.TEXT_PLAIN, MediaType.WILDCARD})
 public class PostQuery extends AbstractPostQuery {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PostQuery.class);
 
+    /**
+     * POST entry point, the query is executed by the connector executor (see inputQuery).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse resumed with the query response.
+     */
     @Path("{path:.*}")
     @POST
+    public void asyncInputQuery(@PathParam("path") final String path, @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+                                @Suspended final AsyncResponse asyncResponse) {
+        executeQuery(path, headers, request, asyncResponse);
+    }
+
     @Override
-    public Response inputQuery(@PathParam("path") String path, @Context HttpHeaders headers, @Context HttpServletRequest request) {
+    public Response inputQuery(String path, HttpHeaders headers, HttpServletRequest request) {
         LOGGER.info("--> Call POST method input query for relative path mode --> " + path);
         Response response = super.inputQuery(path, headers, request);
         if (response != null) {
@@ -71,6 +94,7 @@ public class PostQuery extends AbstractPostQuery {
         for (InputData data : datas) {
 
             PathParser pathParser = new PathParser(data, path, inputParser.getRequestPameters());
+            setRoute(pathParser);
 
             if (pathParser.isInterfQuery()) {
                 try {
@@ -105,6 +129,9 @@ public class PostQuery extends AbstractPostQuery {
                 }
 
 
+                // With async=true, the action is executed by a job and the response is 202 with the job location.
+                boolean async = Boolean.parseBoolean(inputParser.getParameter(Constants.ASYNC_KEY));
+
                 // Is action is scheme + term or only a term parameter.
                 if (ConfigurationManager.getExtensionForAction(ConfigurationManager.DEFAULT_OWNER, actionId) == null) {
                     // This is maybe an action term only.
@@ -163,7 +190,17 @@ public class PostQuery extends AbstractPostQuery {
                             }
                         }
                     }
-                    response = executeAction(actionId, entity, data);
+                    // If-Match : execute the action only on the given version.
+                    response = checkEntityPreconditions(headers, entityId);
+                    if (response != null) {
+                        return response;
+                    }
+                    if (async) {
+                        response = submitActionJob(actionId, Collections.singletonList(entity), data);
+                    } else {
+                        response = executeAction(actionId, entity, data);
+                    }
+                    endEntityChange(response, entityId);
                     continue;
                 }
 
@@ -171,7 +208,11 @@ public class PostQuery extends AbstractPostQuery {
                 if (pathParser.isCollectionOnCategory()) {
                     LOGGER.info("Collection --> Executing action: " + actionId + " on Category: " + categoryId);
                     entities = ConfigurationManager.findAllEntitiesForCategory(ConfigurationManager.DEFAULT_OWNER, categoryId);
-                    response = executeActionsOnEntities(actionId, entities, data);
+                    if (async) {
+                        response = submitActionJob(actionId, entities, data);
+                    } else {
+                        response = executeActionsOnEntities(actionId, entities, data);
+                    }
                     continue;
                 }
 
@@ -211,7 +252,11 @@ public class PostQuery extends AbstractPostQuery {
                         }
 
                     }
-                    response = executeActionsOnEntities(actionId, entities, data);
+                    if (async) {
+                        response = submitActionJob(actionId, entities, data);
+                    } else {
+                        response = executeActionsOnEntities(actionId, entities, data);
+                    }
                     continue;
                 }
             } // end if action query part.
@@ -292,7 +337,12 @@ public class PostQuery extends AbstractPostQuery {
                         }
                     }
 
-                    response = updateEntity(path, entity, data);
+                    // If-Match : update only the given version.
+                    response = checkEntityPreconditions(headers, entityId);
+                    if (response != null) {
+                        return response;
+                    }
+                    response = withEtag(updateEntity(path, entity, data), entityId);
 
                 } else {
                     try {
@@ -373,8 +423,9 @@ public class PostQuery extends AbstractPostQuery {
 
         // update attributes .
         entity = ConfigurationManager.updateAttributesToEntity(entity, attrs);
-        ConfigurationManager.updateVersion(ConfigurationManager.DEFAULT_OWNER, path + entity.getId());
-        entity.occiUpdate();
+        ConfigurationManager.updateVersion(entity.getId());
+        ConnectorGuard.occiUpdate(entity);
+        RetrieveCache.invalidate(entity.getId());
         // entity.occiRetrieve();
         // TODO : to see if this case is important to retrieve from provider the entity before returning it in response object.
         // TODO : Another solution is to set "ok" to response and force user to get request for entity attributes updated.
@@ -496,61 +547,20 @@ public class PostQuery extends AbstractPostQuery {
             actionParameters = Utils.getActionParametersArray(data.getAttrs());
         }
 
-        Action actionKind = null;
-
         try {
-            actionKind = ConfigurationManager.getActionFromEntityWithActionId(entity, actionId);
+            ConfigurationManager.executeAction(entity, actionId, actionParameters);
         } catch (ConfigurationException ex) {
-            LOGGER.warn(ex.getMessage());
-        }
-
-        if (actionKind == null) {
-
-            // Search for this action with the term only on the entity Kind and Mixins.
-            try {
-                actionKind = ConfigurationManager.getActionFromEntityWithActionTerm(entity, actionId);
-            } catch (ConfigurationException ex) {
-                LOGGER.error(ex.getMessage());
-                try {
-                    response = outputParser.parseResponse(ex.getMessage(), Response.Status.BAD_REQUEST);
-                    return response;
-                } catch (ResponseParseException e) {
-                    throw new InternalServerErrorException(e);
-                }
-            }
-        }
-
-        // TODO : Optimize here the try catch element.
-        try {
-            if (actionParameters == null) {
-                OcciHelper.executeAction(entity, actionKind.getTerm());
-            } else {
-                OcciHelper.executeAction(entity, actionKind.getTerm(), actionParameters);
-            }
-        } catch (InvocationTargetException ex) {
-
-            String message = "The entity " + entity.getTitle() + "  action : " + actionId + " has throw an exception : " + ex.getCause().getClass().getName();
-            if (ex.getMessage() != null) {
-                message += " , Message: "+ ex.getMessage();
-            } else {
-                message += ", Message: probably missing connector implementation.";
-            }
-            LOGGER.error("Action failed to execute : " + message);
+            LOGGER.error(ex.getMessage());
             try {
-                response = outputParser.parseResponse("Action failed : " + message, Response.Status.INTERNAL_SERVER_ERROR);
+                response = outputParser.parseResponse(ex.getMessage(), Response.Status.BAD_REQUEST);
                 return response;
             } catch (ResponseParseException e) {
                 throw new InternalServerErrorException(e);
             }
-        } catch (UnsupportedOperationException ex) {
-            String message = "The entity " + entity.getTitle() + "  action : " + actionId + " has throw an exception : " + ex.getClass().getName();
-            if (ex.getMessage() != null) {
-                message += "\n Message: "+ ex.getMessage();
-            } else {
-                message += "\n Message: probably missing connector implementation.";
-            }
+        } catch (ActionExecutionException ex) {
+            LOGGER.error("Action failed to execute : " + ex.getMessage());
             try {
-                response = outputParser.parseResponse("Action failed : " + message, Response.Status.INTERNAL_SERVER_ERROR);
+                response = outputParser.parseResponse("Action failed : " + ex.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
                 return response;
             } catch (ResponseParseException e) {
                 throw new InternalServerErrorException(e);
@@ -565,31 +575,79 @@ public class PostQuery extends AbstractPostQuery {
         return response;
     }
 
+    /**
+     * Execute an action on a collection, several entities at the same time
+     * (parameter parallelism). The response gives the outcome of each entity,
+     * its status is 500 if the action has failed on an entity.
+     *
+     * @param actionKind
+     * @param entities
+     * @param data
+     * @return
+     */
     @Override
     public Response executeActionsOnEntities(String actionKind, List<Entity> entities, InputData data) {
-        Response response = null;
-        Response.ResponseBuilder responseBuilder = null;
-        for (Entity entity : entities) {
-            responseBuilder = Response.fromResponse(executeAction(actionKind, entity, data));
-        }
-
-        if (responseBuilder != null) {
-            response = responseBuilder.build();
-        }
+        Response response;
 
         if (entities.isEmpty()) {
             try {
                 response = outputParser.parseResponse("No entity collection found to execute action: " + actionKind, Response.Status.BAD_REQUEST);
+                return response;
             } catch (ResponseParseException ex) {
                 throw new InternalServerErrorException(ex);
             }
         }
-
+        String[] actionParameters = null;
+        if (data != null && data.getAttrs() != null) {
+            actionParameters = Utils.getActionParametersArray(data.getAttrs());
+        }
+        ActionJob outcomes = new ActionJob(UUID.randomUUID().toString(), actionKind, actionParameters, entities);
+        outcomes.run(getActionParallelism());
+        if (outcomes.getFailed() > 0) {
+            LOGGER.error("Action " + actionKind + " failed on " + outcomes.getFailed() + " entities of " + outcomes.getTotal());
+            response = renderActionOutcomes(outcomes, Response.Status.INTERNAL_SERVER_ERROR);
+        } else {
+            response = renderActionOutcomes(outcomes, Response.Status.OK);
+        }
         return response;
-
     }
 
 
+    /**
+     * Enqueue the action on the entities as a job (parameter async=true), the
+     * entities are not updated on the request thread.
+     *
+     * @param actionId
+     * @param entities
+     * @param data
+     * @return 202 Accepted with the job location, 503 if too many jobs are waiting.
+     */
+    public Response submitActionJob(String actionId, List<Entity> entities, InputData data) {
+        Response response;
+        try {
+            if (entities.isEmpty()) {
+                response = outputParser.parseResponse("No entity collection found to execute action: " + actionId, Response.Status.BAD_REQUEST);
+                return response;
+            }
+            String[] actionParameters = null;
+            if (data != null && data.getAttrs() != null) {
+                actionParameters = Utils.getActionParametersArray(data.getAttrs());
+            }
+            ActionJob job;
+            try {
+                job = ActionJobManager.submit(actionId, actionParameters, entities, getActionParallelism());
+            } catch (RejectedExecutionException ex) {
+                LOGGER.warn("Action job rejected, too many jobs are waiting : " + actionId);
+                response = outputParser.parseResponse("Too many action jobs are waiting, please retry later.", Response.Status.SERVICE_UNAVAILABLE);
+                return response;
+            }
+            response = renderActionJob(job, Response.Status.ACCEPTED);
+        } catch (ResponseParseException ex) {
+            throw new InternalServerErrorException(ex);
+        }
+        return response;
+    }
+
     /**
      * Execute update (mixin tag asso + request on entities collection).
      *
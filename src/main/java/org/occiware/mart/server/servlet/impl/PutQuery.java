@@ -19,11 +19,14 @@
 package org.occiware.mart.server.servlet.impl;
 
 import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.mart.server.servlet.exception.ConnectorRefusedException;
 import org.occiware.mart.server.servlet.exception.EntityConflictException;
 import org.occiware.mart.server.servlet.exception.ResponseParseException;
 import org.occiware.mart.server.servlet.facade.AbstractPutQuery;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorGuard;
+import org.occiware.mart.server.servlet.model.RetrieveCache;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.Constants;
 import org.occiware.mart.server.servlet.utils.Utils;
@@ -32,8 +35,11 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -46,10 +52,28 @@ import java.util.Map;
  * @author Christophe Gourdin
  */
 @Path("/")
+// Asynchronous methods have no return type, the media types they produce must be declared.
+@Produces({Constants.MEDIA_TYPE_TEXT_OCCI, Constants.MEDIA_TYPE_TEXT_URI_LIST, Constants.MEDIA_TYPE_JSON,
+        Constants.MEDIA_TYPE_JSON_OCCI, MediaType.TEXT_PLAIN, MediaType.WILDCARD})
 public class PutQuery extends AbstractPutQuery {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PutQuery.class);
 
+    /**
+     * PUT entry point, the query is executed by the connector executor (see inputQuery).
+     *
+     * @param path
+     * @param headers
+     * @param request
+     * @param asyncResponse resumed with the query response.
+     */
+    @Path("{path:.*}")
+    @PUT
+    public void asyncInputQuery(@PathParam("path") final String path, @Context final HttpHeaders headers, @Context final HttpServletRequest request,
+                                @Suspended final AsyncResponse asyncResponse) {
+        executeQuery(path, headers, request, asyncResponse);
+    }
+
     /**
      * Create or replace input point, this method is for creating entity with a
      * relative path like '/foo/bar/uuid'.
@@ -60,9 +84,7 @@ public class PutQuery extends AbstractPutQuery {
      * @return a Response object.
      */
     @Override
-    @Path("{path:.*}")
-    @PUT
-    public Response inputQuery(@PathParam("path") String path, @Context HttpHeaders headers, @Context HttpServletRequest request) {
+    public Response inputQuery(String path, HttpHeaders headers, HttpServletRequest request) {
         LOGGER.info("--> Call PUT method input query for path : " + path);
 
         Response response = super.inputQuery(path, headers, request);
@@ -74,6 +96,7 @@ public class PutQuery extends AbstractPutQuery {
         for (InputData data : datas) {
 
             PathParser pathParser = new PathParser(data, path, inputParser.getRequestPameters());
+            setRoute(pathParser);
 
             if (pathParser.isInterfQuery()) {
                 try {
@@ -114,8 +137,13 @@ public class PutQuery extends AbstractPutQuery {
                     if (entityId != null && location.contains(entityId)) {
                         relativePath = location.replace(entityId, "");
                     }
+                    // If-Match : replace only the given version, If-None-Match: * : create only.
+                    response = checkEntityPreconditions(headers, entityId);
+                    if (response != null) {
+                        return response;
+                    }
 
-                    response = createEntity(relativePath, entityId, kind, mixins, data.getAttrs());
+                    response = withEtag(createEntity(relativePath, entityId, kind, mixins, data.getAttrs()), entityId);
                 }
             }
 
@@ -282,10 +310,18 @@ public class PutQuery extends AbstractPutQuery {
         Entity entity = ConfigurationManager.findEntity(owner, entityId);
         if (entity != null) {
             if (overwrite) {
-                entity.occiUpdate();
+                ConnectorGuard.occiUpdate(entity);
+                RetrieveCache.invalidate(entityId);
                 LOGGER.info("Update entity done returning location : " + path);
             } else {
-                entity.occiCreate();
+                try {
+                    ConnectorGuard.occiCreate(entity);
+                } catch (ConnectorRefusedException ex) {
+                    // Not created on the connector side, the query may be sent again later.
+                    // After a timeout the entity is kept : the creation goes on and may succeed on the connector side.
+                    ConfigurationManager.removeOrDissociateFromConfiguration(owner, entityId);
+                    throw ex;
+                }
                 LOGGER.info("Create entity done returning location : " + path);
             }
 
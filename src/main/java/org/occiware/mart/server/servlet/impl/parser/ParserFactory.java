@@ -62,4 +62,24 @@ public class ParserFactory {
 
     }
 
+    /**
+     * Media type of the responses built by the parser of an accept type.
+     *
+     * @param acceptType accept type of the query.
+     * @return a media type of Constants, text/occi if the accept type is unknown.
+     */
+    public static String getMediaType(String acceptType) {
+        if (acceptType == null) {
+            return Constants.MEDIA_TYPE_TEXT_OCCI;
+        }
+        switch (acceptType) {
+            case Constants.MEDIA_TYPE_TEXT_URI_LIST:
+            case Constants.MEDIA_TYPE_JSON:
+            case Constants.MEDIA_TYPE_JSON_OCCI:
+                return acceptType;
+            default:
+                return Constants.MEDIA_TYPE_TEXT_OCCI;
+        }
+    }
+
 }
@@ -35,6 +35,7 @@ import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.FieldsFilter;
 import org.occiware.mart.server.servlet.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -575,6 +576,7 @@ public class JsonOcciParser extends AbstractRequestParser {
     private Response renderEntitiesResponse(List<Entity> entities, Response.Status status) throws JsonProcessingException {
 
         Response response;
+        FieldsFilter fieldsFilter = getFieldsFilter();
         OcciMainJson mainJson = new OcciMainJson();
         List<ResourceJson> resources = new LinkedList<>();
         ResourceJson currentResource = null;
@@ -582,12 +584,12 @@ public class JsonOcciParser extends AbstractRequestParser {
         List<LinkJson> links = new LinkedList<>();
         for (Entity entity : entities) {
             if (entity instanceof Link) {
-                LinkJson linkJson = buildLinkJsonFromEntity(entity);
+                LinkJson linkJson = buildLinkJsonFromEntity(entity, fieldsFilter);
                 currentLink = linkJson;
                 links.add(linkJson);
 
             } else {
-                ResourceJson resJson = buildResourceJsonFromEntity(entity);
+                ResourceJson resJson = buildResourceJsonFromEntity(entity, fieldsFilter);
                 currentResource = resJson;
                 resources.add(resJson);
             }
@@ -616,7 +618,14 @@ public class JsonOcciParser extends AbstractRequestParser {
         return response;
     }
 
-    private ResourceJson buildResourceJsonFromEntity(final Entity entity) {
+    /**
+     * Build the json resource, only the fields of the fields filter are read and rendered.
+     *
+     * @param entity
+     * @param fieldsFilter
+     * @return
+     */
+    private ResourceJson buildResourceJsonFromEntity(final Entity entity, final FieldsFilter fieldsFilter) {
         ResourceJson resJson = new ResourceJson();
         Resource res = (Resource) entity;
         Kind kind = res.getKind();
@@ -625,23 +634,32 @@ public class JsonOcciParser extends AbstractRequestParser {
         List<LinkJson> links = new LinkedList<>();
         resJson.setKind(kind.getScheme() + kind.getTerm());
         resJson.setId(Constants.URN_UUID_PREFIX + res.getId());
-        resJson.setTitle(res.getTitle());
-        resJson.setSummary(res.getSummary());
+        if (fieldsFilter.hasAttribute(Constants.OCCI_CORE_TITLE)) {
+            resJson.setTitle(res.getTitle());
+        }
+        if (fieldsFilter.hasAttribute(Constants.OCCI_CORE_SUMMARY)) {
+            resJson.setSummary(res.getSummary());
+        }
         resJson.setLocation(ConfigurationManager.getLocation(entity));
 
-        List<String> actionsStr = new LinkedList<>();
-        String actionStr;
-        for (Action action : kind.getActions()) {
-            actionStr = action.getScheme() + action.getTerm();
-            actionsStr.add(actionStr);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_ACTIONS)) {
+            List<String> actionsStr = new LinkedList<>();
+            String actionStr;
+            for (Action action : kind.getActions()) {
+                actionStr = action.getScheme() + action.getTerm();
+                actionsStr.add(actionStr);
+            }
+            resJson.setActions(actionsStr);
         }
-        resJson.setActions(actionsStr);
         Map<String, Object> attributes = new LinkedHashMap<>();
         // Attributes.
         List<AttributeState> attrsState = res.getAttributes();
         for (AttributeState attr : attrsState) {
             String key = attr.getName();
             String val = attr.getValue();
+            if (!fieldsFilter.hasAttribute(key) && !key.equals(Constants.OCCI_CORE_ID)) {
+                continue;
+            }
 
             if (!key.equals(Constants.OCCI_CORE_SUMMARY) && !key.equals(Constants.OCCI_CORE_TITLE)
                     && !key.equals(Constants.OCCI_CORE_ID)) {
@@ -669,16 +687,20 @@ public class JsonOcciParser extends AbstractRequestParser {
         }
         resJson.setAttributes(attributes);
 
-        mixins = res.getMixins();
-        for (Mixin mixin : mixins) {
-            String mixinStr = mixin.getScheme() + mixin.getTerm();
-            mixinsStr.add(mixinStr);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_MIXINS)) {
+            mixins = res.getMixins();
+            for (Mixin mixin : mixins) {
+                String mixinStr = mixin.getScheme() + mixin.getTerm();
+                mixinsStr.add(mixinStr);
+            }
+            resJson.setMixins(mixinsStr);
         }
-        resJson.setMixins(mixinsStr);
         // resources has links ?
-        for (Link link : res.getLinks()) {
-            LinkJson linkJson = buildLinkJsonFromEntity(link);
-            links.add(linkJson);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_LINKS)) {
+            for (Link link : res.getLinks()) {
+                LinkJson linkJson = buildLinkJsonFromEntity(link, fieldsFilter);
+                links.add(linkJson);
+            }
         }
         if (!links.isEmpty()) {
             resJson.setLinks(links);
@@ -687,7 +709,14 @@ public class JsonOcciParser extends AbstractRequestParser {
         return resJson;
     }
 
-    private LinkJson buildLinkJsonFromEntity(final Entity entity) {
+    /**
+     * Build the json link, only the fields of the fields filter are read and rendered.
+     *
+     * @param entity
+     * @param fieldsFilter
+     * @return
+     */
+    private LinkJson buildLinkJsonFromEntity(final Entity entity, final FieldsFilter fieldsFilter) {
         LinkJson linkJson = new LinkJson();
         Link link = (Link) entity;
         Kind kind;
@@ -700,21 +729,25 @@ public class JsonOcciParser extends AbstractRequestParser {
         kind = link.getKind();
         linkJson.setKind(kind.getScheme() + kind.getTerm());
         linkJson.setId(Constants.URN_UUID_PREFIX + link.getId());
-        linkJson.setTitle(link.getTitle());
+        if (fieldsFilter.hasAttribute(Constants.OCCI_CORE_TITLE)) {
+            linkJson.setTitle(link.getTitle());
+        }
         linkJson.setLocation(ConfigurationManager.getLocation(entity));
-        actions = kind.getActions();
-        for (Action action : actions) {
-            actionStr = action.getScheme() + action.getTerm();
-            actionsStr.add(actionStr);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_ACTIONS)) {
+            actions = kind.getActions();
+            for (Action action : actions) {
+                actionStr = action.getScheme() + action.getTerm();
+                actionsStr.add(actionStr);
+            }
+            linkJson.setActions(actionsStr);
         }
-        linkJson.setActions(actionsStr);
 
         // Attributes.
         List<AttributeState> attrsState = link.getAttributes();
         for (AttributeState attr : attrsState) {
             String key = attr.getName();
             String val = attr.getValue();
-            if (val != null) {
+            if (val != null && (fieldsFilter.hasAttribute(key) || key.equals(Constants.OCCI_CORE_ID))) {
                 if (!key.equals(Constants.OCCI_CORE_SUMMARY) && !key.equals(Constants.OCCI_CORE_TITLE)
                         && !key.equals(Constants.OCCI_CORE_ID)
                         && !key.equals(Constants.OCCI_CORE_SOURCE)
@@ -768,12 +801,14 @@ public class JsonOcciParser extends AbstractRequestParser {
 
         linkJson.setAttributes(attributes);
 
-        mixins = link.getMixins();
-        for (Mixin mixin : mixins) {
-            String mixinStr = mixin.getScheme() + mixin.getTerm();
-            mixinsStr.add(mixinStr);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_MIXINS)) {
+            mixins = link.getMixins();
+            for (Mixin mixin : mixins) {
+                String mixinStr = mixin.getScheme() + mixin.getTerm();
+                mixinsStr.add(mixinStr);
+            }
+            linkJson.setMixins(mixinsStr);
         }
-        linkJson.setMixins(mixinsStr);
 
         return linkJson;
     }
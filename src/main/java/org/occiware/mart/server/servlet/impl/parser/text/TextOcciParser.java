@@ -26,6 +26,7 @@ import org.occiware.mart.server.servlet.facade.AbstractRequestParser;
 import org.occiware.mart.server.servlet.impl.parser.json.utils.InputData;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
 import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.FieldsFilter;
 import org.occiware.mart.server.servlet.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -499,13 +500,16 @@ public class TextOcciParser extends AbstractRequestParser {
     private Response renderEntityResponse(Entity entity, Response.Status status) {
 
         Response response;
+        FieldsFilter fieldsFilter = getFieldsFilter();
 
         String categories = renderCategory(entity.getKind(), false);
 
         // if entity as mixins, update categories as expected.
-        List<Mixin> mixinsTmp = entity.getMixins();
-        for (Mixin mixin : mixinsTmp) {
-            categories += renderCategory(mixin, false);
+        if (fieldsFilter.hasSection(FieldsFilter.SECTION_MIXINS)) {
+            List<Mixin> mixinsTmp = entity.getMixins();
+            for (Mixin mixin : mixinsTmp) {
+                categories += renderCategory(mixin, false);
+            }
         }
 
         // Link header.
@@ -513,12 +517,12 @@ public class TextOcciParser extends AbstractRequestParser {
         String absoluteEntityLocation = getServerURI().toString() + relativeLocation;
 
         // Convert all actions to links.
-        javax.ws.rs.core.Link[] links = renderActionsLink(entity, absoluteEntityLocation);
+        javax.ws.rs.core.Link[] links = renderActionsLink(entity, absoluteEntityLocation, fieldsFilter.hasSection(FieldsFilter.SECTION_ACTIONS));
         String msg = "ok \n";
         response = Response.status(status)
                 .header("Server", Constants.OCCI_SERVER_HEADER)
                 .header(Constants.CATEGORY, categories)
-                .header(Constants.X_OCCI_ATTRIBUTE, renderAttributes(entity))
+                .header(Constants.X_OCCI_ATTRIBUTE, renderAttributes(entity, fieldsFilter))
                 .header(Constants.X_OCCI_LOCATION, renderXOCCILocationAttr(entity))
                 .header("Accept", getAcceptedTypes())
                 .type(Constants.MEDIA_TYPE_TEXT_OCCI)
@@ -579,9 +583,10 @@ public class TextOcciParser extends AbstractRequestParser {
      *
      * @param entity
      * @param entityAbsolutePath
+     * @param withActions        if false, only the entity link is rendered.
      * @return An array of Link to set to header.
      */
-    private javax.ws.rs.core.Link[] renderActionsLink(final Entity entity, final String entityAbsolutePath) {
+    private javax.ws.rs.core.Link[] renderActionsLink(final Entity entity, final String entityAbsolutePath, final boolean withActions) {
         LOGGER.info("Entity location : " + entityAbsolutePath);
         javax.ws.rs.core.Link linkAbsoluteEntityPath = javax.ws.rs.core.Link.fromUri(entityAbsolutePath)
                 .title(entity.getKind().getTerm())
@@ -592,7 +597,7 @@ public class TextOcciParser extends AbstractRequestParser {
 
         // For each actions we add the link like this : <mylocation?action=actionTerm>; \
         //    rel="http://actionScheme#actionTerm"
-        List<Action> actionsTmp = entity.getKind().getActions();
+        List<Action> actionsTmp = withActions ? entity.getKind().getActions() : Collections.<Action>emptyList();
         linkSize += actionsTmp.size();
         links = new javax.ws.rs.core.Link[linkSize];
         links[0] = linkAbsoluteEntityPath;
@@ -630,12 +635,13 @@ public class TextOcciParser extends AbstractRequestParser {
     }
 
     /**
-     * Render attributes used for GET request on entity.
+     * Render attributes used for GET request on entity, only the attributes of the fields filter are read.
      *
      * @param entity
+     * @param fieldsFilter
      * @return
      */
-    private String renderAttributes(Entity entity) {
+    private String renderAttributes(Entity entity, FieldsFilter fieldsFilter) {
         String attribs = "";
         StringBuilder sb = new StringBuilder();
         List<AttributeState> attrStates = entity.getAttributes();
@@ -651,7 +657,8 @@ public class TextOcciParser extends AbstractRequestParser {
 
         for (AttributeState attribute : attrStates) {
             String name = attribute.getName();
-            if (name.equals(Constants.OCCI_CORE_ID) || name.equals(Constants.OCCI_CORE_SOURCE) || name.equals(Constants.OCCI_CORE_TARGET)) {
+            if (name.equals(Constants.OCCI_CORE_ID) || name.equals(Constants.OCCI_CORE_SOURCE) || name.equals(Constants.OCCI_CORE_TARGET)
+                    || !fieldsFilter.hasAttribute(name)) {
                 continue;
             }
             String value = null;
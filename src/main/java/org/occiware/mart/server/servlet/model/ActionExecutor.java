@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Extension;
+import org.occiware.mart.server.servlet.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute an action on a collection of entities with a bounded parallelism.
+ * Connector calls are mostly waiting for the cloud API, so the entities of a
+ * collection are dispatched on a shared pool with a bounded queue, the caller
+ * thread executes an entity when the pool is saturated.
+ * Whatever the requests, no more than a maximum of actions run at the same
+ * time on the entities of an extension (connector).
+ */
+public class ActionExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActionExecutor.class);
+
+    public static final int DEFAULT_THREADS = 64;
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_EXTENSION_CONCURRENCY = 16;
+
+    /**
+     * Work done for an entity of the collection.
+     */
+    public interface EntityTask {
+        /**
+         * @param index index of the entity in the collection.
+         */
+        void execute(int index);
+    }
+
+    private static volatile ThreadPoolExecutor pool = createPool(DEFAULT_THREADS);
+
+    private static volatile int defaultParallelism = DEFAULT_PARALLELISM;
+
+    private static volatile int extensionConcurrency = DEFAULT_EXTENSION_CONCURRENCY;
+
+    /**
+     * Key: extension scheme, value: permits of concurrent actions on this extension entities.
+     */
+    private static final ConcurrentMap<String, Semaphore> extensionPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads              maximum number of threads executing actions for all requests.
+     * @param parallelism          default number of entities of a collection executed at the same time.
+     * @param concurrencyExtension maximum number of actions executed at the same time on the entities of an extension.
+     */
+    public static void configure(final int threads, final int parallelism, final int concurrencyExtension) {
+        ThreadPoolExecutor previous = pool;
+        pool = createPool(threads);
+        previous.shutdown();
+        defaultParallelism = parallelism;
+        extensionConcurrency = concurrencyExtension;
+        extensionPermits.clear();
+    }
+
+    public static int getDefaultParallelism() {
+        return defaultParallelism;
+    }
+
+    /**
+     * @return the maximum parallelism of a request.
+     */
+    public static int getMaxParallelism() {
+        return pool.getMaximumPoolSize() + 1;
+    }
+
+    /**
+     * Stop the pool, the actions in progress are completed until the timeout.
+     *
+     * @param timeoutMillis
+     * @return the number of entity actions abandoned.
+     */
+    public static int shutdown(final long timeoutMillis) {
+        return Utils.shutdownExecutor(pool, timeoutMillis);
+    }
+
+    /**
+     * Execute a task for each entity, with at most parallelism tasks at the
+     * same time. Returns when all the tasks are done. The caller thread takes
+     * the permits of the entities before giving them to the pool, the pool
+     * threads never wait for a permit. If the caller is interrupted, the
+     * entities not started are not executed, it returns once the started ones
+     * are done.
+     *
+     * @param entities
+     * @param parallelism number of entities executed at the same time, 1 to execute them in turn on the caller thread.
+     * @param task
+     */
+    public static void executeAll(final List<Entity> entities, final int parallelism, final EntityTask task) {
+        int workers = Math.min(Math.min(parallelism, getMaxParallelism()), entities.size());
+        if (workers <= 1) {
+            for (int index = 0; index < entities.size(); index++) {
+                Semaphore permits = getExtensionPermits(entities.get(index));
+                permits.acquireUninterruptibly();
+                try {
+                    task.execute(index);
+                } finally {
+                    permits.release();
+                }
+            }
+            return;
+        }
+        ThreadPoolExecutor executor = pool;
+        Semaphore slots = new Semaphore(workers);
+        List<EntityExecution> executions = new ArrayList<>(entities.size());
+        boolean interrupted = false;
+        for (int index = 0; index < entities.size() && !interrupted; index++) {
+            Semaphore permits = getExtensionPermits(entities.get(index));
+            try {
+                slots.acquire();
+                try {
+                    permits.acquire();
+                } catch (InterruptedException ex) {
+                    slots.release();
+                    throw ex;
+                }
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                break;
+            }
+            EntityExecution execution = new EntityExecution(index, task, permits, slots);
+            executions.add(execution);
+            try {
+                executor.execute(execution);
+            } catch (RejectedExecutionException ex) {
+                // All the pool threads are busy and the queue is full : the caller thread executes the entity.
+                execution.run();
+            }
+        }
+        if (interrupted) {
+            LOGGER.warn("Interrupted while executing actions, " + (entities.size() - executions.size()) + " entities not executed");
+            for (EntityExecution execution : executions) {
+                if (execution.cancel()) {
+                    executor.remove(execution);
+                }
+            }
+        }
+        // The tasks in progress write the outcomes of the caller.
+        for (EntityExecution execution : executions) {
+            interrupted |= execution.awaitEnd();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Task of an entity holding its permits, given back at its end or when it is cancelled before it starts.
+     */
+    private static class EntityExecution implements Runnable {
+        private static final int WAITING = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final int index;
+        private final EntityTask task;
+        private final Semaphore permits;
+        private final Semaphore slots;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final CountDownLatch end = new CountDownLatch(1);
+
+        EntityExecution(final int index, final EntityTask task, final Semaphore permits, final Semaphore slots) {
+            this.index = index;
+            this.task = task;
+            this.permits = permits;
+            this.slots = slots;
+        }
+
+        /**
+         * @return true if the task was not started, it will never be.
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(WAITING, CANCELLED)) {
+                return false;
+            }
+            release();
+            return true;
+        }
+
+        /**
+         * Wait for the end of the task, even if interrupted.
+         *
+         * @return true if the caller has been interrupted while waiting.
+         */
+        boolean awaitEnd() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    end.await();
+                    return interrupted;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(WAITING, STARTED)) {
+                return;
+            }
+            try {
+                task.execute(index);
+            } catch (RuntimeException ex) {
+                LOGGER.error("Action has failed on entity " + index + " : " + ex);
+            } finally {
+                release();
+            }
+        }
+
+        private void release() {
+            permits.release();
+            slots.release();
+            end.countDown();
+        }
+    }
+
+    private static Semaphore getExtensionPermits(final Entity entity) {
+        String extensionScheme = "";
+        if (entity.getKind() != null && entity.getKind().eContainer() instanceof Extension) {
+            extensionScheme = ((Extension) entity.getKind().eContainer()).getScheme();
+        }
+        Semaphore permits = extensionPermits.get(extensionScheme);
+        if (permits == null) {
+            permits = new Semaphore(extensionConcurrency, true);
+            Semaphore existing = extensionPermits.putIfAbsent(extensionScheme, permits);
+            if (existing != null) {
+                permits = existing;
+            }
+        }
+        return permits;
+    }
+
+    private static ThreadPoolExecutor createPool(final int threads) {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-action-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An action executed on one or more entities. The job gives the progress and
+ * the outcome of each entity while it runs, its getters are read without lock
+ * by the job polling requests. It is also used to give the outcomes of a
+ * synchronous collection action.
+ */
+public class ActionJob {
+
+    public enum Status {
+        PENDING, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * Outcome of the action on an entity.
+     */
+    public static class EntityOutcome {
+        private final String entityId;
+        private final String location;
+        private volatile Status status = Status.PENDING;
+        private volatile String message;
+
+        public EntityOutcome(final String entityId, final String location) {
+            this.entityId = entityId;
+            this.location = location;
+        }
+
+        public String getId() {
+            return entityId;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the failure message, null if the action has not failed.
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final String id;
+    private final String action;
+    private final String[] actionParameters;
+    private final long creationTime = System.currentTimeMillis();
+    private volatile long endTime = 0;
+    private volatile Status status = Status.PENDING;
+    private final List<Entity> entities;
+    private final List<EntityOutcome> outcomes;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * @param id
+     * @param action           action scheme + term or term.
+     * @param actionParameters may be null.
+     * @param entities         the entities on which the action is executed.
+     */
+    public ActionJob(final String id, final String action, final String[] actionParameters, final List<Entity> entities) {
+        this.id = id;
+        this.action = action;
+        this.actionParameters = actionParameters;
+        this.entities = new ArrayList<>(entities);
+        List<EntityOutcome> entityOutcomes = new ArrayList<>();
+        for (Entity entity : entities) {
+            entityOutcomes.add(new EntityOutcome(entity.getId(), ConfigurationManager.getLocation(entity)));
+        }
+        this.outcomes = Collections.unmodifiableList(entityOutcomes);
+    }
+
+    /**
+     * Execute the action on the entities.
+     *
+     * @param parallelism number of entities executed at the same time.
+     */
+    public void run(final int parallelism) {
+        status = Status.RUNNING;
+        try {
+            ActionExecutor.executeAll(entities, parallelism, new ActionExecutor.EntityTask() {
+                @Override
+                public void execute(int index) {
+                    ActionJob.this.execute(index);
+                }
+            });
+        } finally {
+            // Ended whatever the failure, ex: an Error thrown by a connector.
+            complete();
+        }
+    }
+
+    /**
+     * Execute the action on an entity of the job.
+     *
+     * @param index index of the entity.
+     */
+    void execute(final int index) {
+        EntityOutcome outcome = outcomes.get(index);
+        outcome.status = Status.RUNNING;
+        try {
+            ConfigurationManager.executeAction(entities.get(index), action, actionParameters);
+            outcome.status = Status.SUCCEEDED;
+            succeeded.incrementAndGet();
+        } catch (Throwable ex) {
+            outcome.message = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getName();
+            outcome.status = Status.FAILED;
+            failed.incrementAndGet();
+            if (ex instanceof Error) {
+                throw (Error) ex;
+            }
+        }
+    }
+
+    /**
+     * Mark the job as ended, failed if the action has failed or has not been executed on an entity.
+     */
+    void complete() {
+        endTime = System.currentTimeMillis();
+        status = failed.get() > 0 || succeeded.get() < outcomes.size() ? Status.FAILED : Status.SUCCEEDED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return the end time in milliseconds, 0 if the job is not ended.
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public boolean isEnded() {
+        return endTime > 0;
+    }
+
+    public int getTotal() {
+        return outcomes.size();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public List<EntityOutcome> getEntities() {
+        return outcomes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("job ").append(id).append(" action=").append(action).append(" status=").append(status)
+                .append(" total=").append(getTotal()).append(" succeeded=").append(getSucceeded())
+                .append(" failed=").append(getFailed()).append('\n');
+        for (EntityOutcome outcome : outcomes) {
+            sb.append(outcome.getLocation()).append(' ').append(outcome.getStatus());
+            if (outcome.getMessage() != null) {
+                sb.append(' ').append(outcome.getMessage());
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.mart.server.servlet.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Run the asynchronous action jobs on a bounded executor and keep them to
+ * be polled. Ended jobs are removed after the retention delay.
+ */
+public class ActionJobManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ActionJobManager.class);
+
+    /**
+     * Relative path of the jobs, a job location is /-/jobs/{jobId}.
+     */
+    public static final String JOBS_PATH = "-/jobs/";
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    /**
+     * Time to keep an ended job.
+     */
+    public static final long JOB_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static volatile ThreadPoolExecutor executor = createExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+
+    /**
+     * Key: job id, value: job.
+     */
+    private static final Map<String, ActionJob> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Set the number of threads running the jobs and the number of jobs waiting for a thread.
+     *
+     * @param threads
+     * @param queueSize
+     */
+    public static void configure(final int threads, final int queueSize) {
+        ThreadPoolExecutor previous = executor;
+        executor = createExecutor(threads, queueSize);
+        previous.shutdown();
+    }
+
+    /**
+     * Create and enqueue a job.
+     *
+     * @param actionId
+     * @param actionParameters may be null.
+     * @param entities
+     * @param parallelism      number of entities executed at the same time.
+     * @return the job.
+     * @throws RejectedExecutionException if the queue of jobs is full.
+     */
+    public static ActionJob submit(final String actionId, final String[] actionParameters, final List<Entity> entities, final int parallelism) {
+        purgeEndedJobs();
+        final ActionJob job = new ActionJob(UUID.randomUUID().toString(), actionId, actionParameters, entities);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    job.run(parallelism);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(job.getId());
+            throw ex;
+        }
+        LOGGER.info("Action job " + job.getId() + " enqueued, action : " + actionId + " on " + entities.size() + " entities");
+        return job;
+    }
+
+    /**
+     * @param jobId
+     * @return the job, null if unknown or removed.
+     */
+    public static ActionJob getJob(final String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * @param job
+     * @return the job location, ex: /-/jobs/0a6dbb55-0e8a-4eb8-8e85-bb4b1d9a5b61
+     */
+    public static String getJobLocation(final ActionJob job) {
+        return "/" + JOBS_PATH + job.getId();
+    }
+
+    /**
+     * @param path a request path.
+     * @return the job id if this is a job location, else null.
+     */
+    public static String getJobIdFromPath(final String path) {
+        if (path == null) {
+            return null;
+        }
+        String relativePath = path.startsWith("/") ? path.substring(1) : path;
+        if (!relativePath.startsWith(JOBS_PATH)) {
+            return null;
+        }
+        String jobId = relativePath.substring(JOBS_PATH.length());
+        if (jobId.endsWith("/")) {
+            jobId = jobId.substring(0, jobId.length() - 1);
+        }
+        return jobId;
+    }
+
+    /**
+     * Stop the job threads, running jobs are completed.
+     */
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Stop the job threads, running and queued jobs are completed until the timeout.
+     *
+     * @param timeoutMillis
+     * @return the number of jobs abandoned.
+     */
+    public static int shutdown(final long timeoutMillis) {
+        return Utils.shutdownExecutor(executor, timeoutMillis);
+    }
+
+    private static void purgeEndedJobs() {
+        long limit = System.currentTimeMillis() - JOB_RETENTION_MILLIS;
+        Iterator<ActionJob> it = jobs.values().iterator();
+        while (it.hasNext()) {
+            ActionJob job = it.next();
+            if (job.isEnded() && job.getEndTime() < limit) {
+                it.remove();
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor(final int threads, final int queueSize) {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-action-job-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+}
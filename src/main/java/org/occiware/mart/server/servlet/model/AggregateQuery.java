@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Aggregation query on a collection : the measures to compute (count, sum,
+ * min, max, avg of numeric attributes) and the grouping (none, kind, mixin
+ * or attribute value).
+ * ex: aggregate=count,sum(occi.compute.cores),avg(occi.compute.memory)&group=kind
+ */
+public class AggregateQuery {
+
+    public enum Function {
+        COUNT, SUM, MIN, MAX, AVG
+    }
+
+    public enum GroupBy {
+        NONE, KIND, MIXIN, ATTRIBUTE
+    }
+
+    public static final String GROUP_KIND = "kind";
+    public static final String GROUP_MIXIN = "mixin";
+
+    /**
+     * A measure, function on an attribute. count without attribute is the number of entities.
+     */
+    public static class Measure {
+        private final Function function;
+        private final String attributeName;
+
+        public Measure(final Function function, final String attributeName) {
+            this.function = function;
+            this.attributeName = attributeName;
+        }
+
+        public Function getFunction() {
+            return function;
+        }
+
+        /**
+         * @return the attribute name, null for the count of entities.
+         */
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        /**
+         * @return the name of the measure as given in the query, ex: sum(occi.compute.cores).
+         */
+        public String getName() {
+            String name = function.name().toLowerCase();
+            return attributeName == null ? name : name + "(" + attributeName + ")";
+        }
+    }
+
+    private final List<Measure> measures;
+    private final GroupBy groupBy;
+    private final String groupAttribute;
+
+    public AggregateQuery(final List<Measure> measures, final GroupBy groupBy, final String groupAttribute) {
+        this.measures = measures;
+        this.groupBy = groupBy;
+        this.groupAttribute = groupAttribute;
+    }
+
+    /**
+     * Parse the aggregate and group parameters.
+     *
+     * @param aggregate comma separated measures, ex: count,sum(occi.compute.cores).
+     * @param group     kind, mixin, an attribute name or null for no grouping.
+     * @return the aggregation query.
+     * @throws IllegalArgumentException if a measure is not valid.
+     */
+    public static AggregateQuery parse(final String aggregate, final String group) {
+        List<Measure> measures = new ArrayList<>();
+        if (aggregate != null) {
+            for (String token : aggregate.split(",")) {
+                String measure = token.trim();
+                if (measure.isEmpty()) {
+                    continue;
+                }
+                String functionName = measure;
+                String attributeName = null;
+                int start = measure.indexOf('(');
+                if (start >= 0) {
+                    if (!measure.endsWith(")")) {
+                        throw new IllegalArgumentException("Invalid aggregate measure : " + measure);
+                    }
+                    functionName = measure.substring(0, start).trim();
+                    attributeName = measure.substring(start + 1, measure.length() - 1).trim();
+                    if (attributeName.isEmpty()) {
+                        attributeName = null;
+                    }
+                }
+                Function function;
+                try {
+                    function = Function.valueOf(functionName.toUpperCase());
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown aggregate function : " + functionName);
+                }
+                if (attributeName == null && function != Function.COUNT) {
+                    throw new IllegalArgumentException("The aggregate function " + functionName + " needs an attribute, ex: " + functionName + "(occi.compute.cores)");
+                }
+                measures.add(new Measure(function, attributeName));
+            }
+        }
+        if (measures.isEmpty()) {
+            measures.add(new Measure(Function.COUNT, null));
+        }
+        GroupBy groupBy = GroupBy.NONE;
+        String groupAttribute = null;
+        if (group != null && !group.trim().isEmpty()) {
+            if (group.trim().equalsIgnoreCase(GROUP_KIND)) {
+                groupBy = GroupBy.KIND;
+            } else if (group.trim().equalsIgnoreCase(GROUP_MIXIN)) {
+                groupBy = GroupBy.MIXIN;
+            } else {
+                groupBy = GroupBy.ATTRIBUTE;
+                groupAttribute = group.trim();
+            }
+        }
+        return new AggregateQuery(measures, groupBy, groupAttribute);
+    }
+
+    public List<Measure> getMeasures() {
+        return measures;
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * @return the attribute of the grouping when group by attribute, else null.
+     */
+    public String getGroupAttribute() {
+        return groupAttribute;
+    }
+
+    /**
+     * @return the attributes of the measures.
+     */
+    public Set<String> getAttributeNames() {
+        Set<String> attributeNames = new LinkedHashSet<>();
+        for (Measure measure : measures) {
+            if (measure.getAttributeName() != null) {
+                attributeNames.add(measure.getAttributeName());
+            }
+        }
+        return attributeNames;
+    }
+}
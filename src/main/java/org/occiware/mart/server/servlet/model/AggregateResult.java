@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result (or partial result) of an aggregation query : the groups with their
+ * number of entities and an accumulator by attribute. Partial results of
+ * entity subsets are merged with merge(). Not thread safe.
+ */
+public class AggregateResult {
+
+    /**
+     * Key used in rows for the group value.
+     */
+    public static final String GROUP_KEY = "group";
+
+    /**
+     * Count, sum, min and max of the values of an attribute.
+     */
+    public static class Accumulator {
+        private long count = 0;
+        private double sum = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        public void add(final double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        /**
+         * Remove a value added before, only count and sum are updated, min and max are no more valid.
+         *
+         * @param value
+         */
+        public void remove(final double value) {
+            count--;
+            sum -= value;
+        }
+
+        public void merge(final Accumulator other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * @param function
+         * @return the value of the function, null if there is no value (min, max, avg).
+         */
+        public Number getValue(final AggregateQuery.Function function) {
+            switch (function) {
+                case COUNT:
+                    return count;
+                case SUM:
+                    return sum;
+                case MIN:
+                    return count == 0 ? null : min;
+                case MAX:
+                    return count == 0 ? null : max;
+                case AVG:
+                    return count == 0 ? null : sum / count;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * A group of entities.
+     */
+    public static class Group {
+        private final String key;
+        private long entityCount = 0;
+        private final Map<String, Accumulator> accumulators = new HashMap<>();
+
+        public Group(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * Add an entity to the group.
+         *
+         * @param values numeric values of the entity by attribute name, null values are ignored.
+         */
+        public void add(final Map<String, Number> values) {
+            entityCount++;
+            for (Map.Entry<String, Number> entry : values.entrySet()) {
+                if (entry.getValue() != null) {
+                    getAccumulator(entry.getKey()).add(entry.getValue().doubleValue());
+                }
+            }
+        }
+
+        /**
+         * Remove an entity added before.
+         *
+         * @param values the values given when the entity has been added.
+         */
+        public void remove(final Map<String, Number> values) {
+            entityCount--;
+            for (Map.Entry<String, Number> entry : values.entrySet()) {
+                if (entry.getValue() != null) {
+                    getAccumulator(entry.getKey()).remove(entry.getValue().doubleValue());
+                }
+            }
+        }
+
+        public void merge(final Group other) {
+            entityCount += other.entityCount;
+            for (Map.Entry<String, Accumulator> entry : other.accumulators.entrySet()) {
+                getAccumulator(entry.getKey()).merge(entry.getValue());
+            }
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getEntityCount() {
+            return entityCount;
+        }
+
+        public Accumulator getAccumulator(final String attributeName) {
+            Accumulator accumulator = accumulators.get(attributeName);
+            if (accumulator == null) {
+                accumulator = new Accumulator();
+                accumulators.put(attributeName, accumulator);
+            }
+            return accumulator;
+        }
+    }
+
+    /**
+     * Key: group value (null for no grouping or no value), value: the group.
+     */
+    private final Map<String, Group> groups = new HashMap<>();
+
+    /**
+     * @param key
+     * @return the group, created if needed.
+     */
+    public Group getGroup(final String key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(key);
+            groups.put(key, group);
+        }
+        return group;
+    }
+
+    public void merge(final AggregateResult other) {
+        for (Group group : other.groups.values()) {
+            getGroup(group.getKey()).merge(group);
+        }
+    }
+
+    /**
+     * @param query
+     * @return a row by group ordered by group value (no value at the end), with the group value and the measures.
+     */
+    public List<Map<String, Object>> getRows(final AggregateQuery query) {
+        List<Group> sortedGroups = new ArrayList<>(groups.values());
+        Collections.sort(sortedGroups, new Comparator<Group>() {
+            @Override
+            public int compare(Group group1, Group group2) {
+                return EntitySorter.compareValues(group1.getKey(), group2.getKey(), false);
+            }
+        });
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Group group : sortedGroups) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (query.getGroupBy() != AggregateQuery.GroupBy.NONE) {
+                row.put(GROUP_KEY, group.getKey());
+            }
+            for (AggregateQuery.Measure measure : query.getMeasures()) {
+                if (measure.getAttributeName() == null) {
+                    row.put(measure.getName(), group.getEntityCount());
+                } else {
+                    row.put(measure.getName(), group.getAccumulator(measure.getAttributeName()).getValue(measure.getFunction()));
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * @param query
+     * @return a line by group, ex: group=http://schemas.ogf.org/occi/infrastructure#compute count=12 sum(occi.compute.cores)=48.0
+     */
+    public String toText(final AggregateQuery query) {
+        StringBuilder sb = new StringBuilder();
+        for (Map<String, Object> row : getRows(query)) {
+            String separator = "";
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                sb.append(separator).append(entry.getKey()).append('=').append(entry.getValue());
+                separator = " ";
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
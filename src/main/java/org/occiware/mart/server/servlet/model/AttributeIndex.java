@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index on one attribute : attribute value --> entities having this
+ * value. In a value, entities are ordered by id, so walking this index gives
+ * the same order as EntitySorter on this attribute. Entities without value
+ * for the attribute are not referenced. Updates are serialized, reads are
+ * lock free.
+ */
+public class AttributeIndex {
+
+    private final String attributeName;
+
+    /**
+     * Key: attribute value, value: entities with this value ordered by entity
+     * id.
+     */
+    private final ConcurrentSkipListMap<Object, ConcurrentSkipListMap<String, Entity>> entries = new ConcurrentSkipListMap<>(EntitySorter.VALUE_COMPARATOR);
+
+    /**
+     * Key: entity id, value : the current attribute value referenced.
+     */
+    private final Map<String, Object> valuesByEntityId = new ConcurrentHashMap<>();
+
+    public AttributeIndex(final String attributeName) {
+        this.attributeName = attributeName;
+    }
+
+    public String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * Reference (or move) an entity on its attribute value.
+     *
+     * @param entity
+     * @param value  the attribute value, if null the entity is removed from index.
+     */
+    public synchronized void put(final Entity entity, final Object value) {
+        String entityId = entity.getId();
+        Object previous = valuesByEntityId.get(entityId);
+        if (previous != null && value != null && EntitySorter.VALUE_COMPARATOR.compare(previous, value) == 0) {
+            entries.get(previous).put(entityId, entity);
+            return;
+        }
+        remove(entityId);
+        if (value == null) {
+            return;
+        }
+        ConcurrentSkipListMap<String, Entity> bucket = entries.get(value);
+        if (bucket == null) {
+            bucket = new ConcurrentSkipListMap<>();
+            entries.put(value, bucket);
+        }
+        bucket.put(entityId, entity);
+        valuesByEntityId.put(entityId, value);
+    }
+
+    /**
+     * Remove an entity from this index.
+     *
+     * @param entityId
+     */
+    public synchronized void remove(final String entityId) {
+        Object previous = valuesByEntityId.remove(entityId);
+        if (previous == null) {
+            return;
+        }
+        ConcurrentSkipListMap<String, Entity> bucket = entries.get(previous);
+        if (bucket != null) {
+            bucket.remove(entityId);
+            if (bucket.isEmpty()) {
+                entries.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * @param entityId
+     * @return true if the entity has a value referenced in this index.
+     */
+    public boolean contains(final String entityId) {
+        return valuesByEntityId.containsKey(entityId);
+    }
+
+    /**
+     * Entities grouped by value, in value order.
+     *
+     * @param descending
+     * @return a live view of the index, each value entities are ordered by id.
+     */
+    public NavigableMap<Object, ConcurrentSkipListMap<String, Entity>> getEntries(final boolean descending) {
+        if (descending) {
+            return entries.descendingMap();
+        }
+        return entries;
+    }
+
+    /**
+     * @param value
+     * @return the entities having this value, ordered by id.
+     */
+    public Collection<Entity> getEntities(final Object value) {
+        ConcurrentSkipListMap<String, Entity> bucket = entries.get(value);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        return bucket.values();
+    }
+
+    /**
+     * @param value
+     * @return the number of entities having this value.
+     */
+    public int count(final Object value) {
+        ConcurrentSkipListMap<String, Entity> bucket = entries.get(value);
+        return bucket == null ? 0 : bucket.size();
+    }
+
+    /**
+     * @return the number of entities referenced.
+     */
+    public int size() {
+        return valuesByEntityId.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        valuesByEntityId.clear();
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Action;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Mixin;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generation counters of the collections, used to give an eTag and a last
+ * modified date to a collection without reading it. Each owner has a
+ * generation, a generation per category (kind, its actions and the mixins of
+ * the entities) and a generation per path prefix of the entity locations.
+ * When an entity changes, all the generations of its owner, categories and
+ * location prefixes are given a new value, after the change, so a collection
+ * which may contain the entity gets a new eTag. Values are taken from one
+ * sequence and are never given twice. Reads and updates are lock free.
+ */
+public class CollectionGenerations {
+
+    /**
+     * A generation value and the time it was given (in milliseconds).
+     */
+    public static class Generation {
+        private final long value;
+        private final long lastModified;
+
+        Generation(final long value, final long lastModified) {
+            this.value = value;
+            this.lastModified = lastModified;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Generations of an owner.
+     */
+    private static class OwnerGenerations {
+        private volatile Generation generation;
+        /**
+         * Key: category scheme + term.
+         */
+        private final ConcurrentMap<String, Generation> categories = new ConcurrentHashMap<>();
+        /**
+         * Key: path prefix without first slash and without spaces.
+         */
+        private final ConcurrentMap<String, Generation> paths = new ConcurrentHashMap<>();
+
+        OwnerGenerations(final Generation generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Generation of the collections never changed, its date is the creation date of this object.
+     * Its value is this date in microseconds so the generations given after a restart are not the
+     * ones given before.
+     */
+    private final Generation initial;
+    private final AtomicLong sequence;
+
+    public CollectionGenerations() {
+        final long now = System.currentTimeMillis();
+        initial = new Generation(TimeUnit.MILLISECONDS.toMicros(now), now);
+        sequence = new AtomicLong(initial.getValue());
+    }
+
+    private final ConcurrentMap<String, OwnerGenerations> owners = new ConcurrentHashMap<>();
+
+    /**
+     * Give new generations to the collections which may contain this entity. To call after the change.
+     *
+     * @param owner
+     * @param entity
+     * @param location relative location of the entity (without its uuid), may be null.
+     */
+    public void update(final String owner, final Entity entity, final String location) {
+        OwnerGenerations generations = getOwnerGenerations(owner);
+        Generation generation = next();
+        if (entity.getKind() != null) {
+            generations.categories.put(entity.getKind().getScheme() + entity.getKind().getTerm(), generation);
+            for (Action action : entity.getKind().getActions()) {
+                generations.categories.put(action.getScheme() + action.getTerm(), generation);
+            }
+        }
+        for (Mixin mixin : entity.getMixins()) {
+            generations.categories.put(mixin.getScheme() + mixin.getTerm(), generation);
+        }
+        if (location != null) {
+            // Collection path filters are prefixes of the location, not only on the slashes.
+            String path = normalizePath(location);
+            for (int i = 0; i <= path.length(); i++) {
+                generations.paths.put(path.substring(0, i), generation);
+            }
+        }
+        generations.generation = generation;
+    }
+
+    /**
+     * Give a new generation to a category collection, used when the category is removed from entities.
+     *
+     * @param owner
+     * @param categoryId category scheme + term.
+     */
+    public void updateCategory(final String owner, final String categoryId) {
+        OwnerGenerations generations = getOwnerGenerations(owner);
+        Generation generation = next();
+        generations.categories.put(categoryId, generation);
+        generations.generation = generation;
+    }
+
+    /**
+     * Get the generation of a collection, from its most specific filter : the category if any,
+     * the path if any, the owner elsewhere.
+     *
+     * @param owner
+     * @param categoryId   category filter (scheme + term), may be null.
+     * @param filterOnPath path filter, may be null.
+     * @return the generation of the collection, never null.
+     */
+    public Generation get(final String owner, final String categoryId, final String filterOnPath) {
+        OwnerGenerations generations = owners.get(owner);
+        if (generations == null) {
+            return initial;
+        }
+        Generation generation;
+        if (categoryId != null && !categoryId.isEmpty()) {
+            generation = generations.categories.get(categoryId);
+        } else if (filterOnPath != null && !filterOnPath.isEmpty()) {
+            generation = generations.paths.get(normalizePath(filterOnPath));
+        } else {
+            generation = generations.generation;
+        }
+        return generation == null ? initial : generation;
+    }
+
+    private Generation next() {
+        return new Generation(sequence.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    private OwnerGenerations getOwnerGenerations(final String owner) {
+        OwnerGenerations generations = owners.get(owner);
+        if (generations == null) {
+            generations = new OwnerGenerations(initial);
+            OwnerGenerations previous = owners.putIfAbsent(owner, generations);
+            if (previous != null) {
+                generations = previous;
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * @param path
+     * @return the path without spaces and without first slash, as compared by the collection path filter.
+     */
+    private static String normalizePath(final String path) {
+        String result = path.replaceAll("\\s+", "");
+        if (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        return result;
+    }
+}
@@ -22,11 +22,13 @@ import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EDataType;
 import org.eclipse.emf.ecore.EEnum;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.occiware.clouddesigner.occi.*;
 import org.occiware.clouddesigner.occi.util.Occi2Ecore;
 import org.occiware.clouddesigner.occi.util.OcciHelper;
 import org.occiware.mart.MART;
+import org.occiware.mart.server.servlet.model.exceptions.ActionExecutionException;
 import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.occiware.mart.server.servlet.utils.CollectionFilter;
 import org.occiware.mart.server.servlet.utils.Constants;
@@ -34,9 +36,26 @@ import org.occiware.mart.server.servlet.utils.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.core.EntityTag;
+import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * Manage configurations (OCCI Model).
@@ -70,10 +89,51 @@ public class ConfigurationManager {
 
     private static OCCIFactory occiFactory = OCCIFactory.eINSTANCE;
     /**
-     * Used only to create an eTag when object are updated. Key : owner+objectId
-     * Value : version number. First version is 1.
+     * Version of the entities, given as their eTag. Key : entity id, value :
+     * version number, taken from versionSequence on each change so a version
+     * is never given twice, even to an entity deleted then created again.
+     * The sequence starts from the boot time in microseconds : the versions
+     * given after a restart are greater than the ones given before, unless the
+     * previous run has given more than one million versions per second.
      */
-    private static Map<String, Integer> versionObjectMap = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Long> versionObjectMap = new ConcurrentHashMap<>();
+    private static final AtomicLong versionSequence = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+
+    /**
+     * Sorted attribute indexes, key: attribute name in lower case (attribute
+     * filters are case insensitive), value : the index.
+     */
+    private static Map<String, AttributeIndex> attributeIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * Key: owner, value: statistics of its entities, used to plan collection queries.
+     */
+    private static final ConcurrentMap<String, QueryStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Entities by creation sequence, used by cursor pagination.
+     */
+    private static final CreationSequenceIndex creationIndex = new CreationSequenceIndex();
+
+    /**
+     * Count and sum of some numeric attributes by kind and mixin, used by aggregation queries.
+     */
+    private static final IncrementalAggregates incrementalAggregates = new IncrementalAggregates();
+
+    /**
+     * Generations of the collections, used to give them an eTag and a last modified date.
+     */
+    private static final CollectionGenerations generations = new CollectionGenerations();
+
+    /**
+     * Default minimum number of entities to evaluate a collection filter in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_FILTER_THRESHOLD = 50000;
+
+    /**
+     * Used to evaluate collection filters on large entity sets.
+     */
+    private static volatile ParallelEntityFilter parallelFilter = new ParallelEntityFilter(Runtime.getRuntime().availableProcessors(), DEFAULT_PARALLEL_FILTER_THRESHOLD);
 
     static {
 
@@ -101,16 +161,21 @@ public class ConfigurationManager {
      * @param owner the current user.
      */
     public static void useAllExtensionForConfigurationInClasspath(String owner) {
+        useAllExtensionForConfigurationInClasspath(owner, false);
+    }
+
+    /**
+     * Assign used extensions to configuration object.
+     * @param owner the current user.
+     * @param parallel true to load the extension models in parallel, one thread by extension.
+     */
+    public static void useAllExtensionForConfigurationInClasspath(String owner, boolean parallel) {
         Configuration config = getConfigurationForOwner(owner);
-        Extension ext;
         List<Extension> extensions = new LinkedList<>();
         Collection<String> extReg = OCCIRegistry.getInstance().getRegisteredExtensions();
         LOGGER.info("Collection: " + extReg);
         boolean coreAdded = false;
-        for (String extScheme : extReg) {
-            // Load the extension and register, include the core as well...
-            LOGGER.info("Loading model extension : " + extScheme);
-            ext = OcciHelper.loadExtension(extScheme);
+        for (Extension ext : loadExtensions(extReg, parallel)) {
             if (ext.getName().equals("core")) {
                 extensions.add(0, ext); // Add on first infrastructure extension.
                 coreAdded = true;
@@ -131,6 +196,90 @@ public class ConfigurationManager {
         }
     }
 
+    /**
+     * Load the extension models, from the extension model cache when their jar is unchanged.
+     *
+     * @param extSchemes
+     * @param parallel   true to load each extension not in cache on its own thread.
+     * @return the extensions in the order of the schemes.
+     */
+    private static List<Extension> loadExtensions(final Collection<String> extSchemes, final boolean parallel) {
+        Map<String, Extension> cachedExtensions = ExtensionModelCache.loadAll(extSchemes);
+        List<String> schemesToLoad = new ArrayList<>();
+        for (String extScheme : extSchemes) {
+            if (!cachedExtensions.containsKey(extScheme)) {
+                schemesToLoad.add(extScheme);
+            }
+        }
+        List<Extension> loadedExtensions = loadExtensionModels(schemesToLoad, parallel);
+        for (int i = 0; i < schemesToLoad.size(); i++) {
+            ExtensionModelCache.save(schemesToLoad.get(i), loadedExtensions.get(i));
+        }
+        List<Extension> extensions = new ArrayList<>();
+        Iterator<Extension> itLoaded = loadedExtensions.iterator();
+        for (String extScheme : extSchemes) {
+            Extension extension = cachedExtensions.get(extScheme);
+            extensions.add(extension != null ? extension : itLoaded.next());
+        }
+        return extensions;
+    }
+
+    /**
+     * Load the extension models (OCCI xmi files).
+     *
+     * @param extSchemes
+     * @param parallel   true to load each extension on its own thread.
+     * @return the extensions in the order of the schemes.
+     */
+    private static List<Extension> loadExtensionModels(final Collection<String> extSchemes, final boolean parallel) {
+        List<Extension> extensions = new ArrayList<>();
+        if (!parallel || extSchemes.size() < 2) {
+            for (String extScheme : extSchemes) {
+                // Load the extension and register, include the core as well...
+                LOGGER.info("Loading model extension : " + extScheme);
+                extensions.add(OcciHelper.loadExtension(extScheme));
+            }
+            return extensions;
+        }
+        ExecutorService loaders = Executors.newFixedThreadPool(extSchemes.size(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-extension-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Extension>> futures = new ArrayList<>();
+            for (final String extScheme : extSchemes) {
+                // Each extension is loaded in its own resource set.
+                futures.add(loaders.submit(new Callable<Extension>() {
+                    @Override
+                    public Extension call() {
+                        LOGGER.info("Loading model extension : " + extScheme);
+                        return OcciHelper.loadExtension(extScheme);
+                    }
+                }));
+            }
+            for (Future<Extension> future : futures) {
+                extensions.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Extension loading interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException("Extension loading has failed", ex.getCause());
+        } finally {
+            loaders.shutdownNow();
+        }
+        return extensions;
+    }
+
 
 
 
@@ -503,9 +652,7 @@ public class ConfigurationManager {
         if (configurations.isEmpty() || owner == null || owner.isEmpty()) {
             return entities;
         }
-        entities.addAll(findAllEntitiesOwner(owner));
-        // TODO : Order list by entityId, if entities not empty.
-        entities = filterEntities(filter, entities, owner);
+        entities = filterEntities(filter, owner);
         return entities;
     }
 
@@ -524,11 +671,8 @@ public class ConfigurationManager {
             entities.add(resource);
             links = resource.getLinks();
             if (!links.isEmpty()) {
-                for (Link link : links) {
-                    if (!entities.contains(link)) {
-                        entities.add(link);
-                    }
-                }
+                // A link is contained by its source resource only, it cannot be found twice.
+                entities.addAll(links);
             }
         }
 
@@ -772,99 +916,552 @@ public class ConfigurationManager {
     }
 
     /**
-     * Apply filter where possible. startIndex starts at 1
+     * Apply filter where possible, order the result (sort keys of the filter
+     * or entity id) and give the current page. startIndex starts at 1. Only the
+     * first startIndex + number entities are sorted, with a bounded heap or by
+     * walking a sorted attribute index if one exists for the first sort key.
      *
      * @param filter
-     * @param sources
+     * @param user
      * @return a filtered list of entities.
      */
-    private static List<Entity> filterEntities(final CollectionFilter filter, List<Entity> sources, final String user) {
+    private static List<Entity> filterEntities(final CollectionFilter filter, final String user) {
 
-        String categoryFilter = filter.getCategoryFilter();
-        if (categoryFilter != null && !categoryFilter.isEmpty() && !Utils.checkIfCategorySchemeTerm(categoryFilter, user)) {
-            categoryFilter = ConfigurationManager.findCategorySchemeTermFromTerm(categoryFilter, ConfigurationManager.DEFAULT_OWNER);
+        final String categoryFilter = getCategoryFilterSchemeTerm(filter, user);
+        final String filterOnPath = getFilterOnPathWithoutEndSlash(filter);
+
+        if (filter.isCursorPagination()) {
+            return filterEntitiesAfterCursor(filter, categoryFilter, filterOnPath, user);
         }
 
-        String filterOnPath = filter.getFilterOnPath();
-        if (filterOnPath != null && !filterOnPath.isEmpty()) {
-            if (filterOnPath.endsWith("/")) {
-                filterOnPath = filterOnPath.substring(0, filterOnPath.length() - 1);
-            }
+        int offset = filter.getOffset();
+        // Max count, -1 infinite.
+        int limit = filter.getLimit();
+
+        List<CollectionFilter.SortKey> sortKeys = filter.getSortKeys();
+        AttributeIndex index = null;
+        if (!sortKeys.isEmpty()) {
+            index = getAttributeIndex(sortKeys.get(0).getAttributeName());
         }
 
-        Iterator<Entity> it = sources.iterator();
-        while (it.hasNext()) {
-            Entity entity = it.next();
+        List<Entity> entities;
+        if (index != null && limit >= 0) {
+            entities = findFirstEntitiesWithIndex(index, filter, categoryFilter, filterOnPath, user, limit);
+        } else {
+            QueryPlan plan = planQuery(filter, categoryFilter, filterOnPath, user);
+            List<Entity> matches = selectEntities(findCandidates(plan, filter, user), new Predicate<Entity>() {
+                @Override
+                public boolean test(Entity entity) {
+                    return checkEntityFilter(filter, categoryFilter, filterOnPath, entity);
+                }
+            });
+            entities = EntitySorter.sort(matches, sortKeys, limit);
+        }
 
-            if (checkEntityAttributeFilter(filter, entity) && checkEntityCategoryFilter(categoryFilter, entity) && checkEntityFilterOnPath(filterOnPath, entity)) {
-                continue;
-            }
-            it.remove();
+        if (offset >= entities.size()) {
+            return new LinkedList<>();
         }
+        return new LinkedList<>(entities.subList(offset, entities.size()));
+    }
 
-        int startIndex = filter.getCurrentPage();
+    /**
+     * Apply filter on the entities created after the filter cursor, in
+     * creation order, up to the number of items per page. The position is
+     * found in the creation index in O(log n), whatever the page depth.
+     *
+     * @param filter
+     * @param categoryFilter
+     * @param filterOnPath
+     * @param user
+     * @return a filtered list of entities.
+     */
+    private static List<Entity> filterEntitiesAfterCursor(final CollectionFilter filter, final String categoryFilter, final String filterOnPath, final String user) {
+        List<Entity> entities = new LinkedList<>();
         int number = filter.getNumberOfItemsPerPage();
-        if (startIndex > 1 && !sources.isEmpty()) {
-            int currentIndex = 0;
-            it = sources.iterator();
-            while (it.hasNext()) {
-                it.next();
-                LOGGER.info("currentIndex=" + currentIndex + ", startIndex=" + startIndex);
-                if (currentIndex < (startIndex - 1)) {
-                    it.remove();
+        if (number == 0) {
+            return entities;
+        }
+        Configuration configuration = getConfigurationForOwner(user);
+        for (Entity entity : creationIndex.getEntitiesAfter(filter.getCursor())) {
+            if (isEntityOnConfiguration(entity, configuration) && checkEntityFilter(filter, categoryFilter, filterOnPath, entity)) {
+                entities.add(entity);
+                if (number > 0 && entities.size() >= number) {
+                    break;
                 }
-                currentIndex++;
             }
         }
+        return entities;
+    }
 
-        // Max count, -1 infinite.
-        if (number >= 0) {
-            int count = 0;
-            it = sources.iterator();
-            while (it.hasNext()) {
-                it.next();
-                count++;
-                if (count > number) {
-                    it.remove();
+    /**
+     * Count the entities respecting a filter, pagination is not applied. The
+     * entities are not sorted, when the filter is an equality on an indexed
+     * attribute the count is read from the index.
+     *
+     * @param owner
+     * @param filter
+     * @return the total number of entities of the collection.
+     */
+    public static int countEntities(final String owner, final CollectionFilter filter) {
+        if (configurations.isEmpty() || owner == null || owner.isEmpty()) {
+            return 0;
+        }
+        final String categoryFilter = getCategoryFilterSchemeTerm(filter, owner);
+        final String filterOnPath = getFilterOnPathWithoutEndSlash(filter);
+
+        int count = countEntitiesWithIndex(filter, categoryFilter, filterOnPath, owner);
+        if (count >= 0) {
+            return count;
+        }
+        QueryPlan plan = planQuery(filter, categoryFilter, filterOnPath, owner);
+        return selectEntities(findCandidates(plan, filter, owner), new Predicate<Entity>() {
+            @Override
+            public boolean test(Entity entity) {
+                return checkEntityFilter(filter, categoryFilter, filterOnPath, entity);
+            }
+        }).size();
+    }
+
+    /**
+     * Plan and execute a collection query, without sort and pagination, to
+     * give the chosen access path with estimated and actual counts.
+     *
+     * @param owner
+     * @param filter
+     * @return the executed plan.
+     */
+    public static QueryPlan explainEntities(final String owner, final CollectionFilter filter) {
+        final String categoryFilter = getCategoryFilterSchemeTerm(filter, owner);
+        final String filterOnPath = getFilterOnPathWithoutEndSlash(filter);
+        QueryPlan plan = planQuery(filter, categoryFilter, filterOnPath, owner);
+        List<Entity> candidates = findCandidates(plan, filter, owner);
+        List<Entity> matches = selectEntities(candidates, new Predicate<Entity>() {
+            @Override
+            public boolean test(Entity entity) {
+                return checkEntityFilter(filter, categoryFilter, filterOnPath, entity);
+            }
+        });
+        plan.setActualCandidates(candidates.size());
+        plan.setActualRows(matches.size());
+        return plan;
+    }
+
+    /**
+     * Aggregate the entities of a collection, pagination is not applied. When
+     * the collection is a whole kind or mixin, or all the entities, and the
+     * measures are maintained by the incremental aggregates, the result is
+     * read from them. Else the entities respecting the filter are aggregated,
+     * in parallel on large collections.
+     *
+     * @param owner
+     * @param filter
+     * @param query
+     * @return the aggregation result.
+     */
+    public static AggregateResult aggregateEntities(final String owner, final CollectionFilter filter, final AggregateQuery query) {
+        final String categoryFilter = getCategoryFilterSchemeTerm(filter, owner);
+        final String filterOnPath = getFilterOnPathWithoutEndSlash(filter);
+
+        boolean wholeCategory = configurations.size() == 1
+                && (filter.getAttributeFilter() == null || filter.getAttributeFilter().isEmpty())
+                && filter.getValue() == null
+                && (filterOnPath == null || filterOnPath.isEmpty());
+        String kindId = null;
+        String mixinId = null;
+        if (wholeCategory && categoryFilter != null && !categoryFilter.isEmpty()) {
+            if (findKindFromExtension(owner, categoryFilter) != null) {
+                kindId = categoryFilter;
+            } else if (findMixinOnExtension(owner, categoryFilter) != null || findUserMixinOnConfiguration(categoryFilter, owner) != null) {
+                mixinId = categoryFilter;
+            } else {
+                wholeCategory = false;
+            }
+        }
+        if (wholeCategory && incrementalAggregates.covers(query, kindId, mixinId)) {
+            LOGGER.debug("Aggregation read from incremental aggregates");
+            return incrementalAggregates.getResult(query, kindId, mixinId);
+        }
+
+        QueryPlan plan = planQuery(filter, categoryFilter, filterOnPath, owner);
+        List<Entity> matches = selectEntities(findCandidates(plan, filter, owner), new Predicate<Entity>() {
+            @Override
+            public boolean test(Entity entity) {
+                return checkEntityFilter(filter, categoryFilter, filterOnPath, entity);
+            }
+        });
+        final Set<String> attributeNames = query.getAttributeNames();
+        AggregateResult result = parallelFilter.aggregate(matches, new Supplier<AggregateResult>() {
+            @Override
+            public AggregateResult get() {
+                return new AggregateResult();
+            }
+        }, new BiConsumer<AggregateResult, Entity>() {
+            @Override
+            public void accept(AggregateResult partialResult, Entity entity) {
+                Map<String, Number> values = getAggregateValues(entity, attributeNames);
+                for (String key : getAggregateGroupKeys(entity, query)) {
+                    partialResult.getGroup(key).add(values);
                 }
             }
+        }, new BinaryOperator<AggregateResult>() {
+            @Override
+            public AggregateResult apply(AggregateResult partialResult1, AggregateResult partialResult2) {
+                partialResult1.merge(partialResult2);
+                return partialResult1;
+            }
+        });
+        if (query.getGroupBy() == AggregateQuery.GroupBy.NONE) {
+            result.getGroup(null);
         }
+        return result;
+    }
 
-        return sources;
+    /**
+     * @param entity
+     * @param attributeNames
+     * @return numeric values of the attributes (see getAttrValueNumber), null if not numeric or not set.
+     */
+    private static Map<String, Number> getAggregateValues(final Entity entity, final Set<String> attributeNames) {
+        Map<String, Number> values = new HashMap<>();
+        for (String attributeName : attributeNames) {
+            values.put(attributeName, getAttrValueNumber(entity, attributeName));
+        }
+        return values;
     }
 
     /**
-     * Check if entity respect filter location path (relative).
+     * @param entity
+     * @param query
+     * @return the groups of the entity, an entity is in each group of its mixins and in no group if it has no mixin.
+     */
+    private static List<String> getAggregateGroupKeys(final Entity entity, final AggregateQuery query) {
+        List<String> keys = new ArrayList<>();
+        switch (query.getGroupBy()) {
+            case KIND:
+                keys.add(entity.getKind().getScheme() + entity.getKind().getTerm());
+                break;
+            case MIXIN:
+                for (Mixin mixin : entity.getMixins()) {
+                    keys.add(mixin.getScheme() + mixin.getTerm());
+                }
+                break;
+            case ATTRIBUTE:
+                String value = null;
+                for (AttributeState attrState : entity.getAttributes()) {
+                    if (attrState.getName().equalsIgnoreCase(query.getGroupAttribute())) {
+                        value = attrState.getValue();
+                        break;
+                    }
+                }
+                keys.add(value);
+                break;
+            default:
+                keys.add(null);
+        }
+        return keys;
+    }
+
+    /**
+     * Choose how to find the entities to filter, with the query statistics.
      *
+     * @param filter
+     * @param categoryFilter category filter (scheme + term).
+     * @param filterOnPath   path filter without ending slash.
+     * @param owner
+     * @return
+     */
+    private static QueryPlan planQuery(final CollectionFilter filter, final String categoryFilter, final String filterOnPath, final String owner) {
+        String kindId = null;
+        String mixinId = null;
+        if (categoryFilter != null && !categoryFilter.isEmpty()) {
+            if (findKindFromExtension(owner, categoryFilter) != null) {
+                kindId = categoryFilter;
+            } else if (findMixinOnExtension(owner, categoryFilter) != null || findUserMixinOnConfiguration(categoryFilter, owner) != null) {
+                mixinId = categoryFilter;
+            }
+        }
+        AttributeIndex index = null;
+        int indexCandidates = 0;
+        if (filter.getOperator() == CollectionFilter.OPERATOR_EQUAL && filter.getValue() != null) {
+            index = getAttributeIndex(filter.getAttributeFilter());
+            if (index != null) {
+                indexCandidates = index.count(filter.getValue());
+                for (Object typedValue : getTypedValues(filter.getValue())) {
+                    indexCandidates += index.count(typedValue);
+                }
+            }
+        }
+        QueryPlan plan = QueryPlanner.plan(getStatistics(owner), filter, kindId, mixinId, filterOnPath, index, indexCandidates);
+        LOGGER.debug("Query plan : " + plan.getAccessPath() + " " + plan.getAccessKey() + ", estimated candidates : " + plan.getEstimatedCandidates());
+        return plan;
+    }
+
+    /**
+     * Find the entities to filter with the plan access path. They must still be checked against the whole filter.
+     *
+     * @param plan
+     * @param filter
+     * @param owner
+     * @return
+     */
+    private static List<Entity> findCandidates(final QueryPlan plan, final CollectionFilter filter, final String owner) {
+        // Only the attribute index reads its candidates directly, the kind, mixin and path access paths visit all
+        // the owner's entities and compare their category or location, which is cheaper than the whole filter.
+        switch (plan.getAccessPath()) {
+            case KIND:
+                return findAllEntitiesForKind(owner, plan.getAccessKey());
+            case MIXIN:
+                return findAllEntitiesForMixin(owner, plan.getAccessKey());
+            case PATH:
+                return findAllEntitiesOnPath(owner, plan.getAccessKey());
+            case ATTRIBUTE_INDEX:
+                return findAllEntitiesWithIndexValue(owner, getAttributeIndex(filter.getAttributeFilter()), filter.getValue());
+            default:
+                return findAllEntitiesOwner(owner);
+        }
+    }
+
+    /**
+     * @param owner
      * @param filterOnPath
-     * @param entity
-     * @return true if constraint path is respected (or if filter on path is null or empty) and false elsewhere.
+     * @return the entities located under this path, the locations are not indexed so all the owner's entities are visited.
      */
-    private static boolean checkEntityFilterOnPath(final String filterOnPath, final Entity entity) {
-        boolean result = false;
+    private static List<Entity> findAllEntitiesOnPath(final String owner, final String filterOnPath) {
+        List<Entity> entities = new ArrayList<>();
+        for (Entity entity : findAllEntitiesOwner(owner)) {
+            if (isLocationOnPath(entitiesRelativePath.get(entity.getId()), filterOnPath)) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
 
-        String filterPath = filterOnPath;
-        if (filterPath == null || filterPath.isEmpty()) {
-            return true;
+    /**
+     * @param owner
+     * @param index
+     * @param value attribute value as given in filter.
+     * @return the owner's entities referenced by the index with this value, as string or typed value.
+     */
+    private static List<Entity> findAllEntitiesWithIndexValue(final String owner, final AttributeIndex index, final String value) {
+        Configuration configuration = getConfigurationForOwner(owner);
+        List<Object> values = new ArrayList<>();
+        values.add(value);
+        values.addAll(getTypedValues(value));
+        List<Entity> entities = new ArrayList<>();
+        for (Object indexValue : values) {
+            for (Entity entity : index.getEntities(indexValue)) {
+                if (isEntityOnConfiguration(entity, configuration)) {
+                    entities.add(entity);
+                }
+            }
         }
+        return entities;
+    }
 
-        String relativeLocation;
+    /**
+     * @param value
+     * @return the values (boolean, number) an attribute index may use for this string value.
+     */
+    private static List<Object> getTypedValues(final String value) {
+        List<Object> typedValues = new ArrayList<>();
+        if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+            typedValues.add(Boolean.valueOf(value));
+        }
         try {
-            relativeLocation = getLocation(entity.getId());
-            relativeLocation = relativeLocation.replaceAll("\\s+", "");
-        } catch (ConfigurationException ex) {
-            relativeLocation = null;
+            typedValues.add(Double.valueOf(value));
+        } catch (NumberFormatException ex) {
+            // Not a number.
         }
+        return typedValues;
+    }
 
-        filterPath = filterOnPath.replaceAll("\\s+", "");
+    /**
+     * Count with the attribute index when the filter is only an equality on an
+     * indexed attribute. Values kept as string in the index are counted with
+     * the index cardinality, typed values (number, boolean) parsed from the
+     * filter value are checked against the attribute value.
+     *
+     * @param filter
+     * @param categoryFilter
+     * @param filterOnPath
+     * @param owner
+     * @return the count, -1 if the index cannot answer this filter.
+     */
+    private static int countEntitiesWithIndex(final CollectionFilter filter, final String categoryFilter,
+                                              final String filterOnPath, final String owner) {
+        String value = filter.getValue();
+        AttributeIndex index = getAttributeIndex(filter.getAttributeFilter());
+        // Indexes reference the entities of all configurations.
+        if (index == null || value == null || filter.getOperator() != CollectionFilter.OPERATOR_EQUAL
+                || (categoryFilter != null && !categoryFilter.isEmpty())
+                || (filterOnPath != null && !filterOnPath.isEmpty())
+                || configurations.size() != 1 || !configurations.containsKey(owner)) {
+            return -1;
+        }
+        int count = index.count(value);
+        for (Object typedValue : getTypedValues(value)) {
+            for (Entity entity : index.getEntities(typedValue)) {
+                if (checkEntityAttributeFilter(filter, entity)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
 
-        if (relativeLocation == null || relativeLocation.isEmpty()) {
-            result = false;
-        } else if (relativeLocation.startsWith(filterPath)) {
-            result = true;
+    /**
+     * @param filter
+     * @param user
+     * @return the category filter with scheme + term.
+     */
+    private static String getCategoryFilterSchemeTerm(final CollectionFilter filter, final String user) {
+        String categoryFilter = filter.getCategoryFilter();
+        if (categoryFilter != null && !categoryFilter.isEmpty() && !Utils.checkIfCategorySchemeTerm(categoryFilter, user)) {
+            categoryFilter = ConfigurationManager.findCategorySchemeTermFromTerm(categoryFilter, ConfigurationManager.DEFAULT_OWNER);
         }
+        return categoryFilter;
+    }
 
-        return result;
+    /**
+     * @param filter
+     * @return the filter path without the last slash.
+     */
+    private static String getFilterOnPathWithoutEndSlash(final CollectionFilter filter) {
+        String filterOnPath = filter.getFilterOnPath();
+        if (filterOnPath != null && filterOnPath.endsWith("/")) {
+            filterOnPath = filterOnPath.substring(0, filterOnPath.length() - 1);
+        }
+        return filterOnPath;
+    }
+
+    /**
+     * Give the first limit entities respecting the filter, in the order of the
+     * filter sort keys, by walking the sorted index of the first sort key. The
+     * walk stops when limit entities are found.
+     *
+     * @param index          index of the first sort key attribute.
+     * @param filter
+     * @param categoryFilter category filter (scheme + term).
+     * @param filterOnPath   path filter without ending slash.
+     * @param owner
+     * @param limit          max number of entities to give.
+     * @return a sorted list of entities.
+     */
+    private static List<Entity> findFirstEntitiesWithIndex(final AttributeIndex index, final CollectionFilter filter,
+                                                           final String categoryFilter, final String filterOnPath,
+                                                           final String owner, final int limit) {
+        List<CollectionFilter.SortKey> sortKeys = filter.getSortKeys();
+        List<CollectionFilter.SortKey> otherKeys = sortKeys.subList(1, sortKeys.size());
+        Configuration configuration = getConfigurationForOwner(owner);
+        List<Entity> entities = new ArrayList<>();
+
+        for (ConcurrentSkipListMap<String, Entity> entitiesForValue : index.getEntries(sortKeys.get(0).isDescending()).values()) {
+            if (entities.size() >= limit) {
+                break;
+            }
+            List<Entity> matches = new ArrayList<>();
+            for (Entity entity : entitiesForValue.values()) {
+                if (isEntityOnConfiguration(entity, configuration) && checkEntityFilter(filter, categoryFilter, filterOnPath, entity)) {
+                    matches.add(entity);
+                }
+            }
+            if (!otherKeys.isEmpty() && matches.size() > 1) {
+                // Same value for the first key, order with the next keys.
+                matches = EntitySorter.sort(matches, otherKeys, -1);
+            }
+            entities.addAll(matches);
+        }
+
+        if (entities.size() >= limit) {
+            return new ArrayList<>(entities.subList(0, limit));
+        }
+
+        // Entities without value for the first sort key are at the end.
+        List<Entity> others = selectEntities(findAllEntitiesOwner(owner), new Predicate<Entity>() {
+            @Override
+            public boolean test(Entity entity) {
+                return !index.contains(entity.getId()) && checkEntityFilter(filter, categoryFilter, filterOnPath, entity);
+            }
+        });
+        entities.addAll(EntitySorter.sort(others, sortKeys, limit - entities.size()));
+        return entities;
+    }
+
+    /**
+     * Evaluate a filter on entities, in parallel if there are enough entities (see configureParallelFilter).
+     *
+     * @param sources
+     * @param predicate
+     * @return the entities accepted, in the sources order.
+     */
+    private static List<Entity> selectEntities(final List<Entity> sources, final Predicate<Entity> predicate) {
+        return parallelFilter.filter(sources, predicate);
+    }
+
+    /**
+     * Configure the parallel evaluation of collection filters.
+     *
+     * @param parallelism number of threads used to evaluate a filter.
+     * @param threshold   minimum number of entities to evaluate a filter in parallel, -1 to never use parallel evaluation.
+     */
+    public static void configureParallelFilter(final int parallelism, final int threshold) {
+        ParallelEntityFilter previous = parallelFilter;
+        parallelFilter = new ParallelEntityFilter(parallelism, threshold < 0 ? Integer.MAX_VALUE : threshold);
+        previous.shutdown();
+        LOGGER.info("Parallel collection filter : " + parallelism + " threads above " + threshold + " entities");
+    }
+
+    /**
+     * Check if an entity respect all the constraints of a filter (attribute, category and path).
+     *
+     * @param filter
+     * @param categoryFilter category filter (scheme + term).
+     * @param filterOnPath   path filter without ending slash.
+     * @param entity
+     * @return true if the entity must be in the collection.
+     */
+    private static boolean checkEntityFilter(final CollectionFilter filter, final String categoryFilter, final String filterOnPath, final Entity entity) {
+        return checkEntityAttributeFilter(filter, entity) && checkEntityCategoryFilter(categoryFilter, entity) && checkEntityFilterOnPath(filterOnPath, entity);
+    }
+
+    /**
+     * @param entity
+     * @param configuration
+     * @return true if the entity (resource or link of a resource) is contained in this configuration.
+     */
+    private static boolean isEntityOnConfiguration(final Entity entity, final Configuration configuration) {
+        EObject container = entity.eContainer();
+        while (container != null && !(container instanceof Configuration)) {
+            container = container.eContainer();
+        }
+        return container == configuration;
+    }
+
+    /**
+     * Check if entity respect filter location path (relative).
+     *
+     * @param filterOnPath
+     * @param entity
+     * @return true if constraint path is respected (or if filter on path is null or empty) and false elsewhere.
+     */
+    private static boolean checkEntityFilterOnPath(final String filterOnPath, final Entity entity) {
+        if (filterOnPath == null || filterOnPath.isEmpty()) {
+            return true;
+        }
+        return isLocationOnPath(entitiesRelativePath.get(entity.getId()), filterOnPath);
+    }
+
+    /**
+     * @param location   relative location of an entity, may be null.
+     * @param filterPath
+     * @return true if the location is under the filter path.
+     */
+    private static boolean isLocationOnPath(final String location, final String filterPath) {
+        if (location == null) {
+            return false;
+        }
+        String relativeLocation = location.replaceAll("\\s+", "");
+        return !relativeLocation.isEmpty() && relativeLocation.startsWith(filterPath.replaceAll("\\s+", ""));
     }
 
     /**
@@ -952,22 +1549,6 @@ public class ConfigurationManager {
 
 
 
-    // TODO : rebuild etag number method...
-//    /**
-//     * Generate eTag number from version map.
-//     *
-//     * @param owner
-//     * @param id
-//     * @return
-//     */
-//    public static UInt32 getEtagNumber(final String owner, final String id) {
-//        Integer version = versionObjectMap.get(owner + id);
-//        if (version == null) {
-//            version = 1;
-//        }
-//        // Generate eTag.
-//        return Utils.createEtagNumber(id, owner, version);
-//    }
 
 
 
@@ -1022,6 +1603,56 @@ public class ConfigurationManager {
     }
 
 
+    /**
+     * Execute an action on an entity with its connector.
+     *
+     * @param entity
+     * @param actionId         action scheme + term or action term only.
+     * @param actionParameters action parameters, may be null.
+     * @throws ConfigurationException   if the action is not defined for this entity.
+     * @throws ActionExecutionException if the action has failed.
+     */
+    public static void executeAction(final Entity entity, final String actionId, final String[] actionParameters) throws ConfigurationException, ActionExecutionException {
+        Action actionKind = null;
+        try {
+            actionKind = getActionFromEntityWithActionId(entity, actionId);
+        } catch (ConfigurationException ex) {
+            LOGGER.warn(ex.getMessage());
+        }
+        if (actionKind == null) {
+            // Search for this action with the term only on the entity Kind and Mixins.
+            actionKind = getActionFromEntityWithActionTerm(entity, actionId);
+        }
+        try {
+            if (actionParameters == null) {
+                OcciHelper.executeAction(entity, actionKind.getTerm());
+            } else {
+                OcciHelper.executeAction(entity, actionKind.getTerm(), actionParameters);
+            }
+        } catch (InvocationTargetException ex) {
+            String message = "The entity " + entity.getTitle() + "  action : " + actionId + " has throw an exception : " + ex.getCause().getClass().getName();
+            if (ex.getMessage() != null) {
+                message += " , Message: " + ex.getMessage();
+            } else {
+                message += ", Message: probably missing connector implementation.";
+            }
+            throw new ActionExecutionException(message, ex);
+        } catch (UnsupportedOperationException ex) {
+            String message = "The entity " + entity.getTitle() + "  action : " + actionId + " has throw an exception : " + ex.getClass().getName();
+            if (ex.getMessage() != null) {
+                message += "\n Message: " + ex.getMessage();
+            } else {
+                message += "\n Message: probably missing connector implementation.";
+            }
+            throw new ActionExecutionException(message, ex);
+        } finally {
+            // The action may have changed the entity on its connector.
+            RetrieveCache.invalidate(entity.getId());
+            updateVersion(entity.getId());
+            updateEntityIndexes(entity);
+        }
+    }
+
     /**
      * Find an action object from entity definition kind and associated mixins.
      * @param entity Entity object model.
@@ -1388,6 +2019,185 @@ public class ConfigurationManager {
         return result;
     }
 
+    /**
+     * Give a comparable value of an attribute, used to sort collections.
+     * The value is read from the attribute state (as collection filters do)
+     * and converted to a number or a boolean when the ecore attribute type is numeric or boolean.
+     *
+     * @param entity
+     * @param attrName attribute name (case insensitive).
+     * @return a Number, a Boolean or a String, null if the attribute has no value.
+     */
+    public static Object getAttrSortValue(Entity entity, String attrName) {
+        AttributeState attrState = null;
+        for (AttributeState state : entity.getAttributes()) {
+            if (state.getName().equalsIgnoreCase(attrName)) {
+                attrState = state;
+                break;
+            }
+        }
+        if (attrState == null || attrState.getValue() == null) {
+            return null;
+        }
+        String value = attrState.getValue();
+        EDataType eAttrType = getEAttributeType(entity, attrState.getName());
+        if (eAttrType == null || eAttrType instanceof EEnum || eAttrType.getInstanceClassName() == null) {
+            return value;
+        }
+        String instanceClassName = eAttrType.getInstanceClassName();
+        if (instanceClassName.equals("boolean") || instanceClassName.equals(Boolean.class.getName())) {
+            return Boolean.valueOf(value);
+        }
+        if (instanceClassName.equals(String.class.getName())) {
+            return value;
+        }
+        String simpleClassName = instanceClassName.substring(instanceClassName.lastIndexOf('.') + 1);
+        try {
+            return Utils.parseNumber(value, simpleClassName);
+        } catch (NumberFormatException ex) {
+            // Not a known numeric type or not a number, sort as a string.
+            return value;
+        }
+    }
+
+    /**
+     * Create a sorted index on an attribute, this index is used to sort collections
+     * on this attribute without sorting all the entities.
+     *
+     * @param attrName attribute name, ex: occi.compute.hostname.
+     */
+    public static void createAttributeIndex(final String attrName) {
+        if (attrName == null || attrName.trim().isEmpty()) {
+            return;
+        }
+        String key = attrName.trim().toLowerCase();
+        if (attributeIndexes.containsKey(key)) {
+            return;
+        }
+        AttributeIndex index = new AttributeIndex(key);
+        for (Configuration configuration : configurations.values()) {
+            for (Resource resource : configuration.getResources()) {
+                index.put(resource, getAttrSortValue(resource, key));
+                for (Link link : resource.getLinks()) {
+                    index.put(link, getAttrSortValue(link, key));
+                }
+            }
+        }
+        attributeIndexes.put(key, index);
+        LOGGER.info("Index created on attribute : " + key + " with " + index.size() + " entities");
+    }
+
+    /**
+     * @param attrName
+     * @return the sorted index of this attribute, null if none.
+     */
+    public static AttributeIndex getAttributeIndex(final String attrName) {
+        if (attrName == null) {
+            return null;
+        }
+        return attributeIndexes.get(attrName.toLowerCase());
+    }
+
+    /**
+     * Update the attribute indexes, the query statistics, the incremental aggregates and the
+     * collection generations with the current state of the entity, after a change on the server
+     * or on its connector (action, retrieve).
+     *
+     * @param entity
+     */
+    static void updateEntityIndexes(final Entity entity) {
+        for (AttributeIndex index : attributeIndexes.values()) {
+            index.put(entity, getAttrSortValue(entity, index.getAttributeName()));
+        }
+        if (entity.eContainer() != null) {
+            // Only the entities added to a configuration are counted.
+            getStatistics(getOwner(entity)).update(entity, entitiesRelativePath.get(entity.getId()));
+            creationIndex.put(entity);
+            updateIncrementalAggregates(entity);
+            updateGenerations(entity);
+        }
+    }
+
+    /**
+     * @param owner
+     * @return the query statistics of the owner's entities.
+     */
+    private static QueryStatistics getStatistics(final String owner) {
+        QueryStatistics ownerStatistics = statistics.get(owner);
+        if (ownerStatistics == null) {
+            QueryStatistics newStatistics = new QueryStatistics();
+            ownerStatistics = statistics.putIfAbsent(owner, newStatistics);
+            if (ownerStatistics == null) {
+                ownerStatistics = newStatistics;
+            }
+        }
+        return ownerStatistics;
+    }
+
+    /**
+     * Remove an entity from the attribute indexes and the query statistics.
+     *
+     * @param entityId
+     */
+    private static void removeEntityIndexes(final String entityId) {
+        for (AttributeIndex index : attributeIndexes.values()) {
+            index.remove(entityId);
+        }
+        // The entity is not on its configuration anymore, its owner is unknown.
+        for (QueryStatistics ownerStatistics : statistics.values()) {
+            ownerStatistics.remove(entityId);
+        }
+        creationIndex.remove(entityId);
+        incrementalAggregates.remove(entityId);
+        RetrieveCache.invalidate(entityId);
+        versionObjectMap.remove(entityId);
+    }
+
+    /**
+     * Update the incremental aggregates with the values of an entity. The entity is counted
+     * even if no attribute is maintained, the count measure is always read from the aggregates.
+     *
+     * @param entity
+     */
+    private static void updateIncrementalAggregates(final Entity entity) {
+        Set<String> attributeNames = incrementalAggregates.getAttributeNames();
+        List<String> mixinIds = new ArrayList<>();
+        for (Mixin mixin : entity.getMixins()) {
+            mixinIds.add(mixin.getScheme() + mixin.getTerm());
+        }
+        incrementalAggregates.update(entity.getId(), entity.getKind().getScheme() + entity.getKind().getTerm(), mixinIds, getAggregateValues(entity, attributeNames));
+    }
+
+    /**
+     * Maintain count and sum of a numeric attribute by kind and by mixin, aggregation queries
+     * with count, sum and avg on this attribute are then given without reading the entities.
+     *
+     * @param attrName attribute name, ex: occi.compute.cores.
+     */
+    public static void createIncrementalAggregate(final String attrName) {
+        if (attrName == null || attrName.trim().isEmpty()) {
+            return;
+        }
+        incrementalAggregates.addAttribute(attrName.trim());
+        for (Configuration configuration : configurations.values()) {
+            for (Resource resource : configuration.getResources()) {
+                updateIncrementalAggregates(resource);
+                for (Link link : resource.getLinks()) {
+                    updateIncrementalAggregates(link);
+                }
+            }
+        }
+        LOGGER.info("Incremental aggregates maintained on attribute : " + attrName.trim());
+    }
+
+    /**
+     * @param entity
+     * @return the creation sequence of the entity, used as cursor pagination position, -1 if the entity is not on a configuration.
+     */
+    public static long getCreationSequence(final Entity entity) {
+        return creationIndex.getSequence(entity.getId());
+    }
+
 
     /**
      * Find category id from category term value for a user configuration.
@@ -1578,9 +2388,10 @@ public class ConfigurationManager {
             configuration.getResources().add(resource);
             LOGGER.info("Added Resource " + resource.getId() + " to configuration object.");
         }
-        updateVersion(owner, id);
+        updateVersion(id);
         // Add the entity to relative path map.
         entitiesRelativePath.put(id, relativePath);
+        updateEntityIndexes(resource);
 
     }
 
@@ -1665,14 +2476,18 @@ public class ConfigurationManager {
         // Assign link to resource source.
         resourceSrc.getLinks().add(link);
 
-        updateVersion(owner, id);
+        updateVersion(id);
+        // The links are given with their source resource.
+        updateVersion(resourceSrc.getId());
+        updateGenerations(resourceSrc);
 
         if (overwrite) {
-            LOGGER.info("Link " + id + " updated ! Version: " + versionObjectMap.get(owner + id));
+            LOGGER.info("Link " + id + " updated ! Version: " + getVersion(id));
         } else {
             LOGGER.info("link " + id + " added to configuration !");
         }
         entitiesRelativePath.put(id, relativePath);
+        updateEntityIndexes(link);
 
     }
 
@@ -1792,8 +2607,10 @@ public class ConfigurationManager {
      * @throws ConfigurationException
      */
     public static void addMixinsToEntity(Entity entity, final List<String> mixins, final String owner, final boolean updateMode) throws ConfigurationException {
+        boolean changed = false;
         if (updateMode) {
             entity.getMixins().clear();
+            changed = true;
         }
         if (mixins != null && !mixins.isEmpty()) {
 
@@ -1810,6 +2627,11 @@ public class ConfigurationManager {
                         // Search on the mixin tag.
                         mixin = findUserMixinOnConfiguration(mixinStr, owner);
                         if (mixin == null) {
+                            if (changed && entity.eContainer() != null) {
+                                // The mixins already cleared or added to an entity of the configuration are kept, it has changed.
+                                updateVersion(entity.getId());
+                                updateEntityIndexes(entity);
+                            }
                             throw new ConfigurationException("Mixin " + mixinStr + " not found on extension nor on entities, this is maybe a mixin tag to define before.");
                         }
                     }
@@ -1833,8 +2655,10 @@ public class ConfigurationManager {
                 }
 
                 entity.getMixins().add(mixin);
+                changed = true;
             }
         }
+        updateEntityIndexes(entity);
     }
 
     /**
@@ -1870,7 +2694,8 @@ public class ConfigurationManager {
 
             if (entity != null && !entity.getMixins().contains(mixin)) {
                 entity.getMixins().add(mixin);
-                updateVersion(owner, entityId);
+                updateVersion(entityId);
+                updateEntityIndexes(entity);
             }
             if (entity != null) {
                 entities.add(entity);
@@ -1894,6 +2719,7 @@ public class ConfigurationManager {
                 if (!found) {
                     // Remove reference mixin of the entity.
                     entityMixin.getMixins().remove(mixin);
+                    updateEntityIndexes(entityMixin);
 
                     // Remove the entity from mixin.
                     // it.remove();
@@ -1955,6 +2781,7 @@ public class ConfigurationManager {
         if (attributes == null || attributes.isEmpty()) {
             // TODO : Check if concrete object attributes are deleted, or update MART with a remove attributes method.
             entity.getAttributes().clear();
+            updateEntityIndexes(entity);
             return entity;
         }
         String attrName;
@@ -1987,25 +2814,108 @@ public class ConfigurationManager {
                 }
             }
         }
+        updateEntityIndexes(entity);
 
         return entity;
     }
 
     /**
-     * Increment a version of an object (resource or link << entity)
+     * Give a new version to an entity (resource or link), after each change.
      *
-     * @param owner
-     * @param id
+     * @param id entity id.
+     * @return the new version.
      */
-    public static void updateVersion(final String owner, final String id) {
-        String key = owner + id;
-        Integer version = versionObjectMap.get(key);
+    public static long updateVersion(final String id) {
+        while (true) {
+            Long current = versionObjectMap.get(id);
+            long version = versionSequence.incrementAndGet();
+            if (current == null ? versionObjectMap.putIfAbsent(id, version) == null : versionObjectMap.replace(id, current, version)) {
+                return version;
+            }
+        }
+    }
+
+    /**
+     * @param id entity id.
+     * @return the current version of the entity, a first version is given to an entity without version.
+     */
+    public static long getVersion(final String id) {
+        Long version = versionObjectMap.get(id);
         if (version == null) {
-            version = 1;
+            long first = versionSequence.incrementAndGet();
+            version = versionObjectMap.putIfAbsent(id, first);
+            if (version == null) {
+                version = first;
+            }
         }
-        version++;
-        versionObjectMap.put(key, version);
+        return version;
+    }
+
+    /**
+     * Give a new version to an entity only if it has still the expected one, without lock :
+     * of concurrent changes based on the same version, only one succeeds.
+     *
+     * @param id      entity id.
+     * @param version expected current version.
+     * @return the new version, -1 if the entity has not the expected version.
+     */
+    public static long claimVersion(final String id, final long version) {
+        long claimed = versionSequence.incrementAndGet();
+        return versionObjectMap.replace(id, version, claimed) ? claimed : -1;
+    }
+
+    /**
+     * Give back its previous version to an entity whose change has failed, only if the entity
+     * has not been changed since its version has been claimed.
+     *
+     * @param id       entity id.
+     * @param claimed  version given by claimVersion.
+     * @param previous version before the claim.
+     * @return true if the previous version is given back.
+     */
+    public static boolean restoreVersion(final String id, final long claimed, final long previous) {
+        return versionObjectMap.replace(id, claimed, previous);
+    }
+
+    /**
+     * @param entity
+     * @return the eTag of the entity, its version.
+     */
+    public static EntityTag getEtag(final Entity entity) {
+        return new EntityTag(String.valueOf(getVersion(entity.getId())));
+    }
+
+    /**
+     * Give new generations to the collections which may contain this entity, after each change.
+     *
+     * @param entity
+     */
+    public static void updateGenerations(final Entity entity) {
+        generations.update(getOwner(entity), entity, entitiesRelativePath.get(entity.getId()));
+    }
 
+    /**
+     * Get the generation of a collection, the entities are not read.
+     *
+     * @param owner
+     * @param filter
+     * @return the generation of the collection defined by the filter.
+     */
+    public static CollectionGenerations.Generation getCollectionGeneration(final String owner, final CollectionFilter filter) {
+        return generations.get(owner, getCategoryFilterSchemeTerm(filter, owner), getFilterOnPathWithoutEndSlash(filter));
+    }
+
+    /**
+     * @param entity
+     * @return the owner of the configuration of the entity, the default owner if the entity is not on a configuration.
+     */
+    private static String getOwner(final Entity entity) {
+        for (Map.Entry<String, Configuration> entry : configurations.entrySet()) {
+            if (isEntityOnConfiguration(entity, entry.getValue())) {
+                return entry.getKey();
+            }
+        }
+        return DEFAULT_OWNER;
     }
 
 
@@ -2087,21 +2997,29 @@ public class ConfigurationManager {
         Iterator<Link> it = resource.getLinks().iterator();
         while (it.hasNext()) {
             Link link = it.next();
+            String linkLocation = entitiesRelativePath.get(link.getId());
             Resource src = link.getSource();
             if (!src.equals(resource)) {
                 src.getLinks().remove(link);
                 entitiesRelativePath.remove(link.getId());
+                updateVersion(src.getId());
+                updateGenerations(src);
             }
             Resource target = link.getTarget();
             if (!target.equals(resource)) {
                 target.getLinks().remove(link);
                 entitiesRelativePath.remove(link.getId());
             }
+            removeEntityIndexes(link.getId());
+            generations.update(owner, link, linkLocation);
         }
 
         resource.getLinks().clear();
+        String location = entitiesRelativePath.get(resource.getId());
         config.getResources().remove(resource);
         entitiesRelativePath.remove(resource.getId());
+        removeEntityIndexes(resource.getId());
+        generations.update(owner, resource, location);
     }
 
     /**
@@ -2112,9 +3030,15 @@ public class ConfigurationManager {
     private static void removeLink(final Link link) {
         Resource resourceSrc = link.getSource();
         Resource resourceTarget = link.getTarget();
+        String owner = getOwner(resourceSrc);
+        String location = entitiesRelativePath.get(link.getId());
         resourceSrc.getLinks().remove(link);
         resourceTarget.getLinks().remove(link);
         entitiesRelativePath.remove(link.getId());
+        removeEntityIndexes(link.getId());
+        updateVersion(resourceSrc.getId());
+        updateGenerations(resourceSrc);
+        generations.update(owner, link, location);
 
     }
 
@@ -2153,9 +3077,12 @@ public class ConfigurationManager {
         List<Entity> entities = findAllEntitiesForMixin(owner, mixin.getScheme() + mixin.getTerm());
         for (Entity entity : entities) {
             entity.getMixins().remove(mixin);
-            updateVersion(owner, entity.getId());
+            updateVersion(entity.getId());
+            updateEntityIndexes(entity);
         }
         entities.clear();
+        // The entities have no more the mixin, its collection is not updated with them.
+        generations.updateCategory(owner, mixin.getScheme() + mixin.getTerm());
 
     }
 
@@ -2193,7 +3120,9 @@ public class ConfigurationManager {
             }
 
             entity.getMixins().remove(myMixin);
-            updateVersion(owner, entity.getId());
+            updateVersion(entity.getId());
+            updateEntityIndexes(entity);
+            generations.updateCategory(owner, mixinId);
             result = true;
         }
         return result;
@@ -2218,6 +3147,7 @@ public class ConfigurationManager {
                 }
             }
         }
+        updateEntityIndexes(entity);
 
     }
 
@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execute the queries, and so the connector calls, out of the http threads.
+ * In asynchronous mode a query is executed on a bounded pool and its
+ * suspended response is resumed when done, the http thread goes back to
+ * the http pool meanwhile. Otherwise the query is executed on the http thread.
+ */
+public class ConnectorExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectorExecutor.class);
+
+    public static final int DEFAULT_THREADS = 200;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60000;
+
+    private static volatile boolean async = false;
+
+    private static volatile ExecutorService pool;
+
+    /**
+     * Maximum time in milliseconds of an asynchronous query, 0 or less : no limit.
+     */
+    private static volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * @param asyncMode true to execute the queries on the connector pool.
+     * @param threads   number of threads executing the queries.
+     * @param queueSize number of queries waiting for a thread, the next ones are refused (503).
+     * @param timeout   maximum time of a query in milliseconds, 0 or less : no limit.
+     */
+    public static synchronized void configure(final boolean asyncMode, final int threads, final int queueSize, final long timeout) {
+        configure(asyncMode, asyncMode ? createPool(threads, queueSize) : null, timeout);
+    }
+
+    /**
+     * Execute the asynchronous queries on a given executor, ex: virtual threads.
+     *
+     * @param asyncMode true to execute the queries on the executor.
+     * @param executor  executor of the queries, not bounded by this class.
+     * @param timeout   maximum time of a query in milliseconds, 0 or less : no limit.
+     */
+    public static synchronized void configure(final boolean asyncMode, final ExecutorService executor, final long timeout) {
+        ExecutorService previous = pool;
+        pool = asyncMode ? executor : null;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        timeoutMillis = timeout;
+        async = asyncMode;
+    }
+
+    public static boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Stop the pool, the queries in progress are completed until the timeout.
+     *
+     * @param timeoutMillis
+     * @return the number of queries abandoned.
+     */
+    public static int shutdown(final long timeoutMillis) {
+        return Utils.shutdownExecutor(pool, timeoutMillis);
+    }
+
+    /**
+     * Execute a query and resume its response with the result. A query still waiting for a thread
+     * when its timeout is over is not executed (503), a query already started goes on and its
+     * client is told that its outcome is unknown (504).
+     *
+     * @param asyncResponse suspended response of the query.
+     * @param query
+     */
+    public static void execute(final AsyncResponse asyncResponse, final Callable<Response> query) {
+        final ExecutorService threadPool = pool;
+        if (!async || threadPool == null) {
+            resume(asyncResponse, query);
+            return;
+        }
+        final QueryTask task = new QueryTask(asyncResponse, query);
+        if (timeoutMillis > 0) {
+            asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+                @Override
+                public void handleTimeout(AsyncResponse response) {
+                    if (task.cancel()) {
+                        if (threadPool instanceof ThreadPoolExecutor) {
+                            // Free its place in the queue.
+                            ((ThreadPoolExecutor) threadPool).remove(task);
+                        }
+                        response.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                                .header("Server", Constants.OCCI_SERVER_HEADER)
+                                .entity("The query has not been executed in time, it can be sent again")
+                                .build());
+                    } else {
+                        LOGGER.warn("Query still in progress after " + timeoutMillis + " ms");
+                        response.resume(Response.status(Response.Status.GATEWAY_TIMEOUT)
+                                .header("Server", Constants.OCCI_SERVER_HEADER)
+                                .entity("The query has not ended in time and is still in progress, its outcome is unknown : read the entities before sending it again")
+                                .build());
+                    }
+                }
+            });
+            asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            threadPool.execute(task);
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("Too many queries in progress, query refused");
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Server", Constants.OCCI_SERVER_HEADER)
+                    .entity("Too many queries in progress, retry later")
+                    .build());
+        }
+    }
+
+    private static void resume(final AsyncResponse asyncResponse, final Callable<Response> query) {
+        try {
+            asyncResponse.resume(query.call());
+        } catch (Throwable ex) {
+            // Mapped like exceptions thrown by a synchronous resource method.
+            asyncResponse.resume(ex);
+        }
+    }
+
+    /**
+     * A query waiting for a thread, it is either started or cancelled by its timeout.
+     */
+    private static class QueryTask implements Runnable {
+        private static final int WAITING = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final AsyncResponse asyncResponse;
+        private final Callable<Response> query;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        QueryTask(final AsyncResponse asyncResponse, final Callable<Response> query) {
+            this.asyncResponse = asyncResponse;
+            this.query = query;
+        }
+
+        /**
+         * @return true if the query was not started, it will never be.
+         */
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        @Override
+        public void run() {
+            if (state.compareAndSet(WAITING, STARTED)) {
+                resume(asyncResponse, query);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createPool(final int threads, final int queueSize) {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-connector-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Extension;
+import org.occiware.mart.server.servlet.exception.ConnectorRefusedException;
+import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Isolate the connector calls (occiCreate, occiRetrieve, occiUpdate, occiDelete) by extension.
+ * Each extension has its own concurrency limit (bulkhead), call timeout and circuit breaker,
+ * so a slow or failing backend fails fast (503 with Retry-After) instead of holding
+ * the server threads needed by the other extensions.
+ */
+public class ConnectorGuard {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectorGuard.class);
+
+    public static final int DEFAULT_CONCURRENCY = 100;
+
+    /**
+     * Default concurrency when the calls are executed on virtual threads : a call in progress does not hold a
+     * platform thread anymore, the limit only protects the backend.
+     */
+    public static final int DEFAULT_VIRTUAL_CONCURRENCY = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_BREAKER_FAILURES = 5;
+    public static final long DEFAULT_BREAKER_OPEN_MILLIS = 30000;
+
+    private static final String NO_EXTENSION = "none";
+
+    private static volatile Settings defaultSettings = new Settings(DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT_MILLIS,
+            DEFAULT_BREAKER_FAILURES, DEFAULT_BREAKER_OPEN_MILLIS);
+
+    /**
+     * Key: extension name, value: settings used instead of the default ones.
+     */
+    private static volatile Map<String, Settings> extensionSettings = new HashMap<>();
+
+    /**
+     * Key: extension scheme, value: its guard.
+     */
+    private static final ConcurrentMap<String, ExtensionGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * Threads executing the calls with a timeout, their number is bounded by the concurrency of the extensions.
+     */
+    private static volatile ExecutorService pool = createPool();
+
+    /**
+     * Limits of the connector calls of an extension.
+     */
+    public static class Settings {
+        private final int concurrency;
+        private final long timeoutMillis;
+        private final int breakerFailures;
+        private final long breakerOpenMillis;
+
+        /**
+         * @param concurrency       maximum number of calls in progress, the next ones are refused.
+         * @param timeoutMillis     maximum time of a call in milliseconds, 0 or less : no limit.
+         * @param breakerFailures   consecutive failures or timeouts opening the circuit, 0 or less : never open.
+         * @param breakerOpenMillis time in milliseconds during which the calls fail fast when the circuit is open.
+         */
+        public Settings(final int concurrency, final long timeoutMillis, final int breakerFailures, final long breakerOpenMillis) {
+            this.concurrency = concurrency;
+            this.timeoutMillis = timeoutMillis;
+            this.breakerFailures = breakerFailures;
+            this.breakerOpenMillis = breakerOpenMillis;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public int getBreakerFailures() {
+            return breakerFailures;
+        }
+
+        public long getBreakerOpenMillis() {
+            return breakerOpenMillis;
+        }
+    }
+
+    /**
+     * Bulkhead, timeout and circuit breaker of an extension, with its counters.
+     */
+    public static class ExtensionGuard {
+        private final String name;
+        private final Settings settings;
+        private final Semaphore permits;
+        private final CircuitBreaker breaker;
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+
+        ExtensionGuard(final String name, final Settings settings) {
+            this.name = name;
+            this.settings = settings;
+            this.permits = new Semaphore(settings.getConcurrency());
+            this.breaker = new CircuitBreaker(settings.getBreakerFailures(), settings.getBreakerOpenMillis());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public CircuitBreaker.State getState() {
+            return breaker.getState();
+        }
+
+        public int getInFlight() {
+            return settings.getConcurrency() - permits.availablePermits();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+    }
+
+    /**
+     * @param settings          default settings of the extensions.
+     * @param settingsExtension key: extension name, value: settings of this extension.
+     */
+    public static synchronized void configure(final Settings settings, final Map<String, Settings> settingsExtension) {
+        defaultSettings = settings;
+        extensionSettings = new HashMap<>(settingsExtension);
+        guards.clear();
+    }
+
+    public static void occiCreate(final Entity entity) {
+        execute(entity, "occiCreate", new Runnable() {
+            @Override
+            public void run() {
+                entity.occiCreate();
+            }
+        });
+    }
+
+    public static void occiRetrieve(final Entity entity) {
+        execute(entity, "occiRetrieve", new Runnable() {
+            @Override
+            public void run() {
+                entity.occiRetrieve();
+            }
+        });
+    }
+
+    public static void occiUpdate(final Entity entity) {
+        execute(entity, "occiUpdate", new Runnable() {
+            @Override
+            public void run() {
+                entity.occiUpdate();
+            }
+        });
+    }
+
+    public static void occiDelete(final Entity entity) {
+        execute(entity, "occiDelete", new Runnable() {
+            @Override
+            public void run() {
+                entity.occiDelete();
+            }
+        });
+    }
+
+    /**
+     * @return the guards of the extensions called since the server start.
+     */
+    public static Collection<ExtensionGuard> getExtensionGuards() {
+        return new ArrayList<>(guards.values());
+    }
+
+    /**
+     * Execute the connector calls on a given executor, ex: virtual threads.
+     *
+     * @param executor executor of the calls, not bounded by this class.
+     */
+    public static synchronized void configure(final ExecutorService executor) {
+        ExecutorService previous = pool;
+        pool = executor;
+        previous.shutdown();
+    }
+
+    /**
+     * Execute a task on the connector threads, no server thread can interrupt it.
+     *
+     * @param task
+     */
+    static void execute(final Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * Stop the pool of the connector calls, the calls in progress are completed until the timeout.
+     *
+     * @param timeoutMillis
+     * @return the number of connector calls abandoned.
+     */
+    public static int shutdown(final long timeoutMillis) {
+        return Utils.shutdownExecutor(pool, timeoutMillis);
+    }
+
+    /**
+     * Execute a connector call in the limits of the entity extension.
+     *
+     * @param entity
+     * @param operation name of the call, for logs and errors.
+     * @param call
+     * @throws ConnectorRefusedException   if the call is refused, it has not been started.
+     * @throws ServiceUnavailableException if the call has not ended in time, it goes on until its real end.
+     */
+    private static void execute(final Entity entity, final String operation, final Runnable call) {
+        final ExtensionGuard guard = getGuard(entity);
+        if (!guard.permits.tryAcquire()) {
+            guard.rejected.increment();
+            throw refused("Too many " + guard.name + " connector calls in progress, " + operation + " refused", 1000);
+        }
+        if (!guard.breaker.allowRequest()) {
+            guard.permits.release();
+            guard.rejected.increment();
+            throw refused("The " + guard.name + " connector is unavailable, " + operation + " refused", guard.breaker.getRetryAfterMillis());
+        }
+        final long timeout = guard.settings.getTimeoutMillis();
+        if (timeout <= 0) {
+            try {
+                call.run();
+                guard.breaker.onSuccess();
+            } catch (RuntimeException | Error ex) {
+                guard.failures.increment();
+                guard.breaker.onFailure();
+                throw ex;
+            } finally {
+                guard.permits.release();
+            }
+            return;
+        }
+        // The result of the call is given to the breaker once, by the call or by the timeout.
+        final AtomicBoolean recorded = new AtomicBoolean(false);
+        FutureTask<Void> task = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call.run();
+                    if (recorded.compareAndSet(false, true)) {
+                        guard.breaker.onSuccess();
+                    }
+                } catch (RuntimeException | Error ex) {
+                    if (recorded.compareAndSet(false, true)) {
+                        guard.failures.increment();
+                        guard.breaker.onFailure();
+                    }
+                    throw ex;
+                } finally {
+                    // A call that has timed out keeps its permit until its real end.
+                    guard.permits.release();
+                }
+            }
+        }, null);
+        pool.execute(task);
+        try {
+            task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (recorded.compareAndSet(false, true)) {
+                guard.timeouts.increment();
+                guard.breaker.onFailure();
+            }
+            LOGGER.warn(operation + " on entity " + entity.getId() + " has not ended after " + timeout + " ms");
+            throw unavailable("The " + guard.name + " connector has not answered in time, " + operation + " aborted", guard.breaker.getRetryAfterMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw unavailable(operation + " interrupted", 0);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static ExecutorService createPool() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-extension-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static ExtensionGuard getGuard(final Entity entity) {
+        String scheme = "";
+        String name = NO_EXTENSION;
+        if (entity.getKind() != null && entity.getKind().eContainer() instanceof Extension) {
+            Extension extension = (Extension) entity.getKind().eContainer();
+            scheme = extension.getScheme();
+            name = extension.getName();
+        }
+        ExtensionGuard guard = guards.get(scheme);
+        if (guard == null) {
+            Settings settings = extensionSettings.get(name);
+            guard = new ExtensionGuard(name, settings == null ? defaultSettings : settings);
+            ExtensionGuard existing = guards.putIfAbsent(scheme, guard);
+            if (existing != null) {
+                guard = existing;
+            }
+        }
+        return guard;
+    }
+
+    private static ServiceUnavailableException unavailable(final String message, final long retryAfterMillis) {
+        return new ServiceUnavailableException(message, createResponse(message, retryAfterMillis));
+    }
+
+    private static ConnectorRefusedException refused(final String message, final long retryAfterMillis) {
+        return new ConnectorRefusedException(message, createResponse(message, retryAfterMillis));
+    }
+
+    private static Response createResponse(final String message, final long retryAfterMillis) {
+        LOGGER.warn(message);
+        // Retry-After is given in seconds.
+        long retryAfter = Math.max(1, (retryAfterMillis + 999) / 1000);
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header("Server", Constants.OCCI_SERVER_HEADER)
+                .header("Retry-After", retryAfter)
+                .entity(message)
+                .build();
+    }
+}
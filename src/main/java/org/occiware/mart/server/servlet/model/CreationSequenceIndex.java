@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the entities by creation sequence, used by cursor pagination. An
+ * entity gets a sequence number the first time it is added to a
+ * configuration and keeps it on update, so walking this index from a sequence
+ * is stable even if entities are created or deleted between two pages.
+ * Sequences start at 1. Reads are lock free.
+ */
+public class CreationSequenceIndex {
+
+    private final AtomicLong lastSequence = new AtomicLong();
+
+    /**
+     * Key: creation sequence, value: entity.
+     */
+    private final ConcurrentSkipListMap<Long, Entity> entities = new ConcurrentSkipListMap<>();
+
+    /**
+     * Key: entity id, value: creation sequence.
+     */
+    private final Map<String, Long> sequencesByEntityId = new ConcurrentHashMap<>();
+
+    /**
+     * Reference an entity, a new sequence is given only if the entity id is not already referenced.
+     *
+     * @param entity
+     */
+    public synchronized void put(final Entity entity) {
+        Long sequence = sequencesByEntityId.get(entity.getId());
+        if (sequence == null) {
+            sequence = lastSequence.incrementAndGet();
+            sequencesByEntityId.put(entity.getId(), sequence);
+        }
+        entities.put(sequence, entity);
+    }
+
+    /**
+     * @param entityId
+     */
+    public synchronized void remove(final String entityId) {
+        Long sequence = sequencesByEntityId.remove(entityId);
+        if (sequence != null) {
+            entities.remove(sequence);
+        }
+    }
+
+    /**
+     * @param entityId
+     * @return the creation sequence of the entity, -1 if not referenced.
+     */
+    public long getSequence(final String entityId) {
+        Long sequence = sequencesByEntityId.get(entityId);
+        return sequence == null ? -1 : sequence;
+    }
+
+    /**
+     * @param sequence
+     * @return the entities created after this sequence, in creation order. This is a live view.
+     */
+    public Collection<Entity> getEntitiesAfter(final long sequence) {
+        return entities.tailMap(sequence, false).values();
+    }
+
+    public int size() {
+        return entities.size();
+    }
+}
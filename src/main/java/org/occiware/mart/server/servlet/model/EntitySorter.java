@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import java.util.*;
+
+/**
+ * Order entity collections on attribute values. Values are typed with the EMF
+ * attribute type (see ConfigurationManager.getAttrSortValue), entities without
+ * value are always set at the end and the entity id is the last criterion, so
+ * the order is total and pagination is stable.
+ */
+public class EntitySorter {
+
+    /**
+     * Compare two attribute values, numbers are compared by their values,
+     * other comparable objects of the same class with their natural order, and
+     * the others by class name and string representation.
+     */
+    public static final Comparator<Object> VALUE_COMPARATOR = new Comparator<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Object o1, Object o2) {
+            if (o1 instanceof Number && o2 instanceof Number) {
+                return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+            }
+            if (o1 instanceof Comparable && o1.getClass().equals(o2.getClass())) {
+                return ((Comparable<Object>) o1).compareTo(o2);
+            }
+            // All numbers are grouped to keep the order total.
+            String className1 = o1 instanceof Number ? Number.class.getName() : o1.getClass().getName();
+            String className2 = o2 instanceof Number ? Number.class.getName() : o2.getClass().getName();
+            int result = className1.compareTo(className2);
+            if (result == 0) {
+                result = o1.toString().compareTo(o2.toString());
+            }
+            return result;
+        }
+    };
+
+    /**
+     * Sort entities and keep only the first ones.
+     *
+     * @param entities entities to sort, this list is not modified.
+     * @param sortKeys sort keys, if empty the entities are ordered by id.
+     * @param limit    number of entities to keep, -1 to keep all entities.
+     * @return a new sorted list of at most limit entities.
+     */
+    public static List<Entity> sort(final Collection<Entity> entities, final List<CollectionFilter.SortKey> sortKeys, final int limit) {
+        List<SortableEntity> sortables = new ArrayList<>(entities.size());
+        for (Entity entity : entities) {
+            sortables.add(new SortableEntity(entity, sortKeys));
+        }
+        List<SortableEntity> sorted = firstSorted(sortables, createComparator(sortKeys), limit);
+        List<Entity> result = new ArrayList<>(sorted.size());
+        for (SortableEntity sortable : sorted) {
+            result.add(sortable.entity);
+        }
+        return result;
+    }
+
+    /**
+     * Give the first limit items in comparator order. When limit is lower than
+     * the number of items, a bounded heap is used : O(n log k) instead of a
+     * full sort.
+     *
+     * @param items      items to sort, this collection is not modified.
+     * @param comparator the order.
+     * @param limit      max number of items to keep, -1 for all.
+     * @param <T>        item type.
+     * @return a new sorted list.
+     */
+    public static <T> List<T> firstSorted(final Collection<T> items, final Comparator<? super T> comparator, final int limit) {
+        if (limit < 0 || limit >= items.size()) {
+            List<T> result = new ArrayList<>(items);
+            result.sort(comparator);
+            return result;
+        }
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        // Max heap on the kept items, the head is the greatest item kept.
+        PriorityQueue<T> heap = new PriorityQueue<>(limit + 1, Collections.reverseOrder(comparator));
+        for (T item : items) {
+            if (heap.size() < limit) {
+                heap.add(item);
+            } else if (comparator.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+        List<T> result = new ArrayList<>(heap);
+        result.sort(comparator);
+        return result;
+    }
+
+    /**
+     * Compare attribute values with direction, null values are always last.
+     *
+     * @param value1
+     * @param value2
+     * @param descending
+     * @return
+     */
+    public static int compareValues(final Object value1, final Object value2, final boolean descending) {
+        if (value1 == null || value2 == null) {
+            if (value1 == value2) {
+                return 0;
+            }
+            return value1 == null ? 1 : -1;
+        }
+        int result = VALUE_COMPARATOR.compare(value1, value2);
+        return descending ? -result : result;
+    }
+
+    /**
+     * Comparator on the sort keys followed by entity id.
+     *
+     * @param sortKeys
+     * @return
+     */
+    private static Comparator<SortableEntity> createComparator(final List<CollectionFilter.SortKey> sortKeys) {
+        return new Comparator<SortableEntity>() {
+            @Override
+            public int compare(SortableEntity o1, SortableEntity o2) {
+                for (int i = 0; i < sortKeys.size(); i++) {
+                    int result = compareValues(o1.values[i], o2.values[i], sortKeys.get(i).isDescending());
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return o1.entity.getId().compareTo(o2.entity.getId());
+            }
+        };
+    }
+
+    /**
+     * An entity with its sort values read once, comparisons don't read the
+     * EMF model.
+     */
+    private static class SortableEntity {
+        final Entity entity;
+        final Object[] values;
+
+        SortableEntity(final Entity entity, final List<CollectionFilter.SortKey> sortKeys) {
+            this.entity = entity;
+            this.values = new Object[sortKeys.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ConfigurationManager.getAttrSortValue(entity, sortKeys.get(i).getAttributeName());
+            }
+        }
+    }
+
+}
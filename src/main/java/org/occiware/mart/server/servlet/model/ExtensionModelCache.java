@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.occiware.clouddesigner.occi.Extension;
+import org.occiware.clouddesigner.occi.OCCIRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the extension models (kinds, mixins, actions, attributes) in local files,
+ * in the EMF binary format which is read faster than the OCCI xmi model of the extension.
+ * A cache file is keyed by the checksum of the extension jar (or model file), so it is
+ * used only while this jar is unchanged.
+ */
+public class ExtensionModelCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionModelCache.class);
+
+    /**
+     * Version of the cache files, to change if their content changes.
+     */
+    private static final String FORMAT_VERSION = "v1";
+
+    private static final String FILE_EXTENSION = ".bin";
+
+    public static final String DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".martserver", "extensions").toString();
+
+    /**
+     * Directory of the cache files, null : cache disabled (default, enabled by the server configuration).
+     */
+    private static volatile Path directory = null;
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param cacheDirectory directory of the cache files, null to disable the cache.
+     */
+    public static void configure(final String cacheDirectory) {
+        directory = cacheDirectory == null ? null : Paths.get(cacheDirectory);
+    }
+
+    public static boolean isEnabled() {
+        return directory != null;
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Load the extensions found in the cache. They are loaded in the same resource set,
+     * so the references between them (ex: infrastructure kinds to core kinds) use the cached models too.
+     *
+     * @param extSchemes
+     * @return key: extension scheme, value: the extension, only for the extensions in cache.
+     */
+    public static Map<String, Extension> loadAll(final Iterable<String> extSchemes) {
+        Map<String, Extension> extensions = new LinkedHashMap<>();
+        Path cacheDirectory = directory;
+        if (cacheDirectory == null) {
+            return extensions;
+        }
+        ResourceSet resourceSet = new ResourceSetImpl();
+        Map<URI, Resource> uriResourceMap = new HashMap<>();
+        ((ResourceSetImpl) resourceSet).setURIResourceMap(uriResourceMap);
+        for (String extScheme : extSchemes) {
+            Path cacheFile = getCacheFile(cacheDirectory, extScheme);
+            if (cacheFile == null || !Files.isRegularFile(cacheFile)) {
+                misses.incrementAndGet();
+                continue;
+            }
+            URI uri = URI.createURI(extScheme);
+            BinaryResourceImpl resource = new BinaryResourceImpl(uri);
+            resourceSet.getResources().add(resource);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(cacheFile))) {
+                resource.load(in, new HashMap<Object, Object>());
+                extensions.put(extScheme, (Extension) resource.getContents().get(0));
+                // References to the extension are made with or without the ending #.
+                uriResourceMap.put(uri, resource);
+                uriResourceMap.put(uri.trimFragment(), resource);
+                hits.incrementAndGet();
+                LOGGER.info("Extension " + extScheme + " loaded from cache file : " + cacheFile);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.warn("Cannot read the cache file " + cacheFile + " of extension " + extScheme + ", the extension model is loaded : " + ex.getMessage());
+                resourceSet.getResources().remove(resource);
+                misses.incrementAndGet();
+                deleteQuietly(cacheFile);
+            }
+        }
+        return extensions;
+    }
+
+    /**
+     * Write the model of an extension in the cache, the previous cache files of this extension are removed.
+     *
+     * @param extScheme
+     * @param extension loaded from its model.
+     */
+    public static void save(final String extScheme, final Extension extension) {
+        Path cacheDirectory = directory;
+        if (cacheDirectory == null || extension.eResource() == null) {
+            return;
+        }
+        Path cacheFile = getCacheFile(cacheDirectory, extScheme);
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDirectory);
+            removeCacheFiles(cacheDirectory, extScheme);
+            // Written in a temporary file then moved, a concurrent start never reads a partial file.
+            Path tmpFile = Files.createTempFile(cacheDirectory, getFilePrefix(extScheme), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+                BinaryResourceImpl.EObjectOutputStream eObjectOut = new BinaryResourceImpl.EObjectOutputStream(out, new HashMap<Object, Object>());
+                eObjectOut.saveResource(extension.eResource());
+                eObjectOut.flush();
+            }
+            Files.move(tmpFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Extension " + extScheme + " written in cache file : " + cacheFile);
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Cannot write the cache file of extension " + extScheme + " : " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @param cacheDirectory
+     * @param extScheme
+     * @return the cache file of the extension for its current jar, null if the jar cannot be read.
+     */
+    private static Path getCacheFile(final Path cacheDirectory, final String extScheme) {
+        String checksum = getChecksum(extScheme);
+        if (checksum == null) {
+            return null;
+        }
+        return cacheDirectory.resolve(getFilePrefix(extScheme) + checksum + FILE_EXTENSION);
+    }
+
+    /**
+     * @param extScheme
+     * @return prefix of the cache files of an extension, ex: v1-schemas.ogf.org_occi_infrastructure-
+     */
+    private static String getFilePrefix(final String extScheme) {
+        String name = extScheme.replaceFirst("^[a-zA-Z]+://", "").replaceAll("[^a-zA-Z0-9.]+", "_");
+        if (name.endsWith("_")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return FORMAT_VERSION + "-" + name + "-";
+    }
+
+    /**
+     * @param extScheme
+     * @return sha-256 of the jar holding the extension model (or of the model file if not in a jar), null if not readable.
+     */
+    private static String getChecksum(final String extScheme) {
+        String fileURI = OCCIRegistry.getInstance().getFileURI(extScheme);
+        if (fileURI == null) {
+            return null;
+        }
+        try {
+            URL url = new URL(fileURI);
+            URL fileURL = url;
+            if (url.getProtocol().equals("jar")) {
+                fileURL = ((JarURLConnection) url.openConnection()).getJarFileURL();
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[65536];
+            try (InputStream in = fileURL.openStream()) {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                }
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException ex) {
+            LOGGER.warn("Cannot compute the checksum of extension " + extScheme + " model (" + fileURI + ") : " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void removeCacheFiles(final Path cacheDirectory, final String extScheme) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, getFilePrefix(extScheme) + "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static void deleteQuietly(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ex) {
+            LOGGER.warn("Cannot delete the cache file " + file + " : " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Count of the entities and sum of some numeric attributes by kind and by
+ * mixin, updated on each entity change. The entities are counted even if no
+ * attribute is maintained. They give count, sum and avg aggregations without
+ * reading the entities. Min and max cannot be maintained on update or delete
+ * without keeping all the values, they are always computed on the entities.
+ */
+public class IncrementalAggregates {
+
+    /**
+     * Values of an entity as added in the groups.
+     */
+    private static class EntityEntry {
+        private final String kindId;
+        private final List<String> mixinIds;
+        private final Map<String, Number> values;
+
+        EntityEntry(final String kindId, final List<String> mixinIds, final Map<String, Number> values) {
+            this.kindId = kindId;
+            this.mixinIds = mixinIds;
+            this.values = values;
+        }
+    }
+
+    private final Set<String> attributeNames = new LinkedHashSet<>();
+
+    /**
+     * Key: entity id.
+     */
+    private final Map<String, EntityEntry> entries = new HashMap<>();
+
+    /**
+     * Key: kind scheme + term.
+     */
+    private final Map<String, AggregateResult.Group> kindGroups = new HashMap<>();
+
+    /**
+     * Key: mixin scheme + term.
+     */
+    private final Map<String, AggregateResult.Group> mixinGroups = new HashMap<>();
+
+    /**
+     * Maintain the aggregates of this attribute, entities must be updated to add their values.
+     *
+     * @param attributeName
+     */
+    public synchronized void addAttribute(final String attributeName) {
+        attributeNames.add(attributeName);
+    }
+
+    public synchronized Set<String> getAttributeNames() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(attributeNames));
+    }
+
+    /**
+     * Replace the values of an entity.
+     *
+     * @param entityId
+     * @param kindId
+     * @param mixinIds
+     * @param values   numeric values of the maintained attributes.
+     */
+    public synchronized void update(final String entityId, final String kindId, final List<String> mixinIds, final Map<String, Number> values) {
+        remove(entityId);
+        EntityEntry entry = new EntityEntry(kindId, mixinIds, values);
+        entries.put(entityId, entry);
+        getGroup(kindGroups, kindId).add(values);
+        for (String mixinId : mixinIds) {
+            getGroup(mixinGroups, mixinId).add(values);
+        }
+    }
+
+    /**
+     * @param entityId
+     */
+    public synchronized void remove(final String entityId) {
+        EntityEntry entry = entries.remove(entityId);
+        if (entry == null) {
+            return;
+        }
+        getGroup(kindGroups, entry.kindId).remove(entry.values);
+        for (String mixinId : entry.mixinIds) {
+            getGroup(mixinGroups, mixinId).remove(entry.values);
+        }
+    }
+
+    /**
+     * @param query
+     * @param kindId  kind of the collection if any.
+     * @param mixinId mixin of the collection if any.
+     * @return true if the aggregates give the result of this query.
+     */
+    public synchronized boolean covers(final AggregateQuery query, final String kindId, final String mixinId) {
+        AggregateQuery.GroupBy groupBy = query.getGroupBy();
+        if (groupBy == AggregateQuery.GroupBy.ATTRIBUTE
+                || (kindId != null && groupBy == AggregateQuery.GroupBy.MIXIN)
+                || (mixinId != null && groupBy == AggregateQuery.GroupBy.KIND)) {
+            return false;
+        }
+        for (AggregateQuery.Measure measure : query.getMeasures()) {
+            if (measure.getAttributeName() == null) {
+                continue;
+            }
+            if (measure.getFunction() == AggregateQuery.Function.MIN || measure.getFunction() == AggregateQuery.Function.MAX
+                    || !attributeNames.contains(measure.getAttributeName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Give the result of a query, covers() must be checked before.
+     *
+     * @param query
+     * @param kindId  kind of the collection if any.
+     * @param mixinId mixin of the collection if any.
+     * @return
+     */
+    public synchronized AggregateResult getResult(final AggregateQuery query, final String kindId, final String mixinId) {
+        AggregateResult result = new AggregateResult();
+        Map<String, AggregateResult.Group> groups = mixinId != null || query.getGroupBy() == AggregateQuery.GroupBy.MIXIN ? mixinGroups : kindGroups;
+        String categoryId = mixinId != null ? mixinId : kindId;
+        for (AggregateResult.Group group : groups.values()) {
+            if (group.getEntityCount() <= 0 || (categoryId != null && !categoryId.equals(group.getKey()))) {
+                continue;
+            }
+            String key = query.getGroupBy() == AggregateQuery.GroupBy.NONE ? null : group.getKey();
+            result.getGroup(key).merge(group);
+        }
+        if (query.getGroupBy() == AggregateQuery.GroupBy.NONE) {
+            result.getGroup(null);
+        }
+        return result;
+    }
+
+    private static AggregateResult.Group getGroup(final Map<String, AggregateResult.Group> groups, final String key) {
+        AggregateResult.Group group = groups.get(key);
+        if (group == null) {
+            group = new AggregateResult.Group(key);
+            groups.put(key, group);
+        }
+        return group;
+    }
+}
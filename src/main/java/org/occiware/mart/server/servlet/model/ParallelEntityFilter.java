@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Evaluate a filter on a large list of entities with a fork join pool. The
+ * list is split in halves until the parts are small enough to be filtered
+ * sequentially, the results are merged in the list order. Aggregations are
+ * split the same way, each part computes a partial result and partial
+ * results are combined.
+ */
+public class ParallelEntityFilter {
+
+    /**
+     * Number of entities filtered sequentially by a task.
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Minimum number of entities to use the pool, under this size the
+     * filter is evaluated on the caller thread.
+     */
+    private final int threshold;
+
+    /**
+     * @param parallelism number of threads of the pool.
+     * @param threshold   minimum number of entities to filter in parallel.
+     */
+    public ParallelEntityFilter(final int parallelism, final int threshold) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param entities  entities to filter, must support fast random access.
+     * @param predicate the filter.
+     * @return the entities accepted by the predicate, in the order of the entities list.
+     */
+    public List<Entity> filter(final List<Entity> entities, final Predicate<Entity> predicate) {
+        if (entities.size() < threshold) {
+            return filterSequential(entities, 0, entities.size(), predicate);
+        }
+        // Some chunks per thread to balance the work between threads.
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, entities.size() / (pool.getParallelism() * 4));
+        return pool.invoke(new FilterTask(entities, 0, entities.size(), predicate, chunkSize));
+    }
+
+    /**
+     * @param entities    entities to aggregate, must support fast random access.
+     * @param supplier    gives a new empty partial result.
+     * @param accumulator adds an entity to a partial result.
+     * @param combiner    merges the second partial result in the first one and returns it.
+     * @param <R>         type of the result.
+     * @return the result of the aggregation.
+     */
+    public <R> R aggregate(final List<Entity> entities, final Supplier<R> supplier, final BiConsumer<R, Entity> accumulator, final BinaryOperator<R> combiner) {
+        if (entities.size() < threshold) {
+            return aggregateSequential(entities, 0, entities.size(), supplier, accumulator);
+        }
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, entities.size() / (pool.getParallelism() * 4));
+        return pool.invoke(new AggregateTask<>(entities, 0, entities.size(), supplier, accumulator, combiner, chunkSize));
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Stop the pool threads, running filters are completed.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static List<Entity> filterSequential(final List<Entity> entities, final int from, final int to, final Predicate<Entity> predicate) {
+        List<Entity> result = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            Entity entity = entities.get(i);
+            if (predicate.test(entity)) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    private static <R> R aggregateSequential(final List<Entity> entities, final int from, final int to, final Supplier<R> supplier, final BiConsumer<R, Entity> accumulator) {
+        R result = supplier.get();
+        for (int i = from; i < to; i++) {
+            accumulator.accept(result, entities.get(i));
+        }
+        return result;
+    }
+
+    private static class FilterTask extends RecursiveTask<List<Entity>> {
+
+        private static final long serialVersionUID = 3194612548715387241L;
+
+        private final List<Entity> entities;
+        private final int from;
+        private final int to;
+        private final Predicate<Entity> predicate;
+        private final int chunkSize;
+
+        FilterTask(final List<Entity> entities, final int from, final int to, final Predicate<Entity> predicate, final int chunkSize) {
+            this.entities = entities;
+            this.from = from;
+            this.to = to;
+            this.predicate = predicate;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected List<Entity> compute() {
+            if (to - from <= chunkSize) {
+                return filterSequential(entities, from, to, predicate);
+            }
+            int middle = (from + to) >>> 1;
+            FilterTask left = new FilterTask(entities, from, middle, predicate, chunkSize);
+            FilterTask right = new FilterTask(entities, middle, to, predicate, chunkSize);
+            left.fork();
+            List<Entity> result = right.compute();
+            List<Entity> leftResult = left.join();
+            // Left part first to keep the order.
+            leftResult.addAll(result);
+            return leftResult;
+        }
+    }
+
+    private static class AggregateTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = -6328150947720316584L;
+
+        private final List<Entity> entities;
+        private final int from;
+        private final int to;
+        private final Supplier<R> supplier;
+        private final BiConsumer<R, Entity> accumulator;
+        private final BinaryOperator<R> combiner;
+        private final int chunkSize;
+
+        AggregateTask(final List<Entity> entities, final int from, final int to, final Supplier<R> supplier,
+                      final BiConsumer<R, Entity> accumulator, final BinaryOperator<R> combiner, final int chunkSize) {
+            this.entities = entities;
+            this.from = from;
+            this.to = to;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= chunkSize) {
+                return aggregateSequential(entities, from, to, supplier, accumulator);
+            }
+            int middle = (from + to) >>> 1;
+            AggregateTask<R> left = new AggregateTask<>(entities, from, middle, supplier, accumulator, combiner, chunkSize);
+            AggregateTask<R> right = new AggregateTask<>(entities, middle, to, supplier, accumulator, combiner, chunkSize);
+            left.fork();
+            R result = right.compute();
+            return combiner.apply(left.join(), result);
+        }
+    }
+}
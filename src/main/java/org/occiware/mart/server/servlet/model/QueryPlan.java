@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Access path chosen for a collection query with its estimates, and the
+ * actual counts when the query has been explained (parameter explain=true).
+ */
+public class QueryPlan {
+
+    /**
+     * How the entities to filter are found.
+     */
+    public enum AccessPath {
+        /**
+         * All the entities of the configuration.
+         */
+        FULL_SCAN,
+        /**
+         * Entities of a kind.
+         */
+        KIND,
+        /**
+         * Entities with a mixin (or a mixin tag).
+         */
+        MIXIN,
+        /**
+         * Entities located under a path.
+         */
+        PATH,
+        /**
+         * Entities with an attribute value, read from an attribute index.
+         */
+        ATTRIBUTE_INDEX
+    }
+
+    /**
+     * An access path considered by the planner.
+     */
+    public static class Alternative {
+        private final AccessPath accessPath;
+        private final String accessKey;
+        private final long estimatedCandidates;
+        private final double cost;
+
+        public Alternative(final AccessPath accessPath, final String accessKey, final long estimatedCandidates, final double cost) {
+            this.accessPath = accessPath;
+            this.accessKey = accessKey;
+            this.estimatedCandidates = estimatedCandidates;
+            this.cost = cost;
+        }
+
+        public AccessPath getAccessPath() {
+            return accessPath;
+        }
+
+        public String getAccessKey() {
+            return accessKey;
+        }
+
+        public long getEstimatedCandidates() {
+            return estimatedCandidates;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return accessPath + (accessKey == null ? "" : " " + accessKey) + " candidates=" + estimatedCandidates + " cost=" + String.format("%.1f", cost);
+        }
+    }
+
+    private Alternative chosen;
+    private final List<Alternative> alternatives = new ArrayList<>();
+    private long entityCount;
+    private long estimatedRows;
+    private long actualCandidates = -1;
+    private long actualRows = -1;
+
+    public AccessPath getAccessPath() {
+        return chosen.getAccessPath();
+    }
+
+    public String getAccessKey() {
+        return chosen.getAccessKey();
+    }
+
+    public long getEstimatedCandidates() {
+        return chosen.getEstimatedCandidates();
+    }
+
+    /**
+     * Add an access path, the cheapest one is chosen.
+     *
+     * @param alternative
+     */
+    public void addAlternative(final Alternative alternative) {
+        alternatives.add(alternative);
+        if (chosen == null || alternative.getCost() < chosen.getCost()) {
+            chosen = alternative;
+        }
+    }
+
+    public List<Alternative> getAlternatives() {
+        return alternatives;
+    }
+
+    /**
+     * @return number of entities of the configuration known by statistics.
+     */
+    public long getEntityCount() {
+        return entityCount;
+    }
+
+    public void setEntityCount(long entityCount) {
+        this.entityCount = entityCount;
+    }
+
+    /**
+     * @return estimated number of entities respecting the filter.
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public void setEstimatedRows(long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+    }
+
+    /**
+     * @return number of entities given by the access path, -1 if not executed.
+     */
+    public long getActualCandidates() {
+        return actualCandidates;
+    }
+
+    public void setActualCandidates(long actualCandidates) {
+        this.actualCandidates = actualCandidates;
+    }
+
+    /**
+     * @return number of entities respecting the filter, -1 if not executed.
+     */
+    public long getActualRows() {
+        return actualRows;
+    }
+
+    public void setActualRows(long actualRows) {
+        this.actualRows = actualRows;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("access path: ").append(chosen).append('\n');
+        sb.append("entities: ").append(entityCount).append('\n');
+        sb.append("estimated rows: ").append(estimatedRows).append('\n');
+        sb.append("actual candidates: ").append(actualCandidates).append('\n');
+        sb.append("actual rows: ").append(actualRows).append('\n');
+        for (Alternative alternative : alternatives) {
+            sb.append("considered: ").append(alternative).append('\n');
+        }
+        return sb.toString();
+    }
+}
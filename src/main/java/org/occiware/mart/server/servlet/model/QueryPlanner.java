@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+/**
+ * Cost based choice of the access path of a collection query. The cost of an
+ * access path is the number of entities on which the whole filter is
+ * evaluated, plus a small cost for each entity visited to find them.
+ */
+public class QueryPlanner {
+
+    /**
+     * Cost to visit an entity without evaluating the filter, relative to the
+     * filter evaluation.
+     */
+    private static final double VISIT_COST = 0.1;
+
+    /**
+     * Default selectivity of a LIKE constraint or of an equality on an attribute without statistics.
+     */
+    private static final double DEFAULT_SELECTIVITY = 0.1;
+
+    /**
+     * Choose the access path of a collection query.
+     *
+     * @param statistics
+     * @param filter
+     * @param kindId          category filter if it is a kind, else null.
+     * @param mixinId         category filter if it is a mixin, else null.
+     * @param filterOnPath    path filter, may be null or empty.
+     * @param index           index on the filter attribute, null if none or if the filter is not an equality.
+     * @param indexCandidates number of entities given by the index for the filter value.
+     * @return the plan.
+     */
+    public static QueryPlan plan(final QueryStatistics statistics, final CollectionFilter filter, final String kindId,
+                                 final String mixinId, final String filterOnPath, final AttributeIndex index,
+                                 final int indexCandidates) {
+        QueryPlan plan = new QueryPlan();
+        long total = statistics.getEntityCount();
+        plan.setEntityCount(total);
+        plan.addAlternative(new QueryPlan.Alternative(QueryPlan.AccessPath.FULL_SCAN, null, total, total));
+
+        double selectivity = 1.0;
+        if (kindId != null) {
+            long count = statistics.getKindCount(kindId);
+            plan.addAlternative(new QueryPlan.Alternative(QueryPlan.AccessPath.KIND, kindId, count, total * VISIT_COST + count));
+            selectivity *= ratio(count, total);
+        }
+        if (mixinId != null) {
+            long count = statistics.getMixinCount(mixinId);
+            plan.addAlternative(new QueryPlan.Alternative(QueryPlan.AccessPath.MIXIN, mixinId, count, total * VISIT_COST + count));
+            selectivity *= ratio(count, total);
+        }
+        if (filterOnPath != null && !filterOnPath.isEmpty()) {
+            long count = statistics.getPathCount(filterOnPath);
+            // No index on the locations : each entity location is compared with the path, this is never cheaper than the full scan.
+            plan.addAlternative(new QueryPlan.Alternative(QueryPlan.AccessPath.PATH, filterOnPath, count, total + count));
+            selectivity *= ratio(count, total);
+        }
+
+        String attributeFilter = filter.getAttributeFilter();
+        if (attributeFilter != null && !attributeFilter.isEmpty() && filter.getValue() != null) {
+            if (index != null) {
+                plan.addAlternative(new QueryPlan.Alternative(QueryPlan.AccessPath.ATTRIBUTE_INDEX, index.getAttributeName(), indexCandidates, indexCandidates));
+                selectivity *= ratio(indexCandidates, total);
+            } else if (filter.getOperator() == CollectionFilter.OPERATOR_EQUAL && statistics.getDistinctValues(attributeFilter) > 0) {
+                selectivity /= statistics.getDistinctValues(attributeFilter);
+            } else {
+                selectivity *= DEFAULT_SELECTIVITY;
+            }
+        }
+        plan.setEstimatedRows(Math.round(total * selectivity));
+        return plan;
+    }
+
+    private static double ratio(final long count, final long total) {
+        return total == 0 ? 0 : Math.min(1.0, (double) count / total);
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Mixin;
+import org.occiware.mart.server.servlet.utils.HyperLogLog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Statistics of the entities of an owner used by the query planner : number
+ * of entities per kind and per mixin, number of entities under each path and
+ * distinct values estimate per attribute. They are updated when an entity is created, updated or removed.
+ * Distinct values estimates are never decreased when values change.
+ */
+public class QueryStatistics {
+
+    /**
+     * What is counted for an entity, to remove its contribution on update or delete.
+     */
+    private static class EntityStats {
+        private String kind;
+        private String[] mixins;
+        private String location;
+    }
+
+    private final Map<String, EntityStats> entities = new HashMap<>();
+    private final Map<String, Integer> kindCounts = new HashMap<>();
+    private final Map<String, Integer> mixinCounts = new HashMap<>();
+    /**
+     * Key: each path of the locations without first slash and with ending slash ("compute/", "compute/vms/"), "" for
+     * root. Value : number of entities under this path. Only the paths ending at a '/' are counted.
+     */
+    private final Map<String, Integer> pathCounts = new HashMap<>();
+    /**
+     * Key: attribute name in lower case.
+     */
+    private final Map<String, HyperLogLog> distinctValues = new HashMap<>();
+
+    /**
+     * Update the statistics with the current state of an entity.
+     *
+     * @param entity
+     * @param location the entity relative location (without uuid), may be null.
+     */
+    public synchronized void update(final Entity entity, final String location) {
+        remove(entity.getId());
+        EntityStats stats = new EntityStats();
+        if (entity.getKind() != null) {
+            stats.kind = entity.getKind().getScheme() + entity.getKind().getTerm();
+            increment(kindCounts, stats.kind, 1);
+        }
+        stats.mixins = new String[entity.getMixins().size()];
+        int i = 0;
+        for (Mixin mixin : entity.getMixins()) {
+            stats.mixins[i] = mixin.getScheme() + mixin.getTerm();
+            increment(mixinCounts, stats.mixins[i], 1);
+            i++;
+        }
+        stats.location = normalizePath(location);
+        incrementPath(stats.location, 1);
+        entities.put(entity.getId(), stats);
+
+        for (AttributeState attr : entity.getAttributes()) {
+            if (attr.getValue() == null) {
+                continue;
+            }
+            String attrName = attr.getName().toLowerCase();
+            HyperLogLog hyperLogLog = distinctValues.get(attrName);
+            if (hyperLogLog == null) {
+                hyperLogLog = new HyperLogLog();
+                distinctValues.put(attrName, hyperLogLog);
+            }
+            hyperLogLog.add(attr.getValue());
+        }
+    }
+
+    /**
+     * Remove the contribution of an entity.
+     *
+     * @param entityId
+     */
+    public synchronized void remove(final String entityId) {
+        EntityStats stats = entities.remove(entityId);
+        if (stats == null) {
+            return;
+        }
+        if (stats.kind != null) {
+            increment(kindCounts, stats.kind, -1);
+        }
+        for (String mixin : stats.mixins) {
+            increment(mixinCounts, mixin, -1);
+        }
+        incrementPath(stats.location, -1);
+    }
+
+    public synchronized int getEntityCount() {
+        return entities.size();
+    }
+
+    /**
+     * @param kindId scheme + term.
+     * @return the number of entities of this kind.
+     */
+    public synchronized int getKindCount(final String kindId) {
+        Integer count = kindCounts.get(kindId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param mixinId scheme + term.
+     * @return the number of entities with this mixin.
+     */
+    public synchronized int getMixinCount(final String mixinId) {
+        Integer count = mixinCounts.get(mixinId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param path a path filter, taken as a whole path segment : /compute/vm counts the entities under /compute/vm/,
+     *             not the ones under /compute/vms/.
+     * @return the number of entities under this path.
+     */
+    public synchronized int getPathCount(final String path) {
+        Integer count = pathCounts.get(normalizePath(path));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param attrName
+     * @return the estimated number of distinct values of this attribute, -1 if unknown.
+     */
+    public synchronized long getDistinctValues(final String attrName) {
+        HyperLogLog hyperLogLog = distinctValues.get(attrName.toLowerCase());
+        return hyperLogLog == null ? -1 : hyperLogLog.estimate();
+    }
+
+    private void incrementPath(final String location, final int delta) {
+        increment(pathCounts, "", delta);
+        int end = location.indexOf('/');
+        while (end >= 0) {
+            increment(pathCounts, location.substring(0, end + 1), delta);
+            end = location.indexOf('/', end + 1);
+        }
+    }
+
+    private static void increment(final Map<String, Integer> counts, final String key, final int delta) {
+        Integer count = counts.get(key);
+        int value = (count == null ? 0 : count) + delta;
+        if (value <= 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, value);
+        }
+    }
+
+    /**
+     * @param path
+     * @return the path without spaces and first slash, with an ending slash, "" for the root path.
+     */
+    private static String normalizePath(final String path) {
+        if (path == null) {
+            return "";
+        }
+        String result = path.replaceAll("\\s+", "");
+        if (result.startsWith("/")) {
+            result = result.substring(1);
+        }
+        if (!result.isEmpty() && !result.endsWith("/")) {
+            result = result + '/';
+        }
+        return result;
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limit the number of requests of each client with a token bucket by client and by http method.
+ * A bucket holds up to burst requests and is refilled at rate requests per second, a request
+ * finding it empty is refused (429 Too Many Requests) with the time to wait for a token.
+ * The buckets are lock free, a request only does a compare and set on its bucket.
+ * Beyond the maximum number of clients, the idle clients are forgotten and
+ * the new clients share one bucket by method while all the others are active.
+ */
+public class RateLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+    public static final int DEFAULT_MAX_CLIENTS = 10000;
+
+    /**
+     * Minimum time between two scans of the buckets for the idle clients.
+     */
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Minimum time between two warnings about too many clients.
+     */
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * The other methods share one bucket and one counter by client.
+     */
+    private static final Set<String> HTTP_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE"));
+    private static final String OTHER_METHODS = "OTHER";
+
+    /**
+     * Key: http method (upper case), value: limit of each client for this method.
+     */
+    private static volatile Map<String, Limit> limits = new HashMap<>();
+
+    /**
+     * Limit of the methods not in limits, null : not limited.
+     */
+    private static volatile Limit defaultLimit;
+
+    private static volatile int maxClients = DEFAULT_MAX_CLIENTS;
+
+    /**
+     * Key: client and method, value: bucket.
+     */
+    private static final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Time of the last scan for the idle clients, and of the last warning about too many clients.
+     */
+    private static final AtomicLong lastSweep = new AtomicLong(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+    private static final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_INTERVAL_NANOS);
+
+    /**
+     * Key: http method, value: its counters.
+     */
+    private static final ConcurrentMap<String, MethodCounters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Rate and burst of a bucket.
+     */
+    public static class Limit {
+        private final int rate;
+        private final int burst;
+
+        /**
+         * @param rate  requests per second.
+         * @param burst maximum number of requests at once, after an idle period.
+         */
+        public Limit(final int rate, final int burst) {
+            this.rate = rate;
+            this.burst = Math.max(burst, 1);
+        }
+
+        public int getRate() {
+            return rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+    }
+
+    /**
+     * Requests allowed and refused for an http method.
+     */
+    public static class MethodCounters {
+        private final String method;
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        MethodCounters(final String method) {
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public long getAllowed() {
+            return allowed.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+    }
+
+    /**
+     * Token bucket stored as the time at which it will be full again (generic cell rate algorithm) :
+     * a request adds one interval to this time, and is refused if the time goes beyond burst intervals from now.
+     */
+    private static class Bucket {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong fullTime;
+
+        Bucket(final Limit limit, final long now) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / limit.getRate();
+            this.burstNanos = intervalNanos * limit.getBurst();
+            this.fullTime = new AtomicLong(now);
+        }
+
+        /**
+         * @param now
+         * @return 0 if a token is taken, otherwise the time in nanoseconds before the next token.
+         */
+        long acquire(final long now) {
+            while (true) {
+                long current = fullTime.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long wait = next - now - burstNanos;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (fullTime.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(final long now) {
+            return fullTime.get() <= now;
+        }
+    }
+
+    /**
+     * @param limit         limit of the methods not given in limitsMethod, null : not limited.
+     * @param limitsMethod  key: http method, value: limit of each client for this method.
+     * @param clients       maximum number of clients tracked.
+     */
+    public static synchronized void configure(final Limit limit, final Map<String, Limit> limitsMethod, final int clients) {
+        Map<String, Limit> newLimits = new HashMap<>();
+        for (Map.Entry<String, Limit> entry : limitsMethod.entrySet()) {
+            newLimits.put(entry.getKey().toUpperCase(), entry.getValue());
+        }
+        limits = newLimits;
+        defaultLimit = limit;
+        maxClients = clients;
+        buckets.clear();
+        counters.clear();
+        lastSweep.set(System.nanoTime() - SWEEP_INTERVAL_NANOS);
+        lastWarning.set(System.nanoTime() - WARNING_INTERVAL_NANOS);
+    }
+
+    /**
+     * @return true if the requests of a method at least are limited.
+     */
+    public static boolean isEnabled() {
+        return isEnabled(defaultLimit) || hasEnabledLimit();
+    }
+
+    /**
+     * Take a token in the bucket of the client for this method.
+     *
+     * @param client key of the client, ex: its ip address.
+     * @param method http method.
+     * @return 0 if the request is allowed, otherwise the time in milliseconds to wait before retrying.
+     */
+    public static long acquire(final String client, final String method) {
+        return acquire(client, method, System.nanoTime());
+    }
+
+    static long acquire(final String client, final String method, final long now) {
+        String methodKey = method.toUpperCase();
+        if (!HTTP_METHODS.contains(methodKey)) {
+            methodKey = OTHER_METHODS;
+        }
+        Limit limit = limits.get(methodKey);
+        if (limit == null) {
+            limit = defaultLimit;
+        }
+        if (!isEnabled(limit)) {
+            return 0;
+        }
+        String key = methodKey + ' ' + client;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxClients) {
+                sweep(now);
+                if (buckets.size() >= maxClients) {
+                    // All the clients tracked are active : the new ones share the bucket of the method.
+                    warnTooManyClients(now);
+                    key = methodKey;
+                }
+            }
+            bucket = getBucket(key, limit, now);
+        }
+        MethodCounters methodCounters = getCounters(methodKey);
+        long waitNanos = bucket.acquire(now);
+        if (waitNanos == 0) {
+            methodCounters.allowed.increment();
+            return 0;
+        }
+        methodCounters.rejected.increment();
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(waitNanos), 1);
+    }
+
+    /**
+     * @return the counters of the limited methods.
+     */
+    public static Collection<MethodCounters> getMethodCounters() {
+        return new ArrayList<>(counters.values());
+    }
+
+    /**
+     * @return the number of buckets (client and method) tracked.
+     */
+    public static int getClients() {
+        return buckets.size();
+    }
+
+    private static Bucket getBucket(final String key, final Limit limit, final long now) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Bucket newBucket = new Bucket(limit, now);
+            bucket = buckets.putIfAbsent(key, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Remove the full buckets, their clients have not sent requests for a while and get a new full bucket.
+     * The buckets are scanned by one thread at most once per interval, the active buckets are kept.
+     *
+     * @param now
+     */
+    private static void sweep(final long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static void warnTooManyClients(final long now) {
+        long last = lastWarning.get();
+        if (now - last >= WARNING_INTERVAL_NANOS && lastWarning.compareAndSet(last, now)) {
+            LOGGER.warn("More than " + maxClients + " active clients sending requests, the new clients share the limit of each method");
+        }
+    }
+
+    private static MethodCounters getCounters(final String method) {
+        MethodCounters methodCounters = counters.get(method);
+        if (methodCounters == null) {
+            MethodCounters newCounters = new MethodCounters(method);
+            methodCounters = counters.putIfAbsent(method, newCounters);
+            if (methodCounters == null) {
+                methodCounters = newCounters;
+            }
+        }
+        return methodCounters;
+    }
+
+    private static boolean hasEnabledLimit() {
+        for (Limit limit : limits.values()) {
+            if (isEnabled(limit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEnabled(final Limit limit) {
+        return limit != null && limit.getRate() > 0;
+    }
+}
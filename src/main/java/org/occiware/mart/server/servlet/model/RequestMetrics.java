@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the queries by http method and route type, and
+ * number of queries by status and by media type. Recording a query only adds
+ * to LongAdder counters found in arrays or in a map : no lock and no object
+ * created. The histograms have fixed buckets, from 0.5 ms to 30 s.
+ */
+public class RequestMetrics {
+
+    /**
+     * Route type of a query.
+     */
+    public enum Route {
+        ENTITY, COLLECTION, INTERFACE, ACTION, MIXIN_TAG, OTHER;
+
+        private final String label = name().toLowerCase();
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Recorded http methods, the others are recorded as OTHER.
+     */
+    public static final String[] METHODS = {"GET", "HEAD", "PUT", "POST", "DELETE", "OTHER"};
+
+    /**
+     * Upper bounds of the histogram buckets in microseconds, the last bucket has no upper bound.
+     */
+    private static final long[] BUCKET_BOUNDS = {500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000, 30000000};
+
+    /**
+     * Media types counted, the others are counted as "other".
+     */
+    private static final int MAX_MEDIA_TYPES = 32;
+    private static final String OTHER_MEDIA_TYPE = "other";
+
+    /**
+     * Latency histogram of a method and a route type.
+     */
+    public static class Histogram {
+        private final String method;
+        private final Route route;
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+
+        Histogram(final String method, final Route route) {
+            this.method = method;
+            this.route = route;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(final long micros) {
+            int i = 0;
+            while (i < BUCKET_BOUNDS.length && micros > BUCKET_BOUNDS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            sumMicros.add(micros);
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSumMicros() {
+            return sumMicros.sum();
+        }
+
+        /**
+         * @return the number of queries by bucket, not cumulated, the last one is for the queries over 30 s.
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * @param quantile between 0 and 1.
+         * @return the upper bound in microseconds of the bucket of this quantile, -1 if no query,
+         * the last bound for the queries over it.
+         */
+        public long getQuantileMicros(final double quantile) {
+            long[] counts = getBucketCounts();
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return -1;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long cumulated = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                cumulated += counts[i];
+                if (cumulated >= rank) {
+                    return BUCKET_BOUNDS[i];
+                }
+            }
+            return BUCKET_BOUNDS[BUCKET_BOUNDS.length - 1];
+        }
+    }
+
+    private static final Histogram[][] histograms = new Histogram[METHODS.length][Route.values().length];
+    private static final LongAdder[] statusCounts = new LongAdder[600];
+    private static final ConcurrentMap<String, LongAdder> mediaTypeCounts = new ConcurrentHashMap<>();
+
+    static {
+        for (int m = 0; m < METHODS.length; m++) {
+            for (Route route : Route.values()) {
+                histograms[m][route.ordinal()] = new Histogram(METHODS[m], route);
+            }
+        }
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+        mediaTypeCounts.put(OTHER_MEDIA_TYPE, new LongAdder());
+    }
+
+    /**
+     * Record a query.
+     *
+     * @param method       http method.
+     * @param route        route type of the query, OTHER if null.
+     * @param mediaType    media type of the response, may be null.
+     * @param status       http status of the response.
+     * @param elapsedNanos duration of the query.
+     */
+    public static void record(final String method, final Route route, final String mediaType, final int status, final long elapsedNanos) {
+        histograms[getMethodIndex(method)][route == null ? Route.OTHER.ordinal() : route.ordinal()]
+                .record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+        if (status >= 0 && status < statusCounts.length) {
+            statusCounts[status].increment();
+        }
+        getMediaTypeCounter(mediaType).increment();
+    }
+
+    /**
+     * @return the histograms with at least one query.
+     */
+    public static List<Histogram> getHistograms() {
+        List<Histogram> result = new ArrayList<>();
+        for (Histogram[] methodHistograms : histograms) {
+            for (Histogram histogram : methodHistograms) {
+                if (histogram.getCount() > 0) {
+                    result.add(histogram);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the upper bounds of the histogram buckets in microseconds.
+     */
+    public static long[] getBucketBounds() {
+        return BUCKET_BOUNDS.clone();
+    }
+
+    /**
+     * @param status
+     * @return the number of queries answered with this status.
+     */
+    public static long getStatusCount(final int status) {
+        return status >= 0 && status < statusCounts.length ? statusCounts[status].sum() : 0;
+    }
+
+    /**
+     * @param counts status --> number of queries, only the status given at least once are added.
+     */
+    public static void getStatusCounts(final Map<Integer, Long> counts) {
+        for (int status = 0; status < statusCounts.length; status++) {
+            long count = statusCounts[status].sum();
+            if (count > 0) {
+                counts.put(status, count);
+            }
+        }
+    }
+
+    /**
+     * @param counts media type --> number of queries.
+     */
+    public static void getMediaTypeCounts(final Map<String, Long> counts) {
+        for (Map.Entry<String, LongAdder> entry : mediaTypeCounts.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count > 0) {
+                counts.put(entry.getKey(), count);
+            }
+        }
+    }
+
+    private static int getMethodIndex(final String method) {
+        for (int i = 0; i < METHODS.length - 1; i++) {
+            if (METHODS[i].equals(method)) {
+                return i;
+            }
+        }
+        return METHODS.length - 1;
+    }
+
+    private static LongAdder getMediaTypeCounter(final String mediaType) {
+        if (mediaType == null) {
+            return mediaTypeCounts.get(OTHER_MEDIA_TYPE);
+        }
+        LongAdder counter = mediaTypeCounts.get(mediaType);
+        if (counter == null) {
+            if (mediaTypeCounts.size() >= MAX_MEDIA_TYPES) {
+                return mediaTypeCounts.get(OTHER_MEDIA_TYPE);
+            }
+            // Only the first query of a media type creates its counter.
+            LongAdder previous = mediaTypeCounts.putIfAbsent(mediaType, counter = new LongAdder());
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Kind;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remember when an entity has been retrieved from its connector, to not call
+ * occiRetrieve() again before a time to live configured per kind.
+ * The cache is bounded, the least recently used entries are evicted first.
+ * Local updates, deletes and actions on an entity invalidate its entry, a
+ * retrieve in progress during the invalidation does not write its entry and
+ * the next retrieve of the entity starts once it has ended.
+ * Concurrent retrieves of the same entity are coalesced : the first caller
+ * starts the connector call on a connector thread, all the callers wait for
+ * it and share its result.
+ */
+public class RetrieveCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Time to live of the entities of kinds without specific time to live, 0 : no cache.
+     */
+    public static final long DEFAULT_TTL_MILLIS = 0;
+
+    private static final Object LOCK = new Object();
+
+    /**
+     * Entity id --> expiration time (System.nanoTime()), in access order.
+     */
+    private static LinkedHashMap<String, Long> entries = createEntries(DEFAULT_MAX_SIZE);
+
+    private static volatile long defaultTtlMillis = DEFAULT_TTL_MILLIS;
+
+    /**
+     * Kind term --> time to live in milliseconds.
+     */
+    private static volatile Map<String, Long> kindTtlMillis = new HashMap<>();
+
+    /**
+     * Entity id --> last retrieve started, until its end, guarded by LOCK.
+     */
+    private static final Map<String, Retrieval> inFlight = new HashMap<>();
+
+    /**
+     * Entity id --> copy of the entity taken before the retrieve in progress writes it.
+     */
+    private static final ConcurrentMap<String, Entity> snapshots = new ConcurrentHashMap<>();
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param maxSize    maximum number of entities in cache.
+     * @param defaultTtl time to live in milliseconds of the entities of kinds not in kindTtls, 0 : no cache.
+     * @param kindTtls   kind term --> time to live in milliseconds.
+     */
+    public static void configure(final int maxSize, final long defaultTtl, final Map<String, Long> kindTtls) {
+        synchronized (LOCK) {
+            entries = createEntries(maxSize);
+        }
+        defaultTtlMillis = defaultTtl;
+        kindTtlMillis = new HashMap<>(kindTtls);
+    }
+
+    /**
+     * Retrieve an entity from its connector if it has not been retrieved since the time to live of its kind.
+     *
+     * @param entity
+     * @param refresh true to retrieve the entity whatever its cache entry (Cache-Control: no-cache).
+     * @return true if the entity was retrieved, by this call or by a concurrent one, false if its cache entry was used
+     * or if the caller has been interrupted before the end of the retrieve.
+     */
+    public static boolean retrieve(final Entity entity, final boolean refresh) {
+        final String entityId = entity.getId();
+        long ttl = getTtlMillis(entity);
+        if (!refresh && ttl > 0 && entityId != null) {
+            Long expiration;
+            synchronized (LOCK) {
+                expiration = entries.get(entityId);
+            }
+            if (expiration != null && expiration - System.nanoTime() > 0) {
+                hits.increment();
+                return false;
+            }
+        }
+        if (entityId == null) {
+            misses.increment();
+            ConnectorGuard.occiRetrieve(entity);
+            return true;
+        }
+        final Retrieval retrieval;
+        FutureTask<Void> current;
+        synchronized (LOCK) {
+            Retrieval running = inFlight.get(entityId);
+            if (running != null && !running.invalidated) {
+                retrieval = null;
+                current = running.task;
+            } else {
+                // After an invalidation, a new retrieve starts once the running one has ended : never two at once.
+                retrieval = new Retrieval(entity, ttl, running);
+                inFlight.put(entityId, retrieval);
+                current = retrieval.task;
+            }
+        }
+        if (retrieval != null) {
+            misses.increment();
+            Runnable execution = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        retrieval.task.run();
+                    } finally {
+                        synchronized (LOCK) {
+                            inFlight.remove(entityId, retrieval);
+                        }
+                    }
+                }
+            };
+            try {
+                // On a thread of its own : an interrupted caller stops waiting, the shared retrieve goes on for the others.
+                ConnectorGuard.execute(execution);
+            } catch (RejectedExecutionException ex) {
+                execution.run();
+            }
+        } else {
+            coalesced.increment();
+        }
+        try {
+            current.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException ex) {
+            // The caller stops waiting, the entity is not retrieved yet.
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove the cache entry of an entity, its next retrieve calls its connector.
+     *
+     * @param entityId
+     */
+    public static void invalidate(final String entityId) {
+        if (entityId == null) {
+            return;
+        }
+        synchronized (LOCK) {
+            entries.remove(entityId);
+            // A retrieve in progress may have read the entity before the local change : it must not write its entry
+            // and the next retrieves must not share its result. It stays in flight, they start after it.
+            Retrieval running = inFlight.get(entityId);
+            if (running != null) {
+                running.invalidated = true;
+            }
+        }
+    }
+
+    /**
+     * @param entityId
+     * @return a copy of the entity taken before the retrieve writing it, null if no retrieve calls its connector.
+     */
+    static Entity getSnapshot(final String entityId) {
+        return snapshots.get(entityId);
+    }
+
+    public static void clear() {
+        synchronized (LOCK) {
+            entries.clear();
+            inFlight.clear();
+        }
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of retrieves that waited for a retrieve in progress on the same entity.
+     */
+    public static long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return hits / (hits + misses), 0 if no retrieve yet.
+     */
+    public static double getHitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public static int size() {
+        synchronized (LOCK) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @param entity
+     * @return a hash of the attribute values of the entity.
+     */
+    private static int getAttributesHash(final Entity entity) {
+        int hash = 1;
+        for (AttributeState attribute : entity.getAttributes()) {
+            hash = 31 * hash + Objects.hashCode(attribute.getName());
+            hash = 31 * hash + Objects.hashCode(attribute.getValue());
+        }
+        return hash;
+    }
+
+    private static long getTtlMillis(final Entity entity) {
+        Kind kind = entity.getKind();
+        if (kind != null) {
+            Long ttl = kindTtlMillis.get(kind.getTerm());
+            if (ttl != null) {
+                return ttl;
+            }
+        }
+        return defaultTtlMillis;
+    }
+
+    /**
+     * A retrieve of an entity from its connector, shared by the concurrent callers.
+     */
+    private static class Retrieval implements Callable<Void> {
+        private final Entity entity;
+        private final long ttl;
+        private final FutureTask<Void> task;
+
+        /**
+         * Retrieve of the same entity to wait for before calling the connector, null if none.
+         */
+        private final Retrieval previous;
+
+        /**
+         * True if the entity has changed locally since the start of this retrieve, guarded by LOCK.
+         */
+        private boolean invalidated = false;
+
+        Retrieval(final Entity entity, final long ttl, final Retrieval previous) {
+            this.entity = entity;
+            this.ttl = ttl;
+            this.previous = previous;
+            this.task = new FutureTask<>(this);
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            if (previous != null) {
+                try {
+                    previous.task.get();
+                } catch (ExecutionException ex) {
+                    // Given to the callers of the previous retrieve.
+                }
+            }
+            String entityId = entity.getId();
+            int attributesHash = getAttributesHash(entity);
+            // The callers not waiting for the connector anymore render this copy while it writes the entity.
+            Entity snapshot = EcoreUtil.copy(entity);
+            snapshots.put(entityId, snapshot);
+            try {
+                ConnectorGuard.occiRetrieve(entity);
+            } finally {
+                snapshots.remove(entityId, snapshot);
+            }
+            if (getAttributesHash(entity) != attributesHash) {
+                // The entity has changed on its backend : its eTag, its indexes and the eTags of its collections change.
+                ConfigurationManager.updateVersion(entityId);
+                ConfigurationManager.updateEntityIndexes(entity);
+            }
+            if (ttl > 0) {
+                long expiration = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+                synchronized (LOCK) {
+                    if (!invalidated) {
+                        entries.put(entityId, expiration);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static LinkedHashMap<String, Long> createEntries(final int maxSize) {
+        return new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
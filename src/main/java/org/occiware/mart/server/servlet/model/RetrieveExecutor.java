@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.mart.server.servlet.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retrieve the entities of a collection from their connectors in parallel,
+ * on a bounded pool, with a deadline. An entity not retrieved in time, or
+ * whose retrieve has failed, is stale : it keeps its last known state.
+ */
+public class RetrieveExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetrieveExecutor.class);
+
+    public static final int DEFAULT_THREADS = 32;
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+    private static final long SNAPSHOT_POLL_MILLIS = 1;
+
+    private static volatile ExecutorService pool = createPool(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+
+    /**
+     * Deadline of the retrieves of a request in milliseconds, 0 or less to wait for all.
+     */
+    private static volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * @param threads   number of threads retrieving entities for all requests.
+     * @param queueSize number of retrieves waiting for a thread, the next ones are not executed (stale).
+     * @param timeout   deadline of the retrieves of a request in milliseconds, 0 or less to wait for all.
+     */
+    public static void configure(final int threads, final int queueSize, final long timeout) {
+        configure(createPool(threads, queueSize), timeout);
+    }
+
+    /**
+     * Retrieve the entities on a given executor, ex: virtual threads.
+     *
+     * @param executor executor of the retrieves, not bounded by this class.
+     * @param timeout  deadline of the retrieves of a request in milliseconds, 0 or less to wait for all.
+     */
+    public static synchronized void configure(final ExecutorService executor, final long timeout) {
+        ExecutorService previous = pool;
+        pool = executor;
+        previous.shutdown();
+        timeoutMillis = timeout;
+    }
+
+    public static long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Stop the pool, the retrieves in progress are completed until the timeout.
+     *
+     * @param timeoutMillis
+     * @return the number of retrieves abandoned.
+     */
+    public static int shutdown(final long timeoutMillis) {
+        return Utils.shutdownExecutor(pool, timeoutMillis);
+    }
+
+    /**
+     * Retrieve each entity through the retrieve cache. A single entity is retrieved on the caller thread without deadline.
+     * A retrieve not started at the deadline is cancelled, a retrieve in progress is not interrupted : its entity is
+     * replaced in the list by a copy taken before its connector call, the connector keeps writing the entity itself.
+     *
+     * @param entities entities to retrieve, the entities still written by their retrieve are replaced by a copy.
+     * @param timeout  deadline in milliseconds, 0 or less to wait for all.
+     * @param refresh  true to ignore the retrieve cache.
+     * @return the ids of the stale entities, in the entities order.
+     */
+    public static Set<String> retrieveAll(final List<Entity> entities, final long timeout, final boolean refresh) {
+        Set<String> staleIds = new LinkedHashSet<>();
+        if (entities.size() == 1) {
+            RetrieveCache.retrieve(entities.get(0), refresh);
+            return staleIds;
+        }
+        List<RetrieveTask> tasks = new ArrayList<>(entities.size());
+        List<Future<?>> futures = new ArrayList<>(entities.size());
+        for (final Entity entity : entities) {
+            RetrieveTask task = new RetrieveTask(entity, refresh);
+            tasks.add(task);
+            try {
+                futures.add(pool.submit(task));
+            } catch (RejectedExecutionException ex) {
+                futures.add(null);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        boolean interrupted = false;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            Entity entity = entities.get(i);
+            if (future == null) {
+                staleIds.add(entity.getId());
+                continue;
+            }
+            try {
+                if (interrupted) {
+                    throw new TimeoutException();
+                }
+                if (timeout > 0) {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } else {
+                    future.get();
+                }
+            } catch (TimeoutException ex) {
+                staleIds.add(entity.getId());
+                if (!tasks.get(i).cancel()) {
+                    entities.set(i, getSnapshot(entity, future));
+                }
+            } catch (ExecutionException ex) {
+                LOGGER.warn("Retrieve has failed on entity " + entity.getId() + " : " + ex.getCause());
+                staleIds.add(entity.getId());
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                staleIds.add(entity.getId());
+                if (!tasks.get(i).cancel()) {
+                    entities.set(i, getSnapshot(entity, future));
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!staleIds.isEmpty()) {
+            LOGGER.warn(staleIds.size() + " entities of " + entities.size() + " not retrieved in time or failed, rendered with their last known state");
+        }
+        return staleIds;
+    }
+
+    /**
+     * @param entity entity whose retrieve has started.
+     * @param future retrieve of the entity.
+     * @return a copy of the entity if its connector is writing it, else the entity once its retrieve has ended.
+     */
+    private static Entity getSnapshot(final Entity entity, final Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                Entity snapshot = RetrieveCache.getSnapshot(entity.getId());
+                if (snapshot != null) {
+                    return snapshot;
+                }
+                // The retrieve is before or after its connector call, the copy is published before the call.
+                try {
+                    future.get(SNAPSHOT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    return entity;
+                } catch (TimeoutException ex) {
+                    // Check again for the copy.
+                } catch (ExecutionException ex) {
+                    return entity;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Retrieve of an entity, not executed if cancelled before it starts.
+     */
+    private static class RetrieveTask implements Runnable {
+        private static final int WAITING = 0;
+        private static final int STARTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Entity entity;
+        private final boolean refresh;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        RetrieveTask(final Entity entity, final boolean refresh) {
+            this.entity = entity;
+            this.refresh = refresh;
+        }
+
+        /**
+         * @return true if the retrieve was not started, it will never be.
+         */
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        @Override
+        public void run() {
+            if (state.compareAndSet(WAITING, STARTED)) {
+                RetrieveCache.retrieve(entity, refresh);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createPool(final int threads, final int queueSize) {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mart-retrieve-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        threadPool.allowCoreThreadTimeOut(true);
+        return threadPool;
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Server metrics given on GET /-/metrics/, in json or in the Prometheus text
+ * format, and by JMX (see registerMBean).
+ */
+public class ServerMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerMetrics.class);
+
+    public static final String METRICS_PATH = "-/metrics";
+
+    /**
+     * Name of the metrics MBean.
+     */
+    public static final String MBEAN_NAME = "org.occiware.mart:type=ServerMetrics";
+
+    /**
+     * Content type of the Prometheus text format.
+     */
+    public static final String PROMETHEUS_MEDIA_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * @param path
+     * @return true if the path is the metrics path.
+     */
+    public static boolean isMetricsPath(final String path) {
+        if (path == null) {
+            return false;
+        }
+        String relativePath = path.startsWith("/") ? path.substring(1) : path;
+        if (relativePath.endsWith("/")) {
+            relativePath = relativePath.substring(0, relativePath.length() - 1);
+        }
+        return relativePath.equals(METRICS_PATH);
+    }
+
+    /**
+     * @return metric name --> value, in a stable order.
+     */
+    public static Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = getServerMetrics();
+        // Query metrics, the latencies are given in milliseconds from the histogram buckets.
+        for (RequestMetrics.Histogram histogram : RequestMetrics.getHistograms()) {
+            String prefix = "request_" + histogram.getMethod().toLowerCase() + "_" + histogram.getRoute().getLabel() + "_";
+            metrics.put(prefix + "count", histogram.getCount());
+            metrics.put(prefix + "mean_ms", histogram.getSumMicros() / 1000.0 / histogram.getCount());
+            metrics.put(prefix + "p50_ms", histogram.getQuantileMicros(0.5) / 1000.0);
+            metrics.put(prefix + "p99_ms", histogram.getQuantileMicros(0.99) / 1000.0);
+        }
+        for (Map.Entry<Integer, Long> status : getStatusCounts().entrySet()) {
+            metrics.put("requests_status_" + status.getKey(), status.getValue());
+        }
+        for (Map.Entry<String, Long> mediaType : getMediaTypeCounts().entrySet()) {
+            metrics.put("requests_media_type_" + mediaType.getKey().toLowerCase().replaceAll("[^a-z0-9]", "_"), mediaType.getValue());
+        }
+        return metrics;
+    }
+
+    /**
+     * @return metric name --> value of the caches, connectors and rate limits, in a stable order.
+     */
+    private static Map<String, Number> getServerMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("retrieve_cache_hits", RetrieveCache.getHits());
+        metrics.put("retrieve_cache_misses", RetrieveCache.getMisses());
+        metrics.put("retrieve_coalesced", RetrieveCache.getCoalesced());
+        metrics.put("retrieve_cache_hit_ratio", RetrieveCache.getHitRatio());
+        metrics.put("retrieve_cache_size", RetrieveCache.size());
+        for (ConnectorGuard.ExtensionGuard guard : ConnectorGuard.getExtensionGuards()) {
+            String prefix = "connector_" + guard.getName().toLowerCase().replaceAll("[^a-z0-9]", "_") + "_";
+            // 0: closed, 1: half open, 2: open.
+            metrics.put(prefix + "breaker_state", guard.getState().ordinal());
+            metrics.put(prefix + "in_flight", guard.getInFlight());
+            metrics.put(prefix + "rejected", guard.getRejected());
+            metrics.put(prefix + "timeouts", guard.getTimeouts());
+            metrics.put(prefix + "failures", guard.getFailures());
+        }
+        for (RateLimiter.MethodCounters counters : RateLimiter.getMethodCounters()) {
+            String prefix = "ratelimit_" + counters.getMethod().toLowerCase() + "_";
+            metrics.put(prefix + "allowed", counters.getAllowed());
+            metrics.put(prefix + "rejected", counters.getRejected());
+        }
+        if (RateLimiter.isEnabled()) {
+            metrics.put("ratelimit_clients", RateLimiter.getClients());
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text format : one "name value" per line for the
+     * server metrics, then the query latency histograms (in seconds) and the query counters.
+     */
+    public static String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Number> metric : getServerMetrics().entrySet()) {
+            sb.append(metric.getKey()).append(' ').append(metric.getValue()).append('\n');
+        }
+        List<RequestMetrics.Histogram> histograms = RequestMetrics.getHistograms();
+        if (!histograms.isEmpty()) {
+            long[] bounds = RequestMetrics.getBucketBounds();
+            sb.append("# TYPE request_duration_seconds histogram\n");
+            for (RequestMetrics.Histogram histogram : histograms) {
+                String labels = "method=\"" + histogram.getMethod() + "\",route=\"" + histogram.getRoute().getLabel() + "\"";
+                long[] counts = histogram.getBucketCounts();
+                long cumulated = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    cumulated += counts[i];
+                    String le = i < bounds.length ? BigDecimal.valueOf(bounds[i]).movePointLeft(6).stripTrailingZeros().toPlainString() : "+Inf";
+                    sb.append("request_duration_seconds_bucket{").append(labels).append(",le=\"").append(le).append("\"} ").append(cumulated).append('\n');
+                }
+                sb.append("request_duration_seconds_sum{").append(labels).append("} ").append(histogram.getSumMicros() / 1000000.0).append('\n');
+                sb.append("request_duration_seconds_count{").append(labels).append("} ").append(cumulated).append('\n');
+            }
+        }
+        Map<Integer, Long> statusCounts = getStatusCounts();
+        if (!statusCounts.isEmpty()) {
+            sb.append("# TYPE requests_by_status_total counter\n");
+            for (Map.Entry<Integer, Long> status : statusCounts.entrySet()) {
+                sb.append("requests_by_status_total{status=\"").append(status.getKey()).append("\"} ").append(status.getValue()).append('\n');
+            }
+        }
+        Map<String, Long> mediaTypeCounts = getMediaTypeCounts();
+        if (!mediaTypeCounts.isEmpty()) {
+            sb.append("# TYPE requests_by_media_type_total counter\n");
+            for (Map.Entry<String, Long> mediaType : mediaTypeCounts.entrySet()) {
+                sb.append("requests_by_media_type_total{media_type=\"").append(escapeLabelValue(mediaType.getKey())).append("\"} ")
+                        .append(mediaType.getValue()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Register the metrics MBean on the platform MBean server, its attributes are the metrics given by getMetrics.
+     *
+     * @return true if registered, false if already registered or if the registration has failed.
+     */
+    public static boolean registerMBean() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                return false;
+            }
+            mBeanServer.registerMBean(new MetricsMBean(), name);
+            return true;
+        } catch (JMException ex) {
+            LOGGER.warn("Cannot register the metrics MBean : " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private static Map<Integer, Long> getStatusCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        RequestMetrics.getStatusCounts(counts);
+        return counts;
+    }
+
+    private static Map<String, Long> getMediaTypeCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        RequestMetrics.getMediaTypeCounts(counts);
+        return counts;
+    }
+
+    private static String escapeLabelValue(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Read only MBean of the metrics, the attributes are read on each call as the metrics list changes.
+     */
+    private static class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+            Number value = getMetrics().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException("No metric " + attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("The metrics are read only");
+        }
+
+        @Override
+        public AttributeList getAttributes(final String[] attributes) {
+            Map<String, Number> metrics = getMetrics();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Number value = metrics.get(attribute);
+                if (value != null) {
+                    list.add(new Attribute(attribute, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(final AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+            throw new UnsupportedOperationException("No operation on the metrics");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Number> metrics = getMetrics();
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[metrics.size()];
+            int i = 0;
+            for (Map.Entry<String, Number> metric : metrics.entrySet()) {
+                attributes[i++] = new MBeanAttributeInfo(metric.getKey(), metric.getValue().getClass().getName(),
+                        metric.getKey(), true, false, false);
+            }
+            return new MBeanInfo(ServerMetrics.class.getName(), "MART server metrics", attributes, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model.exceptions;
+
+/**
+ * Thrown when an action has failed on the connector side.
+ */
+public class ActionExecutionException extends Exception {
+
+    private static final long serialVersionUID = 4725936508716321754L;
+
+    public ActionExecutionException(String message) {
+        super(message);
+    }
+
+    public ActionExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -18,6 +18,9 @@
  */
 package org.occiware.mart.server.servlet.utils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This object represents a filter for collections listings. This is used with
  * ConfigurationManager Object.
@@ -55,6 +58,19 @@ public class CollectionFilter {
     private int numberOfItemsPerPage = Constants.DEFAULT_NUMBER_ITEMS_PER_PAGE;
     private int currentPage = Constants.DEFAULT_CURRENT_PAGE;
 
+    /**
+     * Sort keys in order of precedence, if empty the collection is ordered by
+     * entity id.
+     */
+    private List<SortKey> sortKeys = new ArrayList<>();
+
+    /**
+     * Cursor pagination : creation sequence after which the entities are
+     * given, in creation order. -1 if the collection is paginated by page
+     * and number.
+     */
+    private long cursor = -1;
+
     /**
      * Build a collectionFilter object with default values, operation : Equal
      * attributeFilter : empty (all attributes). value : null => all values.
@@ -143,4 +159,103 @@ public class CollectionFilter {
     public void setCurrentPage(int currentPage) {
         this.currentPage = currentPage;
     }
+
+    /**
+     * The current page is the index (starting at 1) of the first entity to give.
+     *
+     * @return the number of entities before the current page.
+     */
+    public int getOffset() {
+        return currentPage > 1 ? currentPage - 1 : 0;
+    }
+
+    /**
+     * @return the number of entities up to the end of the current page, -1 if there is no limit.
+     */
+    public int getLimit() {
+        if (numberOfItemsPerPage < 0) {
+            return -1;
+        }
+        return (int) Math.min((long) getOffset() + numberOfItemsPerPage, Integer.MAX_VALUE);
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return true if the collection is paginated with a continuation token.
+     */
+    public boolean isCursorPagination() {
+        return cursor >= 0;
+    }
+
+    public List<SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    public void setSortKeys(List<SortKey> sortKeys) {
+        if (sortKeys == null) {
+            sortKeys = new ArrayList<>();
+        }
+        this.sortKeys = sortKeys;
+    }
+
+    /**
+     * Parse a sort parameter value like : occi.core.title,-occi.compute.cores
+     * A leading '-' means descending order on this attribute.
+     *
+     * @param sortParameter the sort request parameter value, may be null.
+     * @return a list of sort keys, never null.
+     */
+    public static List<SortKey> parseSortKeys(final String sortParameter) {
+        List<SortKey> keys = new ArrayList<>();
+        if (sortParameter == null || sortParameter.trim().isEmpty()) {
+            return keys;
+        }
+        for (String item : sortParameter.split(",")) {
+            String attributeName = item.trim();
+            boolean descending = false;
+            if (attributeName.startsWith("-")) {
+                descending = true;
+                attributeName = attributeName.substring(1).trim();
+            } else if (attributeName.startsWith("+")) {
+                attributeName = attributeName.substring(1).trim();
+            }
+            if (!attributeName.isEmpty()) {
+                keys.add(new SortKey(attributeName, descending));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * One sort criterion : an attribute name and a direction.
+     */
+    public static class SortKey {
+        private final String attributeName;
+        private final boolean descending;
+
+        public SortKey(final String attributeName, final boolean descending) {
+            this.attributeName = attributeName;
+            this.descending = descending;
+        }
+
+        public String getAttributeName() {
+            return attributeName;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public String toString() {
+            return (descending ? "-" : "") + attributeName;
+        }
+    }
 }
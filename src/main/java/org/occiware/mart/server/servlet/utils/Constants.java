@@ -33,6 +33,30 @@ public class Constants {
     public static final int DEFAULT_OPERATOR_VAL = 0; // operator equal by default if 1 : like mode.
     public static final String OPERATOR_KEY = "operator";
     public static final String CATEGORY_KEY = "category";
+    public static final String SORT_KEY = "sort";
+    public static final String FIELDS_KEY = "fields";
+    public static final String COUNT_KEY = "count";
+    public static final String EXPLAIN_KEY = "explain";
+    public static final String NEXT_KEY = "next";
+    public static final String AGGREGATE_KEY = "aggregate";
+    public static final String GROUP_KEY = "group";
+    public static final String ASYNC_KEY = "async";
+    public static final String PARALLELISM_KEY = "parallelism";
+    // Count and pagination response headers.
+    public static final String HEADER_TOTAL_COUNT = "X-Total-Count";
+    public static final String HEADER_PAGE = "X-Page";
+    public static final String HEADER_NUMBER = "X-Number";
+    public static final String HEADER_PAGE_COUNT = "X-Page-Count";
+    public static final String HEADER_NEXT = "X-Next";
+    // Entities of a collection not retrieved from their connector in time.
+    public static final String HEADER_STALE_COUNT = "X-Stale-Count";
+    public static final String HEADER_STALE_ENTITIES = "X-Stale-Entities";
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    public static final String CACHE_CONTROL_NO_CACHE = "no-cache";
+    // Conditional requests on the entity versions.
+    public static final String HEADER_IF_MATCH = "If-Match";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
 
     public static final String PATH_SEPARATOR = "/";
     public static final String CRLF = "\r\n";
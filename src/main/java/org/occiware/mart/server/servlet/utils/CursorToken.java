@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of cursor pagination, it references the
+ * creation sequence of the last entity of a page.
+ */
+public class CursorToken {
+
+    private static final String PREFIX = "seq:";
+
+    /**
+     * @param sequence creation sequence of the last entity returned.
+     * @return the token to give to the next request.
+     */
+    public static String encode(final long sequence) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + sequence).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param token a token given by encode, an empty token starts from the first entity.
+     * @return the creation sequence to resume after.
+     * @throws IllegalArgumentException if the token is not valid.
+     */
+    public static long decode(final String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return 0;
+        }
+        String value = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+        if (!value.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("Invalid continuation token : " + token);
+        }
+        try {
+            long sequence = Long.parseLong(value.substring(PREFIX.length()));
+            if (sequence < 0) {
+                throw new IllegalArgumentException("Invalid continuation token : " + token);
+            }
+            return sequence;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid continuation token : " + token);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.utils;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sparse fieldset of a GET request (parameter fields), gives the attributes
+ * and the sections (actions, mixins, links) of the entities to render. Kind,
+ * id and location are always rendered.
+ * ex: fields=occi.core.title,occi.compute.state,mixins
+ */
+public class FieldsFilter {
+
+    /**
+     * All attributes.
+     */
+    public static final String SECTION_ATTRIBUTES = "attributes";
+    public static final String SECTION_ACTIONS = "actions";
+    public static final String SECTION_MIXINS = "mixins";
+    public static final String SECTION_LINKS = "links";
+
+    /**
+     * Render everything, used when there is no fields parameter.
+     */
+    public static final FieldsFilter ALL_FIELDS = new FieldsFilter(null);
+
+    /**
+     * Requested fields in lower case, null for all fields.
+     */
+    private final Set<String> fields;
+
+    private FieldsFilter(final Set<String> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @param fieldsParameter the fields request parameter value, may be null.
+     * @return a fields filter, never null.
+     */
+    public static FieldsFilter parse(final String fieldsParameter) {
+        if (fieldsParameter == null || fieldsParameter.trim().isEmpty()) {
+            return ALL_FIELDS;
+        }
+        Set<String> fields = new HashSet<>();
+        for (String field : fieldsParameter.split(",")) {
+            field = field.trim();
+            if (!field.isEmpty()) {
+                fields.add(field.toLowerCase());
+            }
+        }
+        return new FieldsFilter(fields);
+    }
+
+    public boolean isAllFields() {
+        return fields == null;
+    }
+
+    /**
+     * @param section one of the SECTION_ constants.
+     * @return true if this section must be rendered.
+     */
+    public boolean hasSection(final String section) {
+        return fields == null || fields.contains(section);
+    }
+
+    /**
+     * @param attributeName
+     * @return true if this attribute must be rendered.
+     */
+    public boolean hasAttribute(final String attributeName) {
+        return fields == null || fields.contains(SECTION_ATTRIBUTES) || fields.contains(attributeName.toLowerCase());
+    }
+}
@@ -98,6 +98,13 @@ public class LoggerConfig {
     }
 
 
+    /**
+     * Flush and close all the appenders, nothing is logged after this call.
+     */
+    public static void shutdown() {
+        LogManager.shutdown();
+    }
+
     /**
      * Add appenders to rolling files with a maximum size of 2 Mo.
      *
@@ -25,14 +25,18 @@ import org.occiware.mart.server.servlet.model.exceptions.ConfigurationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 import java.io.*;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class for rest queries.
@@ -157,6 +161,97 @@ public class Utils {
         return vals;
     }
 
+    /**
+     * Check if the client asks to not use cached values (Cache-Control: no-cache).
+     *
+     * @param headers
+     * @return true if a Cache-Control header contains the no-cache directive.
+     */
+    public static boolean isNoCacheRequested(HttpHeaders headers) {
+        for (String val : getFromValueFromHeaders(headers, Constants.HEADER_CACHE_CONTROL)) {
+            for (String directive : val.split(",")) {
+                if (directive.trim().equalsIgnoreCase(Constants.CACHE_CONTROL_NO_CACHE)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check an entity tag against an If-Match or If-None-Match header.
+     *
+     * @param headers
+     * @param key            Constants.HEADER_IF_MATCH or Constants.HEADER_IF_NONE_MATCH.
+     * @param eTag           current entity tag of the entity.
+     * @param weakComparison true to compare the weak tags as the strong ones (If-None-Match), false for If-Match.
+     * @return true if the header is * or contains the entity tag.
+     */
+    public static boolean isEtagMatching(HttpHeaders headers, String key, EntityTag eTag, boolean weakComparison) {
+        for (String val : getFromValueFromHeaders(headers, key)) {
+            for (String tag : val.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*")) {
+                    return true;
+                }
+                boolean weak = tag.startsWith("W/");
+                if (weak && !weakComparison) {
+                    continue;
+                }
+                if (weak) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("\"" + eTag.getValue() + "\"")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param headers
+     * @param key     Constants.HEADER_IF_MATCH or Constants.HEADER_IF_NONE_MATCH.
+     * @return true if the header is set.
+     */
+    public static boolean hasHeader(HttpHeaders headers, String key) {
+        return !getFromValueFromHeaders(headers, key).isEmpty();
+    }
+
+    /**
+     * @param headers
+     * @param key     Constants.HEADER_IF_MATCH or Constants.HEADER_IF_NONE_MATCH.
+     * @return true if the header is *, any version of the entity.
+     */
+    public static boolean isAnyEtag(HttpHeaders headers, String key) {
+        for (String val : getFromValueFromHeaders(headers, key)) {
+            if (val.trim().equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check a last modified date against an If-Modified-Since header, dates are compared to the second.
+     *
+     * @param headers
+     * @param lastModified last modified date in milliseconds.
+     * @return false if the header is set and the date is not after the header date, true elsewhere.
+     */
+    public static boolean isModifiedSince(HttpHeaders headers, long lastModified) {
+        for (String val : getFromValueFromHeaders(headers, Constants.HEADER_IF_MODIFIED_SINCE)) {
+            try {
+                long since = ZonedDateTime.parse(val.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return lastModified / 1000 > since / 1000;
+            } catch (DateTimeParseException ex) {
+                // An invalid date is ignored.
+                LOGGER.warn("Invalid date in header " + Constants.HEADER_IF_MODIFIED_SINCE + " : " + val);
+            }
+        }
+        return true;
+    }
+
     public static String createUUID() {
         return UUID.randomUUID().toString();
 
@@ -234,105 +329,6 @@ public class Utils {
         }
     }
 
-    /**
-     * Serialize an object to make an MD5 hash after call getMd5Digest Method.
-     *
-     * @param obj
-     * @return
-     * @throws IOException
-     */
-    private static byte[] serialize(Object obj) throws IOException {
-        byte[] byteArray = null;
-        ByteArrayOutputStream baos;
-        ObjectOutputStream out = null;
-        try {
-            // These objects are closed in the finally.
-            baos = new ByteArrayOutputStream();
-            out = new ObjectOutputStream(baos);
-            out.writeObject(obj);
-            byteArray = baos.toByteArray();
-        } finally {
-            if (out != null) {
-                out.close();
-            }
-        }
-        return byteArray;
-    }
-
-    /**
-     * Create a MD5 hash.
-     *
-     * @param bytes (array of bytes).
-     * @return
-     */
-    private static String getMd5Digest(byte[] bytes) {
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            return "1";
-            // throw new RuntimeException("MD5 cryptographic algorithm is not
-            // available.", e);
-        }
-        byte[] messageDigest = md.digest(bytes);
-        BigInteger number = new BigInteger(1, messageDigest);
-        // prepend a zero to get a "proper" MD5 hash value
-        return "0" + number.toString(16);
-    }
-
-    /**
-     * Create an eTag (Serial number, serialize an object) for dbus interaction.
-     *
-     * @param obj
-     * @return an eTag number.
-     */
-    public static Long createEtagNumber(Object obj) {
-        String eTag;
-        try {
-            eTag = getMd5Digest(serialize(obj));
-        } catch (IOException ioe) {
-            LOGGER.warn("IOException thrown : {0}", ioe.getMessage());
-            eTag = "1";
-        }
-
-        StringBuilder sb = new StringBuilder();
-        for (char c : eTag.toCharArray()) {
-            sb.append((int) c);
-        }
-        return new Long(sb.toString());
-    }
-
-    /**
-     * Serialize a string (entity id for example with an owner)
-     *
-     * @param id
-     * @param owner
-     * @param version (version number, will increment with each update on this
-     *                object).
-     * @return
-     */
-    public static Long createEtagNumber(final String id, final String owner, final int version) {
-        String eTag;
-        if (id == null) {
-            eTag = "1";
-        } else {
-            try {
-                eTag = getMd5Digest(serialize(id + owner + version));
-            } catch (IOException ioe) {
-                LOGGER.warn("IOException thrown : {0}", ioe.getMessage());
-                eTag = "1";
-            }
-        }
-        StringBuilder sb = new StringBuilder();
-
-        for (char c : eTag.toCharArray()) {
-            sb.append((int) c);
-        }
-        String result = sb.toString().substring(0, 7);
-
-        return new Long(result);
-    }
-
     /**
      * Check if an UUID is provided on a String or attribute occi.core.id.
      *
@@ -903,4 +899,33 @@ public class Utils {
 
         return pathTmp;
     }
+
+    /**
+     * Stop an executor : no new task is accepted, the running and queued tasks
+     * are completed until the timeout, then the remaining ones are interrupted.
+     *
+     * @param executor      may be null.
+     * @param timeoutMillis time given to the tasks to complete, 0 or less : no wait.
+     * @return the number of tasks abandoned, still running or never started at the timeout.
+     */
+    public static int shutdownExecutor(final ExecutorService executor, final long timeoutMillis) {
+        if (executor == null) {
+            return 0;
+        }
+        executor.shutdown();
+        try {
+            if (timeoutMillis > 0 && executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (executor.isTerminated()) {
+            return 0;
+        }
+        int running = executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getActiveCount() : 0;
+        int abandoned = executor.shutdownNow().size() + running;
+        // The running tasks of other executors (ex: virtual threads) are not counted.
+        return Math.max(abandoned, 1);
+    }
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server;
+
+import org.eclipse.jetty.client.HttpClient;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the time to first served request (GET /-/ , the query interface) :
+ * MartServer is started in a child process with the extensions loaded sequentially,
+ * then in parallel (server.startup.parallel), then in parallel with the extension model
+ * cache (server.model.cache, filled by a first run not measured), the startup breakdown
+ * printed by the server is given with each run.
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.StartupBenchmark -Dexec.classpathScope=test
+ */
+public class StartupBenchmark {
+
+    private static final int PORT = 9097;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        HttpClient httpClient = new HttpClient();
+        httpClient.start();
+        System.out.println("Java " + System.getProperty("java.version") + ", processors: " + Runtime.getRuntime().availableProcessors()
+                + ", runs: " + RUNS);
+        try {
+            File cacheDirectory = Files.createTempDirectory("mart-benchmark-cache").toFile();
+            String[] configurations = {
+                    "server.startup.parallel=false\nserver.model.cache=false\n",
+                    "server.startup.parallel=true\nserver.model.cache=false\n",
+                    "server.startup.parallel=true\nserver.model.cache=true\nserver.model.cache.directory=" + cacheDirectory.getAbsolutePath() + "\n"};
+            for (String configuration : configurations) {
+                // Not measured, fills the model cache.
+                run(httpClient, configuration);
+                long[] times = new long[RUNS];
+                for (int i = 0; i < RUNS; i++) {
+                    times[i] = run(httpClient, configuration);
+                }
+                Arrays.sort(times);
+                System.out.println(configuration.replace("\n", " ") + ": first request served after (median) " + times[RUNS / 2] + " ms");
+            }
+            for (File file : cacheDirectory.listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(cacheDirectory.toPath());
+        } finally {
+            httpClient.stop();
+        }
+    }
+
+    /**
+     * @param httpClient
+     * @param configuration server configuration added to the port and log directory.
+     * @return the time in milliseconds between the process start and the first served request.
+     */
+    private static long run(final HttpClient httpClient, final String configuration) throws Exception {
+        File logDirectory = new File(System.getProperty("java.io.tmpdir"), "mart-benchmark-logs");
+        logDirectory.mkdirs();
+        File configFile = File.createTempFile("mart-benchmark", ".config");
+        try (Writer writer = new FileWriter(configFile)) {
+            writer.write("server.port=" + PORT + "\n");
+            writer.write("server.log.directory=" + logDirectory.getAbsolutePath() + File.separator + "\n");
+            writer.write(configuration);
+        }
+        File output = File.createTempFile("mart-benchmark-startup", ".log");
+        long start = System.nanoTime();
+        Process server = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), MartServer.class.getName(), configFile.getAbsolutePath())
+                .redirectErrorStream(true)
+                .redirectOutput(output)
+                .start();
+        try {
+            long elapsed = -1;
+            for (int i = 0; i < 60000 && elapsed < 0; i++) {
+                try {
+                    if (httpClient.newRequest("http://localhost:" + PORT + "/-/").header("accept", "application/json")
+                            .timeout(30, TimeUnit.SECONDS).send().getStatus() == 200) {
+                        elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    }
+                } catch (Exception ex) {
+                    // Not started yet.
+                    Thread.sleep(5);
+                }
+            }
+            if (elapsed < 0) {
+                throw new IllegalStateException("Server not started, see " + output);
+            }
+            for (String line : Files.readAllLines(output.toPath(), StandardCharsets.UTF_8)) {
+                if (line.startsWith("Startup :")) {
+                    System.out.println(line + ", first request " + elapsed + " ms after the process start");
+                }
+            }
+            return elapsed;
+        } finally {
+            server.destroy();
+            server.waitFor();
+            Files.deleteIfExists(configFile.toPath());
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+import org.occiware.mart.server.servlet.model.ConfigurationManager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of 10 000 concurrent entity GETs on a connector with 1 s of latency,
+ * server.threads=platform then server.threads=virtual (Java 21+, else the server falls back to platform threads).
+ * The server runs in a child process (MartServer with a generated configuration file),
+ * the client and the server need a file descriptor per connection.
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.VirtualThreadsBenchmark -Dexec.classpathScope=test
+ */
+public class VirtualThreadsBenchmark {
+
+    private static final int PORT = 9092;
+    private static final int CONCURRENCY = 10000;
+    private static final int ENTITIES = 1000;
+    private static final long LATENCY_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("server")) {
+            startServer(args[1]);
+            return;
+        }
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : CONCURRENCY;
+        System.out.println("Java " + System.getProperty("java.version") + ", concurrent requests: " + concurrency
+                + ", connector latency: " + LATENCY_MILLIS + " ms");
+        for (String mode : new String[]{"platform", "virtual"}) {
+            Process server = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), VirtualThreadsBenchmark.class.getName(), "server", mode)
+                    .redirectErrorStream(true)
+                    .redirectOutput(File.createTempFile("mart-benchmark-" + mode, ".log"))
+                    .start();
+            HttpClient httpClient = new HttpClient();
+            httpClient.setMaxConnectionsPerDestination(concurrency);
+            httpClient.setMaxRequestsQueuedPerDestination(concurrency);
+            httpClient.setIdleTimeout(120000);
+            httpClient.setConnectTimeout(120000);
+            httpClient.start();
+            try {
+                waitServer(httpClient);
+                run(mode, httpClient, concurrency);
+            } finally {
+                httpClient.stop();
+                server.destroy();
+                server.waitFor();
+            }
+        }
+    }
+
+    /**
+     * Child process : latency injecting entities then the server.
+     *
+     * @param mode server.threads value.
+     * @throws IOException
+     */
+    private static void startServer(final String mode) throws IOException {
+        Configuration configuration = ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        for (int i = 0; i < ENTITIES; i++) {
+            ResourceImpl resource = new ResourceImpl() {
+                @Override
+                public void occiRetrieve() {
+                    // Latency of a remote connector.
+                    try {
+                        Thread.sleep(LATENCY_MILLIS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            resource.setId("latency-" + i);
+            resource.setKind(ConfigurationManager.findKindFromExtension(ConfigurationManager.DEFAULT_OWNER,
+                    "http://schemas.ogf.org/occi/infrastructure#compute"));
+            configuration.getResources().add(resource);
+            ConfigurationManager.getLocation(resource);
+        }
+        File logDirectory = new File(System.getProperty("java.io.tmpdir"), "mart-benchmark-logs");
+        logDirectory.mkdirs();
+        File configFile = File.createTempFile("mart-benchmark", ".config");
+        try (Writer writer = new FileWriter(configFile)) {
+            writer.write("server.port=" + PORT + "\n");
+            writer.write("server.log.directory=" + logDirectory.getAbsolutePath() + File.separator + "\n");
+            writer.write("server.threads=" + mode + "\n");
+        }
+        MartServer.main(new String[]{configFile.getAbsolutePath()});
+    }
+
+    private static void waitServer(final HttpClient httpClient) throws InterruptedException {
+        for (int i = 0; i < 600; i++) {
+            try {
+                if (httpClient.GET("http://localhost:" + PORT + "/-/metrics/").getStatus() == 200) {
+                    return;
+                }
+            } catch (Exception ex) {
+                // Not started yet.
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Server not started");
+    }
+
+    private static void run(final String mode, final HttpClient httpClient, final int concurrency) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        final AtomicInteger errors = new AtomicInteger();
+        final long[] latencies = new long[concurrency];
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            final int index = i;
+            final long requestStart = System.nanoTime();
+            httpClient.newRequest("http://localhost:" + PORT + "/latency-" + (i % ENTITIES) + "/")
+                    .header("accept", "application/json")
+                    .timeout(300, TimeUnit.SECONDS)
+                    .send(new Response.CompleteListener() {
+                        @Override
+                        public void onComplete(Result result) {
+                            latencies[index] = System.nanoTime() - requestStart;
+                            if (result.isFailed() || result.getResponse().getStatus() != 200) {
+                                errors.incrementAndGet();
+                            }
+                            done.countDown();
+                        }
+                    });
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencies);
+        System.out.println(String.format("server.threads=%-8s errors: %d, %.1f s, %.0f requests/s, latency p50: %.0f ms, p99: %.0f ms",
+                mode, errors.get(), seconds, concurrency / seconds, latencies[concurrency / 2] / 1e6,
+                latencies[concurrency * 99 / 100] / 1e6));
+    }
+}
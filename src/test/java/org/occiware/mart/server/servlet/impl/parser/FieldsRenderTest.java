@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.impl.parser;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.mart.server.servlet.facade.AbstractRequestParser;
+import org.occiware.mart.server.servlet.impl.parser.json.JsonOcciParser;
+import org.occiware.mart.server.servlet.impl.parser.text.TextOcciParser;
+import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.utils.Constants;
+import org.occiware.mart.server.servlet.utils.FieldsFilter;
+
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rendering of the entities restricted to the fields of a query.
+ */
+public class FieldsRenderTest {
+
+    private static final String COMPUTE = "http://schemas.ogf.org/occi/infrastructure#compute";
+    private static final String ENTITY_ID = "0f3c2a6e-3c55-4ad1-9b1e-6f1e0c9d7a01";
+
+    @BeforeClass
+    public static void createEntity() throws Exception {
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("occi.compute.hostname", "fields-host");
+        attributes.put("occi.compute.architecture", "x64");
+        attributes.put("occi.compute.cores", "4");
+        ConfigurationManager.addResourceToConfiguration(ENTITY_ID, COMPUTE, new ArrayList<String>(), attributes,
+                ConfigurationManager.DEFAULT_OWNER, "/fields/");
+    }
+
+    @Test
+    public void parseTest() {
+        assertTrue(FieldsFilter.parse(null).isAllFields());
+        assertTrue(FieldsFilter.parse(" ").isAllFields());
+        FieldsFilter filter = FieldsFilter.parse("OCCI.Compute.Hostname, mixins,,unknown.field");
+        assertFalse(filter.isAllFields());
+        assertTrue(filter.hasAttribute("occi.compute.hostname"));
+        assertFalse(filter.hasAttribute("occi.compute.cores"));
+        assertTrue(filter.hasSection(FieldsFilter.SECTION_MIXINS));
+        assertFalse(filter.hasSection(FieldsFilter.SECTION_ACTIONS));
+        assertTrue(FieldsFilter.parse("attributes").hasAttribute("occi.compute.cores"));
+    }
+
+    @Test
+    public void jsonFieldsTest() throws Exception {
+        String json = render(new JsonOcciParser(), "occi.compute.hostname,unknown.field");
+        assertTrue(json.contains("fields-host"));
+        assertTrue(json.contains(COMPUTE));
+        assertTrue(json.contains(ENTITY_ID));
+        assertFalse(json.contains("occi.compute.architecture"));
+        assertFalse(json.contains("occi.compute.cores"));
+        assertFalse(json.contains("unknown.field"));
+        assertFalse(json.contains("\"actions\""));
+
+        // Only unknown fields : the entity is rendered without attributes.
+        json = render(new JsonOcciParser(), "unknown.field");
+        assertTrue(json.contains(ENTITY_ID));
+        assertFalse(json.contains("fields-host"));
+
+        // Without fields parameter everything is rendered.
+        json = render(new JsonOcciParser(), null);
+        assertTrue(json.contains("occi.compute.architecture"));
+        assertTrue(json.contains("\"actions\""));
+    }
+
+    @Test
+    public void textOcciFieldsTest() throws Exception {
+        TextOcciParser parser = new TextOcciParser();
+        Response response = renderResponse(parser, "occi.compute.hostname,unknown.field");
+        String attributes = response.getHeaderString(Constants.X_OCCI_ATTRIBUTE);
+        assertTrue(attributes.contains("occi.compute.hostname=\"fields-host\""));
+        assertFalse(attributes.contains("occi.compute.architecture"));
+        assertFalse(attributes.contains("occi.compute.cores"));
+        assertFalse(attributes.contains("unknown.field"));
+        // Only the entity location link, no action links.
+        assertEquals(1, response.getLinks().size());
+
+        response = renderResponse(new TextOcciParser(), "unknown.field,actions");
+        assertFalse(response.getHeaderString(Constants.X_OCCI_ATTRIBUTE).contains("fields-host"));
+        assertTrue(response.getHeaderString(Constants.CATEGORY).contains("compute"));
+        assertTrue(response.getLinks().size() > 1);
+
+        response = renderResponse(new TextOcciParser(), null);
+        attributes = response.getHeaderString(Constants.X_OCCI_ATTRIBUTE);
+        assertTrue(attributes.contains("occi.compute.architecture"));
+        assertTrue(attributes.contains("occi.compute.cores"));
+    }
+
+    private static String render(final AbstractRequestParser parser, final String fields) throws Exception {
+        return (String) renderResponse(parser, fields).getEntity();
+    }
+
+    private static Response renderResponse(final AbstractRequestParser parser, final String fields) throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        if (fields != null) {
+            parameters.put(Constants.FIELDS_KEY, fields);
+        }
+        parser.setRequestParameters(parameters);
+        parser.setServerURI(new URI("http://localhost:8080/"));
+        Entity entity = ConfigurationManager.findEntity(ConfigurationManager.DEFAULT_OWNER, ENTITY_ID);
+        return parser.parseResponse(entity);
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.impl.parser;
+
+import org.junit.Test;
+import org.occiware.mart.server.servlet.impl.parser.json.JsonOcciParser;
+import org.occiware.mart.server.servlet.impl.parser.text.TextOcciParser;
+import org.occiware.mart.server.servlet.utils.Constants;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Media type of the responses given by the accept type of a query.
+ */
+public class ParserFactoryTest {
+
+    @Test
+    public void mediaTypeTest() {
+        assertEquals(Constants.MEDIA_TYPE_JSON, ParserFactory.getMediaType(Constants.MEDIA_TYPE_JSON));
+        assertTrue(ParserFactory.build(Constants.MEDIA_TYPE_JSON) instanceof JsonOcciParser);
+        assertEquals(Constants.MEDIA_TYPE_TEXT_URI_LIST, ParserFactory.getMediaType(Constants.MEDIA_TYPE_TEXT_URI_LIST));
+        // Unknown or composite accept headers are rendered in text/occi : the metrics count them as text/occi.
+        for (String acceptType : new String[]{"*/*", "application/json, text/plain", "text/html", null}) {
+            assertEquals(Constants.MEDIA_TYPE_TEXT_OCCI, ParserFactory.getMediaType(acceptType));
+            assertTrue(ParserFactory.build(acceptType) instanceof TextOcciParser);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.Kind;
+import org.occiware.clouddesigner.occi.OCCIFactory;
+import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Actions executed on many entities as jobs.
+ */
+public class ActionJobTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void jobLocationTest() {
+        assertEquals("abc", ActionJobManager.getJobIdFromPath("-/jobs/abc"));
+        assertEquals("abc", ActionJobManager.getJobIdFromPath("/-/jobs/abc/"));
+        assertNull(ActionJobManager.getJobIdFromPath("compute/abc"));
+        assertNull(ActionJobManager.getJobIdFromPath("-/"));
+    }
+
+    @Test
+    public void failedJobTest() throws InterruptedException {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Resource resource = OCCIFactory.eINSTANCE.createResource();
+            resource.setId("job-res-" + i);
+            entities.add(resource);
+        }
+        // No kind and no connector, the action fails on each entity.
+        ActionJob job = ActionJobManager.submit("start", null, entities, 2);
+        assertSame(job, ActionJobManager.getJob(job.getId()));
+        assertTrue(ActionJobManager.getJobLocation(job).endsWith("/-/jobs/" + job.getId()));
+        for (int i = 0; i < 100 && !job.isEnded(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(job.isEnded());
+        assertEquals(ActionJob.Status.FAILED, job.getStatus());
+        assertEquals(3, job.getTotal());
+        assertEquals(3, job.getFailed());
+        assertEquals(0, job.getSucceeded());
+        for (ActionJob.EntityOutcome outcome : job.getEntities()) {
+            assertEquals(ActionJob.Status.FAILED, outcome.getStatus());
+            assertNotNull(outcome.getMessage());
+        }
+    }
+
+    @Test
+    public void boundedParallelismTest() {
+        final List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            Resource resource = OCCIFactory.eINSTANCE.createResource();
+            resource.setId("par-res-" + i);
+            entities.add(resource);
+        }
+        assertTrue(runAndGetMaxConcurrency(entities, 4) <= 4);
+        assertEquals(1, runAndGetMaxConcurrency(entities, 1));
+
+        // The entities have the same (no) extension, capped whatever the request parallelism.
+        ActionExecutor.configure(ActionExecutor.DEFAULT_THREADS, ActionExecutor.DEFAULT_PARALLELISM, 2);
+        try {
+            assertTrue(runAndGetMaxConcurrency(entities, 8) <= 2);
+        } finally {
+            ActionExecutor.configure(ActionExecutor.DEFAULT_THREADS, ActionExecutor.DEFAULT_PARALLELISM, ActionExecutor.DEFAULT_EXTENSION_CONCURRENCY);
+        }
+    }
+
+    @Test
+    public void errorEndsJobTest() throws InterruptedException {
+        final AtomicInteger kindReads = new AtomicInteger();
+        Resource resource = new ResourceImpl() {
+            @Override
+            public Kind getKind() {
+                // Read once by the executor, then the action fails as a connector class not found.
+                if (kindReads.incrementAndGet() > 1) {
+                    throw new NoClassDefFoundError("org/example/MissingConnector");
+                }
+                return null;
+            }
+        };
+        resource.setId("error-res");
+        List<Entity> entities = new ArrayList<>();
+        entities.add(resource);
+
+        ActionJob job = ActionJobManager.submit("start", null, entities, 1);
+        for (int i = 0; i < 100 && !job.isEnded(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(job.isEnded());
+        assertEquals(ActionJob.Status.FAILED, job.getStatus());
+        assertEquals(ActionJob.Status.FAILED, job.getEntities().get(0).getStatus());
+        assertEquals("org/example/MissingConnector", job.getEntities().get(0).getMessage());
+    }
+
+    @Test
+    public void interruptedExecutionTest() throws InterruptedException {
+        final List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Resource resource = OCCIFactory.eINSTANCE.createResource();
+            resource.setId("int-res-" + i);
+            entities.add(resource);
+        }
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger ended = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ActionExecutor.executeAll(entities, 2, new ActionExecutor.EntityTask() {
+                    @Override
+                    public void execute(int index) {
+                        started.incrementAndGet();
+                        while (true) {
+                            try {
+                                release.await();
+                                break;
+                            } catch (InterruptedException ex) {
+                                // Until released.
+                            }
+                        }
+                        ended.incrementAndGet();
+                    }
+                });
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (started.get() < 2 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        caller.interrupt();
+        // The caller waits for the entities in progress.
+        caller.join(200);
+        assertTrue(caller.isAlive());
+        release.countDown();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+
+        // The entities not started are not executed.
+        assertEquals(2, started.get());
+        assertEquals(2, ended.get());
+        assertTrue(interrupted.get());
+    }
+
+    private static int runAndGetMaxConcurrency(final List<Entity> entities, final int parallelism) {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        ActionExecutor.executeAll(entities, parallelism, new ActionExecutor.EntityTask() {
+            @Override
+            public void execute(int index) {
+                int current = running.incrementAndGet();
+                int max = maxRunning.get();
+                while (current > max && !maxRunning.compareAndSet(max, current)) {
+                    max = maxRunning.get();
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.incrementAndGet();
+            }
+        });
+        assertEquals(entities.size(), done.get());
+        return maxRunning.get();
+    }
+}
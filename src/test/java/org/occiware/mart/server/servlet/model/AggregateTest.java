@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Aggregates computed on the collections.
+ */
+public class AggregateTest {
+
+    private static final String COMPUTE = "http://schemas.ogf.org/occi/infrastructure#compute";
+    private static final String STORAGE = "http://schemas.ogf.org/occi/infrastructure#storage";
+    private static final String SMALL = "http://occiware.org/occi/tpl#small";
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void countWithoutAttributesTest() throws Exception {
+        // No attribute maintained (server.aggregate.attributes not set) : the entities are counted anyway.
+        for (String id : new String[]{"7b1f0c2e-3a4d-4e5f-8a6b-1c2d3e4f5a01", "7b1f0c2e-3a4d-4e5f-8a6b-1c2d3e4f5a02", "7b1f0c2e-3a4d-4e5f-8a6b-1c2d3e4f5a03"}) {
+            Map<String, String> attributes = new HashMap<>();
+            attributes.put("occi.compute.cores", "2");
+            ConfigurationManager.addResourceToConfiguration(id, COMPUTE, new ArrayList<String>(), attributes,
+                    ConfigurationManager.DEFAULT_OWNER, "/aggregates/");
+        }
+        CollectionFilter filter = new CollectionFilter();
+        filter.setCategoryFilter(COMPUTE);
+        int count = ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, filter);
+        assertTrue(count >= 3);
+
+        AggregateQuery query = AggregateQuery.parse("count", null);
+        List<Map<String, Object>> rows = ConfigurationManager.aggregateEntities(ConfigurationManager.DEFAULT_OWNER, filter, query).getRows(query);
+        assertEquals((long) count, rows.get(0).get("count"));
+        // Read from the entities.
+        query = AggregateQuery.parse("count,sum(occi.compute.cores)", null);
+        rows = ConfigurationManager.aggregateEntities(ConfigurationManager.DEFAULT_OWNER, filter, query).getRows(query);
+        assertEquals((long) count, rows.get(0).get("count"));
+    }
+
+    @Test
+    public void parseTest() {
+        AggregateQuery query = AggregateQuery.parse("count, sum(occi.compute.cores),avg( occi.compute.memory )", "kind");
+        assertEquals(3, query.getMeasures().size());
+        assertEquals("count", query.getMeasures().get(0).getName());
+        assertEquals("sum(occi.compute.cores)", query.getMeasures().get(1).getName());
+        assertEquals("occi.compute.memory", query.getMeasures().get(2).getAttributeName());
+        assertEquals(AggregateQuery.GroupBy.KIND, query.getGroupBy());
+
+        query = AggregateQuery.parse("", "occi.compute.state");
+        assertEquals("count", query.getMeasures().get(0).getName());
+        assertEquals(AggregateQuery.GroupBy.ATTRIBUTE, query.getGroupBy());
+        assertEquals("occi.compute.state", query.getGroupAttribute());
+
+        for (String invalid : new String[]{"sum", "median(occi.compute.cores)", "max(occi.compute.cores"}) {
+            try {
+                AggregateQuery.parse(invalid, null);
+                fail("Aggregate should be invalid : " + invalid);
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void incrementalAggregatesTest() {
+        IncrementalAggregates aggregates = new IncrementalAggregates();
+        aggregates.addAttribute("occi.compute.cores");
+        aggregates.update("c1", COMPUTE, Collections.singletonList(SMALL), cores(2));
+        aggregates.update("c2", COMPUTE, Collections.<String>emptyList(), cores(4));
+        aggregates.update("s1", STORAGE, Collections.<String>emptyList(), cores(null));
+        // Update and delete.
+        aggregates.update("c2", COMPUTE, Collections.singletonList(SMALL), cores(8));
+        aggregates.update("c3", COMPUTE, Collections.<String>emptyList(), cores(16));
+        aggregates.remove("c3");
+
+        AggregateQuery query = AggregateQuery.parse("count,sum(occi.compute.cores),avg(occi.compute.cores)", null);
+        assertTrue(aggregates.covers(query, COMPUTE, null));
+        List<Map<String, Object>> rows = aggregates.getResult(query, COMPUTE, null).getRows(query);
+        assertEquals(1, rows.size());
+        assertEquals(2L, rows.get(0).get("count"));
+        assertEquals(10.0, rows.get(0).get("sum(occi.compute.cores)"));
+        assertEquals(5.0, rows.get(0).get("avg(occi.compute.cores)"));
+
+        query = AggregateQuery.parse("count,sum(occi.compute.cores)", "kind");
+        rows = aggregates.getResult(query, null, null).getRows(query);
+        assertEquals(2, rows.size());
+        assertEquals(COMPUTE, rows.get(0).get(AggregateResult.GROUP_KEY));
+        assertEquals(STORAGE, rows.get(1).get(AggregateResult.GROUP_KEY));
+        assertEquals(1L, rows.get(1).get("count"));
+        assertEquals(0.0, rows.get(1).get("sum(occi.compute.cores)"));
+
+        query = AggregateQuery.parse("sum(occi.compute.cores)", "mixin");
+        rows = aggregates.getResult(query, null, SMALL).getRows(query);
+        assertEquals(Arrays.asList(SMALL, 10.0), Arrays.asList(rows.get(0).get(AggregateResult.GROUP_KEY), rows.get(0).get("sum(occi.compute.cores)")));
+
+        // Not maintained incrementally.
+        assertFalse(aggregates.covers(AggregateQuery.parse("max(occi.compute.cores)", null), null, null));
+        assertFalse(aggregates.covers(AggregateQuery.parse("sum(occi.compute.memory)", null), null, null));
+        assertFalse(aggregates.covers(AggregateQuery.parse("count", "mixin"), COMPUTE, null));
+        assertFalse(aggregates.covers(AggregateQuery.parse("count", "occi.compute.state"), null, null));
+    }
+
+    @Test
+    public void mergeTest() {
+        AggregateResult part1 = new AggregateResult();
+        part1.getGroup("a").add(cores(3));
+        part1.getGroup(null).add(cores(1));
+        AggregateResult part2 = new AggregateResult();
+        part2.getGroup("a").add(cores(7));
+        part2.getGroup("a").add(cores(null));
+        part1.merge(part2);
+
+        AggregateQuery query = AggregateQuery.parse("count,count(occi.compute.cores),min(occi.compute.cores),max(occi.compute.cores)", "occi.compute.state");
+        List<Map<String, Object>> rows = part1.getRows(query);
+        assertEquals(2, rows.size());
+        assertEquals("a", rows.get(0).get(AggregateResult.GROUP_KEY));
+        assertEquals(3L, rows.get(0).get("count"));
+        assertEquals(2L, rows.get(0).get("count(occi.compute.cores)"));
+        assertEquals(3.0, rows.get(0).get("min(occi.compute.cores)"));
+        assertEquals(7.0, rows.get(0).get("max(occi.compute.cores)"));
+        // Entities without value are at the end.
+        assertNull(rows.get(1).get(AggregateResult.GROUP_KEY));
+    }
+
+    private static Map<String, Number> cores(final Integer value) {
+        Map<String, Number> values = new HashMap<>();
+        values.put("occi.compute.cores", value);
+        return values;
+    }
+}
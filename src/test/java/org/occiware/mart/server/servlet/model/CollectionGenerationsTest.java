@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Generations of the collections given after the changes of the entities.
+ */
+public class CollectionGenerationsTest {
+
+    private static final String OWNER = "generations";
+    private static final String SMALL = "http://occiware.org/occi/tpl#small";
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void generationsTest() {
+        long boot = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        CollectionGenerations generations = new CollectionGenerations();
+        long initial = generations.get(OWNER, null, null).getValue();
+        // Not reused after a restart.
+        assertTrue(initial >= boot);
+
+        Resource resource = new ResourceImpl() {
+        };
+        resource.setId("f88486b7-0632-482d-a184-a9195733ddd0");
+        generations.update(OWNER, resource, "/compute/vms/");
+
+        long owner = generations.get(OWNER, null, null).getValue();
+        assertTrue(owner > initial);
+        // All the path prefixes, as the path filter compares the start of the locations.
+        assertEquals(owner, generations.get(OWNER, null, "/compute/vms").getValue());
+        assertEquals(owner, generations.get(OWNER, null, "compute").getValue());
+        assertEquals(owner, generations.get(OWNER, null, "/comp").getValue());
+        assertEquals(initial, generations.get(OWNER, null, "/storage").getValue());
+        assertEquals(initial, generations.get(OWNER, SMALL, null).getValue());
+        // Other owners are not changed.
+        assertEquals(initial, generations.get(ConfigurationManager.DEFAULT_OWNER, null, null).getValue());
+
+        generations.updateCategory(OWNER, SMALL);
+        long small = generations.get(OWNER, SMALL, null).getValue();
+        assertTrue(small > owner);
+        assertEquals(small, generations.get(OWNER, null, null).getValue());
+        assertEquals(owner, generations.get(OWNER, null, "/compute/vms").getValue());
+
+        generations.update(OWNER, resource, "/storage/");
+        assertNotEquals(owner, generations.get(OWNER, null, "/storage").getValue());
+        assertEquals(owner, generations.get(OWNER, null, "/compute/vms").getValue());
+    }
+}
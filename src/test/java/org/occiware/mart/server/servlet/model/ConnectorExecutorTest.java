@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Timeout of the queries executed on the connector pool.
+ */
+public class ConnectorExecutorTest {
+
+    @After
+    public void resetExecutor() {
+        ConnectorExecutor.configure(false, ConnectorExecutor.DEFAULT_THREADS, ConnectorExecutor.DEFAULT_QUEUE_SIZE, ConnectorExecutor.DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        ConnectorExecutor.configure(true, 1, 1, 60000);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executions = new AtomicInteger();
+        Callable<Response> query = new Callable<Response>() {
+            @Override
+            public Response call() throws Exception {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return Response.ok().build();
+            }
+        };
+        RecordingResponse running = new RecordingResponse();
+        RecordingResponse waiting = new RecordingResponse();
+        ConnectorExecutor.execute(running, query);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ConnectorExecutor.execute(waiting, query);
+
+        // Not started : never executed.
+        waiting.timeoutHandler.handleTimeout(waiting);
+        assertEquals(503, waiting.getStatus());
+        // Started : the outcome is unknown.
+        running.timeoutHandler.handleTimeout(running);
+        assertEquals(504, running.getStatus());
+
+        release.countDown();
+        // The next query is executed once the running one has ended, the cancelled one is not.
+        RecordingResponse next = new RecordingResponse();
+        ConnectorExecutor.execute(next, new Callable<Response>() {
+            @Override
+            public Response call() {
+                return Response.ok().build();
+            }
+        });
+        assertTrue(next.resumed.await(5, TimeUnit.SECONDS));
+        assertEquals(200, next.getStatus());
+        assertEquals(1, executions.get());
+    }
+
+    /**
+     * Suspended response keeping the first result given.
+     */
+    private static class RecordingResponse implements AsyncResponse {
+        private final CountDownLatch resumed = new CountDownLatch(1);
+        private volatile Object result;
+        private volatile TimeoutHandler timeoutHandler;
+
+        int getStatus() {
+            return ((Response) result).getStatus();
+        }
+
+        @Override
+        public synchronized boolean resume(Object response) {
+            if (result != null) {
+                return false;
+            }
+            result = response;
+            resumed.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean resume(Throwable response) {
+            return resume((Object) response);
+        }
+
+        @Override
+        public boolean cancel() {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(int retryAfter) {
+            return false;
+        }
+
+        @Override
+        public boolean cancel(Date retryAfter) {
+            return false;
+        }
+
+        @Override
+        public boolean isSuspended() {
+            return result == null;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return result != null;
+        }
+
+        @Override
+        public boolean setTimeout(long time, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void setTimeoutHandler(TimeoutHandler handler) {
+            timeoutHandler = handler;
+        }
+
+        @Override
+        public Collection<Class<?>> register(Class<?> callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Class<?> callback, Class<?>... callbacks) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Collection<Class<?>> register(Object callback) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Map<Class<?>, Collection<Class<?>>> register(Object callback, Object... callbacks) {
+            return Collections.emptyMap();
+        }
+    }
+}
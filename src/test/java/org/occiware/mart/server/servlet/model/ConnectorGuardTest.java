@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+import org.occiware.mart.server.servlet.exception.ConnectorRefusedException;
+
+import javax.ws.rs.ServiceUnavailableException;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Timeouts, circuit breakers and bulkheads of the connector calls.
+ */
+public class ConnectorGuardTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @After
+    public void resetGuards() {
+        ConnectorGuard.configure(new ConnectorGuard.Settings(ConnectorGuard.DEFAULT_CONCURRENCY, ConnectorGuard.DEFAULT_TIMEOUT_MILLIS,
+                ConnectorGuard.DEFAULT_BREAKER_FAILURES, ConnectorGuard.DEFAULT_BREAKER_OPEN_MILLIS), new HashMap<String, ConnectorGuard.Settings>());
+    }
+
+    @Test
+    public void circuitBreakerTest() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 200);
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.getRetryAfterMillis() > 0);
+
+        Thread.sleep(300);
+        // One trial call, the others fail fast until its end.
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(300);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void timeoutOpensBreakerTest() {
+        ConnectorGuard.configure(new ConnectorGuard.Settings(10, 100, 1, 60000), new HashMap<String, ConnectorGuard.Settings>());
+        SlowResource resource = new SlowResource(1000);
+
+        try {
+            ConnectorGuard.occiRetrieve(resource);
+            fail("The retrieve must time out");
+        } catch (ServiceUnavailableException ex) {
+            assertEquals(503, ex.getResponse().getStatus());
+            // Started, the call goes on after the timeout.
+            assertFalse(ex instanceof ConnectorRefusedException);
+        }
+        // The circuit is open : no connector call.
+        try {
+            ConnectorGuard.occiUpdate(resource);
+            fail("The update must fail fast");
+        } catch (ConnectorRefusedException ex) {
+            assertEquals("60", ex.getResponse().getHeaderString("Retry-After"));
+        }
+        assertEquals(1, resource.calls);
+
+        ConnectorGuard.ExtensionGuard guard = ConnectorGuard.getExtensionGuards().iterator().next();
+        assertEquals(CircuitBreaker.State.OPEN, guard.getState());
+        assertEquals(1, guard.getTimeouts());
+        assertEquals(1, guard.getRejected());
+    }
+
+    @Test
+    public void bulkheadTest() throws Exception {
+        ConnectorGuard.configure(new ConnectorGuard.Settings(1, 0, 0, 0), new HashMap<String, ConnectorGuard.Settings>());
+        final SlowResource resource = new SlowResource(500);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ConnectorGuard.occiRetrieve(resource);
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+
+        try {
+            ConnectorGuard.occiRetrieve(resource);
+            fail("The second call must be refused");
+        } catch (ConnectorRefusedException ex) {
+            assertEquals(503, ex.getResponse().getStatus());
+        }
+        thread.join(5000);
+        ConnectorGuard.occiRetrieve(resource);
+        assertEquals(2, resource.calls);
+    }
+
+    /**
+     * Resource with a slow connector.
+     */
+    private static class SlowResource extends ResourceImpl {
+        private final long latency;
+        private volatile int calls = 0;
+
+        SlowResource(final long latency) {
+            this.latency = latency;
+            setId("slow");
+        }
+
+        @Override
+        public void occiRetrieve() {
+            calls++;
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void occiUpdate() {
+            calls++;
+        }
+    }
+
+    @Test
+    public void configuredExecutorTest() {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        ConnectorGuard.configure(executor);
+        try {
+            ResourceImpl resource = new ResourceImpl() {
+            };
+            resource.setId("executed");
+            ConnectorGuard.occiRetrieve(resource);
+            // The call with a timeout has been executed on the configured executor (virtual threads on the server).
+            assertEquals(1, executor.getTaskCount());
+        } finally {
+            ConnectorGuard.configure(Executors.newCachedThreadPool());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.OCCIFactory;
+import org.occiware.clouddesigner.occi.infrastructure.impl.ComputeImpl;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Indexes updated when the connector changes an entity.
+ */
+public class EntityIndexesTest {
+
+    private static final String COMPUTE = "http://schemas.ogf.org/occi/infrastructure#compute";
+    private static final String STATE = "occi.compute.state";
+
+    @BeforeClass
+    public static void initModel() {
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.createAttributeIndex(STATE);
+    }
+
+    @Test
+    public void actionChangesIndexedAttributeTest() throws Exception {
+        ComputeImpl started = new StartedCompute();
+        addCompute(started, "5e0a9c1d-2b3f-4c4d-9e5f-6a7b8c9d0e01", "inactive", "/indexes/");
+        ComputeImpl other = new ComputeImpl() {
+        };
+        addCompute(other, "5e0a9c1d-2b3f-4c4d-9e5f-6a7b8c9d0e02", "error", "/indexes/");
+
+        CollectionFilter active = new CollectionFilter();
+        active.setCategoryFilter(COMPUTE);
+        active.setAttributeFilter(STATE);
+        active.setValue("active");
+        active.setOperator(CollectionFilter.OPERATOR_EQUAL);
+        int activeCount = ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, active);
+        assertEquals(2, getSortedIds().size());
+        assertEquals(other.getId(), getSortedIds().get(0));
+
+        ConfigurationManager.executeAction(started, "http://schemas.ogf.org/occi/infrastructure/compute/action#start", null);
+
+        // Read from the index of the attribute.
+        assertEquals(activeCount + 1, ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, active));
+        List<String> ids = getSortedIds();
+        assertEquals(started.getId(), ids.get(0));
+        assertEquals(other.getId(), ids.get(1));
+    }
+
+    @Test
+    public void retrieveChangesIndexedAttributeTest() {
+        ComputeImpl retrieved = new ComputeImpl() {
+            @Override
+            public void occiRetrieve() {
+                setAttribute(this, STATE, "suspended");
+            }
+        };
+        addCompute(retrieved, "5e0a9c1d-2b3f-4c4d-9e5f-6a7b8c9d0e03", "inactive", "/retrieved/");
+        CollectionFilter suspended = new CollectionFilter();
+        suspended.setCategoryFilter(COMPUTE);
+        suspended.setAttributeFilter(STATE);
+        suspended.setValue("suspended");
+        suspended.setOperator(CollectionFilter.OPERATOR_EQUAL);
+        int suspendedCount = ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, suspended);
+
+        RetrieveCache.retrieve(retrieved, true);
+        assertEquals(suspendedCount + 1, ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, suspended));
+    }
+
+    /**
+     * @return the ids of the computes of the test path, sorted on their state with the index.
+     */
+    private static List<String> getSortedIds() {
+        CollectionFilter filter = new CollectionFilter();
+        filter.setCategoryFilter(COMPUTE);
+        filter.setFilterOnPath("/indexes/");
+        filter.setSortKeys(Collections.singletonList(new CollectionFilter.SortKey(STATE, false)));
+        filter.setNumberOfItemsPerPage(10);
+        List<String> ids = new ArrayList<>();
+        for (Entity entity : ConfigurationManager.findAllEntities(ConfigurationManager.DEFAULT_OWNER, filter)) {
+            ids.add(entity.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Compute whose connector sets the state on start, public as the action is called by reflection.
+     */
+    public static class StartedCompute extends ComputeImpl {
+        @Override
+        public void start() {
+            setAttribute(this, STATE, "active");
+        }
+    }
+
+    private static void addCompute(final ComputeImpl compute, final String id, final String state, final String location) {
+        compute.setId(id);
+        compute.setKind(ConfigurationManager.findKindFromExtension(ConfigurationManager.DEFAULT_OWNER, COMPUTE));
+        setAttribute(compute, STATE, state);
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER).getResources().add(compute);
+        ConfigurationManager.getEntitiesRelativePath().put(id, location);
+        ConfigurationManager.updateEntityIndexes(compute);
+    }
+
+    private static void setAttribute(final Entity entity, final String name, final String value) {
+        for (AttributeState attributeState : entity.getAttributes()) {
+            if (attributeState.getName().equals(name)) {
+                attributeState.setValue(value);
+                return;
+            }
+        }
+        AttributeState attributeState = OCCIFactory.eINSTANCE.createAttributeState();
+        attributeState.setName(name);
+        attributeState.setValue(value);
+        entity.getAttributes().add(attributeState);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.Test;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sort of the entities of a collection.
+ */
+public class EntitySorterTest {
+
+    @Test
+    public void firstSortedTest() {
+        List<Integer> items = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            items.add(random.nextInt(500));
+        }
+        List<Integer> expected = new ArrayList<>(items);
+        Collections.sort(expected);
+
+        List<Integer> result = EntitySorter.firstSorted(items, Comparator.<Integer>naturalOrder(), 10);
+        assertEquals(expected.subList(0, 10), result);
+
+        result = EntitySorter.firstSorted(items, Comparator.<Integer>reverseOrder(), 10);
+        Collections.reverse(expected);
+        assertEquals(expected.subList(0, 10), result);
+
+        assertEquals(1000, EntitySorter.firstSorted(items, Comparator.<Integer>naturalOrder(), -1).size());
+        assertEquals(1000, EntitySorter.firstSorted(items, Comparator.<Integer>naturalOrder(), 5000).size());
+        assertTrue(EntitySorter.firstSorted(items, Comparator.<Integer>naturalOrder(), 0).isEmpty());
+    }
+
+    @Test
+    public void compareValuesTest() {
+        // Numbers are compared on their values, not their types.
+        assertTrue(EntitySorter.compareValues(2, 10.5f, false) < 0);
+        assertTrue(EntitySorter.compareValues(2, 10.5f, true) > 0);
+        assertEquals(0, EntitySorter.compareValues(4, 4.0d, false));
+        assertTrue(EntitySorter.compareValues("abc", "abd", false) < 0);
+
+        // Null values are always at the end.
+        assertTrue(EntitySorter.compareValues(null, 1, false) > 0);
+        assertTrue(EntitySorter.compareValues(null, 1, true) > 0);
+        assertTrue(EntitySorter.compareValues("abc", null, true) < 0);
+        assertEquals(0, EntitySorter.compareValues(null, null, false));
+    }
+
+    @Test
+    public void parseSortKeysTest() {
+        List<CollectionFilter.SortKey> keys = CollectionFilter.parseSortKeys("-occi.compute.memory, occi.compute.hostname,,+occi.core.title");
+        assertEquals(3, keys.size());
+        assertEquals("occi.compute.memory", keys.get(0).getAttributeName());
+        assertTrue(keys.get(0).isDescending());
+        assertEquals("occi.compute.hostname", keys.get(1).getAttributeName());
+        assertFalse(keys.get(1).isDescending());
+        assertEquals("occi.core.title", keys.get(2).getAttributeName());
+        assertFalse(keys.get(2).isDescending());
+
+        assertTrue(CollectionFilter.parseSortKeys(null).isEmpty());
+        assertTrue(CollectionFilter.parseSortKeys("").isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Attribute;
+import org.occiware.clouddesigner.occi.Extension;
+import org.occiware.clouddesigner.occi.Kind;
+import org.occiware.clouddesigner.occi.Mixin;
+import org.occiware.clouddesigner.occi.OCCIRegistry;
+import org.occiware.clouddesigner.occi.util.OcciHelper;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cache of the extension models loaded at startup.
+ */
+public class ExtensionModelCacheTest {
+
+    private Path cacheDirectory;
+
+    @BeforeClass
+    public static void initModel() {
+        // Registers the extensions found in classpath.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Before
+    public void createDirectory() throws Exception {
+        cacheDirectory = Files.createTempDirectory("mart-extension-cache");
+        ExtensionModelCache.configure(cacheDirectory.toString());
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        ExtensionModelCache.configure(null);
+        for (File file : cacheDirectory.toFile().listFiles()) {
+            Files.delete(file.toPath());
+        }
+        Files.delete(cacheDirectory);
+    }
+
+    @Test
+    public void cachedModelTest() {
+        List<String> extSchemes = new ArrayList<>(OCCIRegistry.getInstance().getRegisteredExtensions());
+        assertTrue(ExtensionModelCache.loadAll(extSchemes).isEmpty());
+        for (String extScheme : extSchemes) {
+            ExtensionModelCache.save(extScheme, OcciHelper.loadExtension(extScheme));
+        }
+
+        Map<String, Extension> cachedExtensions = ExtensionModelCache.loadAll(extSchemes);
+        assertEquals(extSchemes.size(), cachedExtensions.size());
+        for (String extScheme : extSchemes) {
+            assertEquals(describe(OcciHelper.loadExtension(extScheme)), describe(cachedExtensions.get(extScheme)));
+        }
+        // References between extensions use the cached models.
+        for (Kind kind : cachedExtensions.get("http://schemas.ogf.org/occi/infrastructure#").getKinds()) {
+            if (kind.getTerm().equals("compute")) {
+                assertFalse(kind.getParent().eIsProxy());
+                assertTrue(cachedExtensions.get("http://schemas.ogf.org/occi/core#").getKinds().contains(kind.getParent()));
+            }
+        }
+    }
+
+    @Test
+    public void corruptedFileTest() throws Exception {
+        String extScheme = "http://schemas.ogf.org/occi/core#";
+        ExtensionModelCache.save(extScheme, OcciHelper.loadExtension(extScheme));
+        File[] files = cacheDirectory.toFile().listFiles();
+        assertEquals(1, files.length);
+        Files.write(files[0].toPath(), "not a model".getBytes(StandardCharsets.UTF_8));
+
+        List<String> extSchemes = new ArrayList<>();
+        extSchemes.add(extScheme);
+        // Loaded from its model again, the corrupted file is removed.
+        assertTrue(ExtensionModelCache.loadAll(extSchemes).isEmpty());
+        assertEquals(0, cacheDirectory.toFile().listFiles().length);
+    }
+
+    private static String describe(final Extension extension) {
+        StringBuilder sb = new StringBuilder(extension.getName()).append(' ').append(extension.getScheme());
+        for (Kind kind : extension.getKinds()) {
+            sb.append(" kind ").append(kind.getTerm()).append(" parent ").append(kind.getParent() == null ? null : kind.getParent().getTerm());
+            for (Attribute attribute : kind.getAttributes()) {
+                sb.append(" attr ").append(attribute.getName()).append(':').append(attribute.getType() == null ? null : attribute.getType().getName());
+            }
+            sb.append(" actions ").append(kind.getActions().size());
+        }
+        for (Mixin mixin : extension.getMixins()) {
+            sb.append(" mixin ").append(mixin.getTerm()).append(" attrs ").append(mixin.getAttributes().size())
+                    .append(" depends ").append(mixin.getDepends().size());
+        }
+        return sb.toString();
+    }
+}
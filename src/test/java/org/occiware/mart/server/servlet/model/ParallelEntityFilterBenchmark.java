@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.OCCIFactory;
+import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import java.util.Arrays;
+
+/**
+ * Benchmark of a LIKE collection filter on 500 000 entities, sequential and
+ * parallel with 1 to n threads (n = number of processors, or first argument).
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.servlet.model.ParallelEntityFilterBenchmark -Dexec.classpathScope=test
+ */
+public class ParallelEntityFilterBenchmark {
+
+    private static final int ENTITIES = 500000;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 7;
+
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        Configuration configuration = ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        OCCIFactory factory = OCCIFactory.eINSTANCE;
+        for (int i = 0; i < ENTITIES; i++) {
+            Resource resource = factory.createResource();
+            resource.setId("bench-" + i);
+            addAttribute(factory, resource, "occi.core.title", "vm-" + i);
+            addAttribute(factory, resource, "occi.compute.hostname", "host-" + (i % 1000));
+            addAttribute(factory, resource, "occi.compute.state", i % 2 == 0 ? "active" : "inactive");
+            addAttribute(factory, resource, "occi.compute.memory", String.valueOf(i % 64));
+            configuration.getResources().add(resource);
+        }
+
+        CollectionFilter filter = new CollectionFilter();
+        filter.setAttributeFilter("occi.core.title");
+        filter.setOperator(CollectionFilter.OPERATOR_LIKE);
+        filter.setValue("99");
+
+        System.out.println("Entities: " + ENTITIES + ", processors: " + Runtime.getRuntime().availableProcessors());
+        ConfigurationManager.configureParallelFilter(1, -1);
+        report("sequential", filter);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ConfigurationManager.configureParallelFilter(threads, 0);
+            report("parallel " + threads + " thread(s)", filter);
+        }
+    }
+
+    private static void addAttribute(OCCIFactory factory, Resource resource, String name, String value) {
+        AttributeState attr = factory.createAttributeState();
+        attr.setName(name);
+        attr.setValue(value);
+        resource.getAttributes().add(attr);
+    }
+
+    private static void report(String label, CollectionFilter filter) {
+        long[] times = new long[ITERATIONS];
+        int count = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            count = ConfigurationManager.countEntities(ConfigurationManager.DEFAULT_OWNER, filter);
+            long time = System.nanoTime() - start;
+            if (i >= WARMUP) {
+                times[i - WARMUP] = time;
+            }
+        }
+        Arrays.sort(times);
+        System.out.println(String.format("%-24s matches: %d, median: %.1f ms, min: %.1f ms", label, count,
+                times[ITERATIONS / 2] / 1e6, times[0] / 1e6));
+    }
+}
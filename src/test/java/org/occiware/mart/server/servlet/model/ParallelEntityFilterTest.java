@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.OCCIFactory;
+import org.occiware.clouddesigner.occi.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Filter of the entities split on several threads.
+ */
+public class ParallelEntityFilterTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void filterKeepsOrderTest() {
+        List<Entity> entities = new ArrayList<>();
+        List<Entity> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            Resource resource = OCCIFactory.eINSTANCE.createResource();
+            resource.setId("res-" + i);
+            entities.add(resource);
+            if (i % 3 == 0) {
+                expected.add(resource);
+            }
+        }
+        Predicate<Entity> predicate = new Predicate<Entity>() {
+            @Override
+            public boolean test(Entity entity) {
+                return Integer.parseInt(entity.getId().substring(4)) % 3 == 0;
+            }
+        };
+
+        ParallelEntityFilter parallelFilter = new ParallelEntityFilter(4, 0);
+        try {
+            assertEquals(expected, parallelFilter.filter(entities, predicate));
+        } finally {
+            parallelFilter.shutdown();
+        }
+        // Under the threshold, evaluated on the caller thread.
+        ParallelEntityFilter sequentialFilter = new ParallelEntityFilter(4, Integer.MAX_VALUE);
+        try {
+            assertEquals(expected, sequentialFilter.filter(entities, predicate));
+        } finally {
+            sequentialFilter.shutdown();
+        }
+    }
+}
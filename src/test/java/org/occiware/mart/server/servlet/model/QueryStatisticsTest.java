@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.Resource;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+import org.occiware.mart.server.servlet.utils.CollectionFilter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Statistics used to plan the collection queries.
+ */
+public class QueryStatisticsTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void pathCountTest() {
+        QueryStatistics statistics = new QueryStatistics();
+        statistics.update(createResource("a3b1e2c4-5d6f-4a7b-8c9d-0e1f2a3b4c5d"), "/compute/vms/");
+        statistics.update(createResource("b4c2f3d5-6e7a-4b8c-9d0e-1f2a3b4c5d6e"), "/compute/");
+        statistics.update(createResource("c5d3a4e6-7f8b-4c9d-0e1f-2a3b4c5d6e7f"), "/storage/");
+
+        assertEquals(3, statistics.getPathCount("/"));
+        assertEquals(2, statistics.getPathCount("/compute/"));
+        assertEquals(2, statistics.getPathCount("/compute"));
+        assertEquals(1, statistics.getPathCount("/compute/vms/"));
+        assertEquals(3, statistics.getPathCount(""));
+        // Only whole path segments are counted.
+        assertEquals(0, statistics.getPathCount("/comp"));
+        assertEquals(0, statistics.getPathCount("/comp/"));
+
+        statistics.remove("a3b1e2c4-5d6f-4a7b-8c9d-0e1f2a3b4c5d");
+        assertEquals(1, statistics.getPathCount("/compute"));
+        assertEquals(0, statistics.getPathCount("/compute/vms"));
+    }
+
+    @Test
+    public void statisticsByOwnerTest() {
+        Resource resource = createResource("e7f5c6a8-9b0d-4e1f-2a3b-4c5d6e7f8a9b");
+        ConfigurationManager.getConfigurationForOwner("statistics-owner").getResources().add(resource);
+        ConfigurationManager.getEntitiesRelativePath().put(resource.getId(), "/owned/");
+        ConfigurationManager.updateEntityIndexes(resource);
+
+        // The plans of an owner only count its entities.
+        assertEquals(1, ConfigurationManager.explainEntities("statistics-owner", new CollectionFilter()).getEntityCount());
+        assertEquals(0, ConfigurationManager.explainEntities("statistics-other", new CollectionFilter()).getEntityCount());
+    }
+
+    @Test
+    public void pathNeverCheaperThanFullScanTest() {
+        QueryStatistics statistics = new QueryStatistics();
+        for (int i = 0; i < 100; i++) {
+            statistics.update(createResource("d6e4b5f7-8a9c-4d0e-1f2a-" + String.format("%012d", i)), i == 0 ? "/compute/" : "/storage/");
+        }
+        CollectionFilter filter = new CollectionFilter();
+        QueryPlan plan = QueryPlanner.plan(statistics, filter, null, null, "/compute", null, 0);
+        assertEquals(QueryPlan.AccessPath.FULL_SCAN, plan.getAccessPath());
+        assertEquals(2, plan.getAlternatives().size());
+        assertEquals(1, plan.getAlternatives().get(1).getEstimatedCandidates());
+        assertEquals(1, plan.getEstimatedRows());
+    }
+
+    private static Resource createResource(final String id) {
+        Resource resource = new ResourceImpl() {
+        };
+        resource.setId(id);
+        return resource;
+    }
+}
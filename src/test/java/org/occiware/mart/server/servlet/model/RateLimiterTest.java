@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rate limits of the queries per client and method.
+ */
+public class RateLimiterTest {
+
+    @After
+    public void resetLimits() {
+        RateLimiter.configure(null, new HashMap<String, RateLimiter.Limit>(), RateLimiter.DEFAULT_MAX_CLIENTS);
+    }
+
+    @Test
+    public void tokenBucketTest() {
+        Map<String, RateLimiter.Limit> limits = new HashMap<>();
+        limits.put("get", new RateLimiter.Limit(10, 3));
+        RateLimiter.configure(null, limits, RateLimiter.DEFAULT_MAX_CLIENTS);
+        assertTrue(RateLimiter.isEnabled());
+        long now = System.nanoTime();
+
+        // Burst of 3 requests, then one request each 100 ms.
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, RateLimiter.acquire("client1", "GET", now));
+        }
+        long retryAfter = RateLimiter.acquire("client1", "GET", now);
+        assertEquals(100, retryAfter);
+        // Other clients and other methods have their own limits.
+        assertEquals(0, RateLimiter.acquire("client2", "GET", now));
+        assertEquals(0, RateLimiter.acquire("client1", "POST", now));
+
+        long later = now + TimeUnit.MILLISECONDS.toNanos(retryAfter);
+        assertEquals(0, RateLimiter.acquire("client1", "GET", later));
+        assertTrue(RateLimiter.acquire("client1", "GET", later) > 0);
+
+        // The bucket is full again after 300 ms.
+        later += TimeUnit.MILLISECONDS.toNanos(300);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, RateLimiter.acquire("client1", "get", later));
+        }
+
+        RateLimiter.MethodCounters counters = RateLimiter.getMethodCounters().iterator().next();
+        assertEquals("GET", counters.getMethod());
+        assertEquals(8, counters.getAllowed());
+        assertEquals(2, counters.getRejected());
+    }
+
+    @Test
+    public void maxClientsTest() {
+        RateLimiter.configure(new RateLimiter.Limit(1, 1), new HashMap<String, RateLimiter.Limit>(), 100);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, RateLimiter.acquire("client" + i, "GET", now));
+        }
+        // All the clients tracked are active : they keep their bucket, the new clients share one.
+        for (int i = 100; i < 1000; i++) {
+            RateLimiter.acquire("client" + i, "GET", now);
+        }
+        assertTrue(RateLimiter.getClients() <= 101);
+        assertTrue(RateLimiter.acquire("client0", "GET", now) > 0);
+        assertTrue(RateLimiter.acquire("client1000", "GET", now) > 0);
+
+        // Once idle, the clients are forgotten and the new clients get their own bucket.
+        long later = now + TimeUnit.SECONDS.toNanos(2);
+        assertEquals(0, RateLimiter.acquire("client1000", "GET", later));
+        assertEquals(0, RateLimiter.acquire("client1001", "GET", later));
+        assertEquals(2, RateLimiter.getClients());
+
+        // Unknown methods share a bucket.
+        assertEquals(0, RateLimiter.acquire("client", "FOO", later));
+        assertTrue(RateLimiter.acquire("client", "BAR", later) > 0);
+    }
+
+    @Test
+    public void disabledTest() {
+        RateLimiter.configure(new RateLimiter.Limit(0, 0), new HashMap<String, RateLimiter.Limit>(), 100);
+        assertFalse(RateLimiter.isEnabled());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, RateLimiter.acquire("client", "GET"));
+        }
+        assertEquals(0, RateLimiter.getClients());
+    }
+}
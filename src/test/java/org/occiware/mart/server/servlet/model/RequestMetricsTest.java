@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Metrics recorded for each query.
+ */
+public class RequestMetricsTest {
+
+    @Test
+    public void recordTest() {
+        long notFound = RequestMetrics.getStatusCount(404);
+        for (int i = 0; i < 98; i++) {
+            RequestMetrics.record("PATCH", RequestMetrics.Route.MIXIN_TAG, "text/x-test", 404, TimeUnit.MICROSECONDS.toNanos(800));
+        }
+        RequestMetrics.record("PATCH", RequestMetrics.Route.MIXIN_TAG, "text/x-test", 404, TimeUnit.MILLISECONDS.toNanos(40));
+        RequestMetrics.record("PATCH", RequestMetrics.Route.MIXIN_TAG, "text/x-test", 404, TimeUnit.SECONDS.toNanos(60));
+        assertEquals(100, RequestMetrics.getStatusCount(404) - notFound);
+
+        RequestMetrics.Histogram histogram = null;
+        for (RequestMetrics.Histogram tmp : RequestMetrics.getHistograms()) {
+            if (tmp.getMethod().equals("OTHER") && tmp.getRoute() == RequestMetrics.Route.MIXIN_TAG) {
+                histogram = tmp;
+            }
+        }
+        assertTrue(histogram != null);
+        assertEquals(100, histogram.getCount());
+        long[] counts = histogram.getBucketCounts();
+        // 0.8 ms in the 1 ms bucket, 40 ms in the 50 ms bucket and 60 s over the last bound.
+        assertEquals(98, counts[1]);
+        assertEquals(1, counts[6]);
+        assertEquals(1, counts[counts.length - 1]);
+        assertEquals(1000, histogram.getQuantileMicros(0.5));
+        assertEquals(50000, histogram.getQuantileMicros(0.99));
+        assertEquals(30000000, histogram.getQuantileMicros(1));
+
+        String text = ServerMetrics.toText();
+        assertTrue(text.contains("request_duration_seconds_bucket{method=\"OTHER\",route=\"mixin_tag\",le=\"0.001\"} 98\n"));
+        assertTrue(text.contains("request_duration_seconds_bucket{method=\"OTHER\",route=\"mixin_tag\",le=\"+Inf\"} 100\n"));
+        assertTrue(text.contains("requests_by_media_type_total{media_type=\"text/x-test\"} 100\n"));
+        assertEquals(100L, ServerMetrics.getMetrics().get("request_other_mixin_tag_count"));
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shared and cached retrieves of the entities from their connector.
+ */
+public class RetrieveCacheTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @After
+    public void resetCache() {
+        RetrieveCache.configure(RetrieveCache.DEFAULT_MAX_SIZE, RetrieveCache.DEFAULT_TTL_MILLIS, new HashMap<String, Long>());
+    }
+
+    @Test
+    public void ttlTest() {
+        RetrieveCache.configure(10, 60000, new HashMap<String, Long>());
+        CountingResource resource = new CountingResource("cached");
+        long hits = RetrieveCache.getHits();
+        long misses = RetrieveCache.getMisses();
+
+        assertTrue(RetrieveCache.retrieve(resource, false));
+        assertFalse(RetrieveCache.retrieve(resource, false));
+        assertEquals(1, resource.count);
+        // Cache-Control: no-cache.
+        assertTrue(RetrieveCache.retrieve(resource, true));
+        // Local update, delete or action.
+        RetrieveCache.invalidate(resource.getId());
+        assertTrue(RetrieveCache.retrieve(resource, false));
+        assertEquals(3, resource.count);
+        assertEquals(1, RetrieveCache.getHits() - hits);
+        assertEquals(3, RetrieveCache.getMisses() - misses);
+
+        // No time to live : always retrieved.
+        RetrieveCache.configure(10, 0, new HashMap<String, Long>());
+        assertTrue(RetrieveCache.retrieve(resource, false));
+        assertTrue(RetrieveCache.retrieve(resource, false));
+        assertEquals(0, RetrieveCache.size());
+    }
+
+    @Test
+    public void lruTest() {
+        RetrieveCache.configure(2, 60000, new HashMap<String, Long>());
+        CountingResource first = new CountingResource("first");
+        CountingResource second = new CountingResource("second");
+        CountingResource third = new CountingResource("third");
+        RetrieveCache.retrieve(first, false);
+        RetrieveCache.retrieve(second, false);
+        // first is now the most recently used.
+        assertFalse(RetrieveCache.retrieve(first, false));
+        RetrieveCache.retrieve(third, false);
+
+        assertEquals(2, RetrieveCache.size());
+        assertFalse(RetrieveCache.retrieve(first, false));
+        assertTrue(RetrieveCache.retrieve(second, false));
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger connectorCalls = new AtomicInteger();
+        final ResourceImpl resource = new ResourceImpl() {
+            @Override
+            public void occiRetrieve() {
+                connectorCalls.incrementAndGet();
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        resource.setId("polled");
+        long coalesced = RetrieveCache.getCoalesced();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Cache-Control: no-cache, only the in-flight retrieve is shared.
+                    RetrieveCache.retrieve(resource, true);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // Wait until the other callers have joined the retrieve in progress.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (RetrieveCache.getCoalesced() - coalesced < 4 && System.nanoTime() - deadline < 0) {
+            Thread.yield();
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(1, connectorCalls.get());
+        assertEquals(4, RetrieveCache.getCoalesced() - coalesced);
+    }
+
+    @Test
+    public void interruptedCallerTest() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger connectorCalls = new AtomicInteger();
+        final ResourceImpl resource = new ResourceImpl() {
+            @Override
+            public void occiRetrieve() {
+                connectorCalls.incrementAndGet();
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        resource.setId("interrupted");
+        long coalesced = RetrieveCache.getCoalesced();
+        final AtomicReference<Boolean> firstResult = new AtomicReference<>();
+        final AtomicReference<Object> secondResult = new AtomicReference<>();
+
+        Thread first = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                firstResult.set(RetrieveCache.retrieve(resource, true));
+            }
+        });
+        first.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread second = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    secondResult.set(RetrieveCache.retrieve(resource, true));
+                } catch (RuntimeException ex) {
+                    secondResult.set(ex);
+                }
+            }
+        });
+        second.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (RetrieveCache.getCoalesced() - coalesced < 1 && System.nanoTime() - deadline < 0) {
+            Thread.yield();
+        }
+        // The first caller stops waiting (ex: deadline of its request), the retrieve goes on for the second one.
+        first.interrupt();
+        first.join(5000);
+        assertEquals(Boolean.FALSE, firstResult.get());
+        release.countDown();
+        second.join(5000);
+
+        assertEquals(Boolean.TRUE, secondResult.get());
+        assertEquals(1, connectorCalls.get());
+    }
+
+    @Test
+    public void invalidateDuringRetrieveTest() throws Exception {
+        RetrieveCache.configure(10, 60000, new HashMap<String, Long>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger connectorCalls = new AtomicInteger();
+        final ResourceImpl resource = new ResourceImpl() {
+            @Override
+            public void occiRetrieve() {
+                if (connectorCalls.incrementAndGet() == 1) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        resource.setId("invalidated");
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RetrieveCache.retrieve(resource, false);
+            }
+        });
+        thread.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // Local update while the connector reads the entity.
+        RetrieveCache.invalidate(resource.getId());
+        release.countDown();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+
+        // The retrieve started before the update has not written its entry after the invalidation.
+        assertEquals(0, RetrieveCache.size());
+        assertTrue(RetrieveCache.retrieve(resource, false));
+        assertEquals(2, connectorCalls.get());
+        assertFalse(RetrieveCache.retrieve(resource, false));
+    }
+
+    @Test
+    public void retrieveAfterInvalidateTest() throws Exception {
+        RetrieveCache.configure(10, 60000, new HashMap<String, Long>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger connectorCalls = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ResourceImpl resource = new ResourceImpl() {
+            @Override
+            public void occiRetrieve() {
+                int count = running.incrementAndGet();
+                if (count > maxRunning.get()) {
+                    maxRunning.set(count);
+                }
+                if (connectorCalls.incrementAndGet() == 1) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                running.decrementAndGet();
+            }
+        };
+        resource.setId("chained");
+
+        List<Thread> threads = new ArrayList<>();
+        Thread before = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RetrieveCache.retrieve(resource, false);
+            }
+        });
+        threads.add(before);
+        before.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        RetrieveCache.invalidate(resource.getId());
+        // Callers after the local update : one new retrieve, after the running one.
+        for (int i = 0; i < 3; i++) {
+            Thread after = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RetrieveCache.retrieve(resource, false);
+                }
+            });
+            threads.add(after);
+            after.start();
+        }
+        Thread.sleep(200);
+        assertEquals(1, connectorCalls.get());
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(2, connectorCalls.get());
+        assertEquals(1, maxRunning.get());
+        // The retrieve started after the update has written its entry.
+        assertFalse(RetrieveCache.retrieve(resource, false));
+    }
+
+    /**
+     * Resource counting its connector retrieves.
+     */
+    private static class CountingResource extends ResourceImpl {
+        private int count = 0;
+
+        CountingResource(final String id) {
+            setId(id);
+        }
+
+        @Override
+        public void occiRetrieve() {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.model;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.occiware.clouddesigner.occi.AttributeState;
+import org.occiware.clouddesigner.occi.Entity;
+import org.occiware.clouddesigner.occi.OCCIFactory;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Retrieves of the entities of a collection with a deadline.
+ */
+public class RetrieveExecutorTest {
+
+    @BeforeClass
+    public static void initModel() {
+        // Entity creation needs the OCCI model loaded by MART.
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+    }
+
+    @Test
+    public void staleEntitiesTest() {
+        final AtomicInteger retrieved = new AtomicInteger();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entities.add(new TestResource("res-" + i, 20, false, retrieved));
+        }
+        entities.add(new TestResource("slow", 5000, false, retrieved));
+        entities.add(new TestResource("failed", 0, true, retrieved));
+
+        long start = System.currentTimeMillis();
+        Set<String> staleIds = RetrieveExecutor.retrieveAll(entities, 500, false);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(Arrays.asList("slow", "failed"), new ArrayList<>(staleIds));
+        assertEquals(10, retrieved.get());
+        // Not the sum of the retrieve latencies and not waiting for the slow one.
+        assertTrue("elapsed : " + elapsed, elapsed < 2000);
+    }
+
+    @Test
+    public void staleEntityWrittenByConnectorTest() throws InterruptedException {
+        final AtomicInteger retrieved = new AtomicInteger();
+        List<Entity> entities = new ArrayList<>();
+        entities.add(new TestResource("fast", 0, false, retrieved));
+        WritingResource writing = new WritingResource("writing");
+        entities.add(writing);
+
+        Set<String> staleIds = RetrieveExecutor.retrieveAll(entities, 300, false);
+
+        assertEquals(Arrays.asList("writing"), new ArrayList<>(staleIds));
+        // The connector keeps writing the entity, its copy taken before the retrieve is rendered.
+        Entity rendered = entities.get(1);
+        assertNotSame(writing, rendered);
+        assertEquals("writing", rendered.getId());
+        assertEquals("before", getState(rendered));
+        assertEquals("during", getState(writing));
+        writing.release.countDown();
+    }
+
+    private static String getState(final Entity entity) {
+        for (AttributeState attribute : entity.getAttributes()) {
+            if (attribute.getName().equals("test.state")) {
+                return attribute.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resource whose connector writes an attribute then waits to be released.
+     */
+    private static class WritingResource extends ResourceImpl {
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        WritingResource(final String id) {
+            setId(id);
+            AttributeState attribute = OCCIFactory.eINSTANCE.createAttributeState();
+            attribute.setName("test.state");
+            attribute.setValue("before");
+            getAttributes().add(attribute);
+        }
+
+        @Override
+        public void occiRetrieve() {
+            for (AttributeState attribute : getAttributes()) {
+                if (attribute.getName().equals("test.state")) {
+                    attribute.setValue("during");
+                }
+            }
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Resource with a connector latency.
+     */
+    private static class TestResource extends ResourceImpl {
+        private final long latency;
+        private final boolean fail;
+        private final AtomicInteger retrieved;
+
+        TestResource(final String id, final long latency, final boolean fail, final AtomicInteger retrieved) {
+            this.latency = latency;
+            this.fail = fail;
+            this.retrieved = retrieved;
+            setId(id);
+        }
+
+        @Override
+        public void occiRetrieve() {
+            if (fail) {
+                throw new UnsupportedOperationException("no connector");
+            }
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            retrieved.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.tests;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.ConnectorExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of entity GETs on a connector with 100 ms of latency, with a
+ * Jetty pool of 16 threads and 200 concurrent clients, queries executed on
+ * the http threads then on the connector executor (server.request.async=true).
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.servlet.tests.AsyncQueryBenchmark -Dexec.classpathScope=test
+ */
+public class AsyncQueryBenchmark {
+
+    private static final int PORT = 9091;
+    private static final int HTTP_THREADS = 16;
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS = 2000;
+    private static final int ENTITIES = 500;
+    private static final long LATENCY_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        Configuration configuration = ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        for (int i = 0; i < ENTITIES; i++) {
+            ResourceImpl resource = new ResourceImpl() {
+                @Override
+                public void occiRetrieve() {
+                    // Latency of a remote connector.
+                    try {
+                        Thread.sleep(LATENCY_MILLIS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            resource.setId("latency-" + i);
+            resource.setKind(ConfigurationManager.findKindFromExtension(ConfigurationManager.DEFAULT_OWNER,
+                    "http://schemas.ogf.org/occi/infrastructure#compute"));
+            configuration.getResources().add(resource);
+            // Location on root path.
+            ConfigurationManager.getLocation(resource);
+        }
+
+        ResourceConfig config = new ResourceConfig();
+        config.packages("org.occiware.mart.server.servlet");
+        ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        servlet.setAsyncSupported(true);
+        QueuedThreadPool threadPool = new QueuedThreadPool(HTTP_THREADS, HTTP_THREADS);
+        Server server = new Server(threadPool);
+        ServerConnector connector = new ServerConnector(server, 1, 1);
+        connector.setPort(PORT);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler(server, "/*");
+        context.addServlet(servlet, "/*");
+        server.start();
+
+        HttpClient httpClient = new HttpClient();
+        httpClient.setMaxConnectionsPerDestination(CLIENTS);
+        httpClient.setMaxRequestsQueuedPerDestination(REQUESTS);
+        httpClient.start();
+
+        System.out.println("Http threads: " + HTTP_THREADS + ", clients: " + CLIENTS + ", connector latency: " + LATENCY_MILLIS + " ms");
+        try {
+            ConnectorExecutor.configure(false, ConnectorExecutor.DEFAULT_THREADS, ConnectorExecutor.DEFAULT_QUEUE_SIZE, 0);
+            run("warmup", httpClient, REQUESTS / 4);
+            run("synchronous", httpClient, REQUESTS);
+            ConnectorExecutor.configure(true, ConnectorExecutor.DEFAULT_THREADS, ConnectorExecutor.DEFAULT_QUEUE_SIZE, 0);
+            run("warmup", httpClient, REQUESTS / 4);
+            run("asynchronous", httpClient, REQUESTS);
+        } finally {
+            httpClient.stop();
+            server.stop();
+        }
+    }
+
+    private static void run(final String label, final HttpClient httpClient, final int requests) throws InterruptedException {
+        final Semaphore clients = new Semaphore(CLIENTS);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger errors = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            clients.acquire();
+            httpClient.newRequest("http://localhost:" + PORT + "/latency-" + (i % ENTITIES) + "/")
+                    .header("accept", "application/json")
+                    .timeout(60, TimeUnit.SECONDS)
+                    .send(new Response.CompleteListener() {
+                        @Override
+                        public void onComplete(Result result) {
+                            if (result.isFailed() || result.getResponse().getStatus() != 200) {
+                                errors.incrementAndGet();
+                            }
+                            clients.release();
+                            done.countDown();
+                        }
+                    });
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-14s requests: %d, errors: %d, %.1f s, %.0f requests/s", label, requests,
+                errors.get(), seconds, requests / seconds));
+    }
+}
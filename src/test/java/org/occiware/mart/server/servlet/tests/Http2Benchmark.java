@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.tests;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.occiware.clouddesigner.occi.Configuration;
+import org.occiware.clouddesigner.occi.impl.ResourceImpl;
+import org.occiware.mart.server.servlet.model.ConfigurationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of dashboard refreshes : each dashboard sends many small GETs in parallel,
+ * over HTTP/1.1 with 6 connections (as a browser) then over HTTP/2 (h2c) with one
+ * multiplexed connection, on a server accepting both on the same port.
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.servlet.tests.Http2Benchmark -Dexec.classpathScope=test
+ */
+public class Http2Benchmark {
+
+    private static final int PORT = 9093;
+    private static final int DASHBOARDS = 20;
+    private static final int PANELS = 50;
+    private static final int REFRESHES = 20;
+    private static final int HTTP1_CONNECTIONS = 6;
+    private static final int ENTITIES = 500;
+    private static final long LATENCY_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Configuration configuration = ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        ConfigurationManager.useAllExtensionForConfigurationInClasspath(ConfigurationManager.DEFAULT_OWNER);
+        for (int i = 0; i < ENTITIES; i++) {
+            ResourceImpl resource = new ResourceImpl() {
+                @Override
+                public void occiRetrieve() {
+                    // Latency of a remote connector.
+                    try {
+                        Thread.sleep(LATENCY_MILLIS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            resource.setId("panel-" + i);
+            resource.setKind(ConfigurationManager.findKindFromExtension(ConfigurationManager.DEFAULT_OWNER,
+                    "http://schemas.ogf.org/occi/infrastructure#compute"));
+            configuration.getResources().add(resource);
+            // Location on root path.
+            ConfigurationManager.getLocation(resource);
+        }
+
+        ResourceConfig config = new ResourceConfig();
+        config.packages("org.occiware.mart.server.servlet");
+        ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        servlet.setAsyncSupported(true);
+        Server server = new Server(new QueuedThreadPool(200, 8));
+        HttpConfiguration httpConfig = new HttpConfiguration();
+        // As MartServer with server.http2=true.
+        ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(httpConfig),
+                new HTTP2CServerConnectionFactory(httpConfig));
+        connector.setPort(PORT);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler(server, "/*");
+        context.addServlet(servlet, "/*");
+        server.start();
+
+        System.out.println("Dashboards: " + DASHBOARDS + ", parallel GETs by refresh: " + PANELS
+                + ", refreshes: " + REFRESHES + ", connector latency: " + LATENCY_MILLIS + " ms");
+        try {
+            run("warmup", false, REFRESHES / 4);
+            run("HTTP/1.1", false, REFRESHES);
+            run("warmup", true, REFRESHES / 4);
+            run("HTTP/2", true, REFRESHES);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static void run(final String label, final boolean http2, final int refreshes) throws Exception {
+        QueuedThreadPool clientThreads = new QueuedThreadPool(64, 8);
+        clientThreads.setName("client");
+        clientThreads.start();
+        List<HttpClient> httpClients = new ArrayList<>();
+        for (int i = 0; i < DASHBOARDS; i++) {
+            HttpClient httpClient;
+            if (http2) {
+                HTTP2Client http2Client = new HTTP2Client();
+                http2Client.setExecutor(clientThreads);
+                httpClient = new HttpClient(new HttpClientTransportOverHTTP2(http2Client), null);
+            } else {
+                httpClient = new HttpClient();
+                httpClient.setMaxConnectionsPerDestination(HTTP1_CONNECTIONS);
+            }
+            httpClient.setExecutor(clientThreads);
+            httpClient.start();
+            httpClients.add(httpClient);
+        }
+
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> refreshTimes = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> dashboards = new ArrayList<>();
+        long start = System.nanoTime();
+        for (final HttpClient httpClient : httpClients) {
+            Thread dashboard = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int refresh = 0; refresh < refreshes; refresh++) {
+                        long refreshStart = System.nanoTime();
+                        final CountDownLatch done = new CountDownLatch(PANELS);
+                        for (int panel = 0; panel < PANELS; panel++) {
+                            final long sent = System.nanoTime();
+                            httpClient.newRequest("http://localhost:" + PORT + "/panel-" + ((refresh * PANELS + panel) % ENTITIES) + "/")
+                                    .header("accept", "application/json")
+                                    .timeout(60, TimeUnit.SECONDS)
+                                    .send(new Response.CompleteListener() {
+                                        @Override
+                                        public void onComplete(Result result) {
+                                            if (result.isFailed() || result.getResponse().getStatus() != 200) {
+                                                errors.incrementAndGet();
+                                            }
+                                            latencies.add(System.nanoTime() - sent);
+                                            done.countDown();
+                                        }
+                                    });
+                        }
+                        try {
+                            done.await();
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        refreshTimes.add(System.nanoTime() - refreshStart);
+                    }
+                }
+            });
+            dashboards.add(dashboard);
+            dashboard.start();
+        }
+        for (Thread dashboard : dashboards) {
+            dashboard.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (HttpClient httpClient : httpClients) {
+            httpClient.stop();
+        }
+        clientThreads.stop();
+
+        Collections.sort(latencies);
+        Collections.sort(refreshTimes);
+        System.out.println(String.format("%-9s requests: %d, errors: %d, %.1f s, %.0f requests/s, latency p50: %d ms, p90: %d ms, p99: %d ms, max: %d ms, refresh p50: %d ms, p99: %d ms",
+                label, latencies.size(), errors.get(), seconds, latencies.size() / seconds,
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100),
+                percentile(refreshTimes, 50), percentile(refreshTimes, 99)));
+    }
+
+    /**
+     * @param sortedNanos
+     * @param percent
+     * @return the percentile in milliseconds.
+     */
+    private static long percentile(final List<Long> sortedNanos, final int percent) {
+        if (sortedNanos.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sortedNanos.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos.get(Math.max(0, index)));
+    }
+}
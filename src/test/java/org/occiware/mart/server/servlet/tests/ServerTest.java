@@ -20,6 +20,8 @@ package org.occiware.mart.server.servlet.tests;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
@@ -32,12 +34,18 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.occiware.mart.server.servlet.impl.parser.json.JsonOcciParser;
 import org.occiware.mart.server.servlet.model.ConfigurationManager;
+import org.occiware.mart.server.servlet.model.RetrieveCache;
 import org.occiware.mart.server.servlet.utils.Constants;
 
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Response;
 import java.io.File;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.*;
 
@@ -58,6 +66,7 @@ public class ServerTest {
         ResourceConfig config = new ResourceConfig();
         config.packages("org.occiware.mart.server.servlet");
         ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        servlet.setAsyncSupported(true);
 
         server = new Server(9090);
         ServletContextHandler context = new ServletContextHandler(server, "/*");
@@ -107,6 +116,8 @@ public class ServerTest {
             testCreateResourceInputJson();
             testUpdateResources();
             testGetResourceLink();
+            testCountCollection();
+            testEntityPreconditions();
             testDeleteResources();
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -346,6 +357,168 @@ public class ServerTest {
     }
 
 
+    private void testCountCollection() throws Exception {
+        System.out.println("HEAD Request on Compute kind... http://localhost:9090/compute/");
+        ContentResponse response = httpClient.newRequest("http://localhost:9090/compute/")
+                .method(HttpMethod.HEAD)
+                .accept("application/json")
+                .send();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(0, response.getContent().length);
+        int total = Integer.parseInt(response.getHeaders().get(Constants.HEADER_TOTAL_COUNT));
+        assertTrue(total > 1);
+        // No pagination : all the entities are on the page.
+        assertEquals(total, Integer.parseInt(response.getHeaders().get(Constants.HEADER_PAGE_COUNT)));
+
+        System.out.println("GET Request with count=true... http://localhost:9090/compute/?count=true&page=2&number=1");
+        response = httpClient.newRequest("http://localhost:9090/compute/?count=true&page=2&number=1")
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .send();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(0, response.getContent().length);
+        assertEquals(total, Integer.parseInt(response.getHeaders().get(Constants.HEADER_TOTAL_COUNT)));
+        assertEquals(1, Integer.parseInt(response.getHeaders().get(Constants.HEADER_PAGE_COUNT)));
+        assertEquals("2", response.getHeaders().get(Constants.HEADER_PAGE));
+        assertEquals("1", response.getHeaders().get(Constants.HEADER_NUMBER));
+
+        // Offset after the last entity : the page is empty, the total is unchanged.
+        response = httpClient.newRequest("http://localhost:9090/compute/?count=true&page=" + (total + 5) + "&number=2")
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .send();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(total, Integer.parseInt(response.getHeaders().get(Constants.HEADER_TOTAL_COUNT)));
+        assertEquals(0, Integer.parseInt(response.getHeaders().get(Constants.HEADER_PAGE_COUNT)));
+
+        // The count of a filtered collection.
+        response = httpClient.newRequest("http://localhost:9090/compute/?count=true&attribute=occi.compute.state&value=nomatch")
+                .method(HttpMethod.HEAD)
+                .accept("application/json")
+                .send();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(0, Integer.parseInt(response.getHeaders().get(Constants.HEADER_TOTAL_COUNT)));
+    }
+
+    private void testEntityPreconditions() throws Exception {
+        String location = "http://localhost:9090/f88486b7-0632-482d-a184-a9195733ddd0";
+        System.out.println("GET Request with If-None-Match on " + location);
+        ContentResponse response = httpClient.newRequest(location)
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .send();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        String eTag = response.getHeaders().get(HttpHeader.ETAG);
+        assertNotNull(eTag);
+
+        // Same version : the entity is not retrieved from its connector.
+        long misses = RetrieveCache.getMisses();
+        long hits = RetrieveCache.getHits();
+        response = httpClient.newRequest(location)
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .header(Constants.HEADER_IF_NONE_MATCH, eTag)
+                .send();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertEquals(0, response.getContent().length);
+        assertEquals(misses, RetrieveCache.getMisses());
+        assertEquals(hits, RetrieveCache.getHits());
+
+        System.out.println("POST Request with If-Match on " + location);
+        final String update = new String(Files.readAllBytes(getResourceInputFile("/testjson/integration/update/resource1.json").toPath()), "UTF-8");
+        response = postWithIfMatch(update, eTag);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        final String newETag = response.getHeaders().get(HttpHeader.ETAG);
+        assertNotNull(newETag);
+        assertNotEquals(eTag, newETag);
+
+        // Stale version.
+        response = postWithIfMatch(update, eTag);
+        assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+
+        // Two concurrent updates of the same version : only one is done.
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Integer> statuses = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        statuses.add(postWithIfMatch(update, newETag).getStatus());
+                    } catch (Exception ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(30000);
+        }
+        assertEquals(2, statuses.size());
+        assertTrue(statuses.contains(Response.Status.OK.getStatusCode()));
+        assertTrue(statuses.contains(Response.Status.PRECONDITION_FAILED.getStatusCode()));
+
+        // A failed update keeps the version of the entity.
+        response = httpClient.newRequest(location)
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .send();
+        String currentETag = response.getHeaders().get(HttpHeader.ETAG);
+        String unknownMixin = update.replace("\"attributes\"", "\"mixins\": [\"http://occiware.org/occi/tags#unknown_mixin\"],\n      \"attributes\"");
+        response = postWithIfMatch(unknownMixin, currentETag);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response = httpClient.newRequest(location + "/?action=up")
+                .accept("application/json")
+                .method(HttpMethod.POST)
+                .content(new StringContentProvider("{\"action\": \"http://schemas.ogf.org/occi/infrastructure/network/action#up\"}"), "application/json")
+                .header(Constants.HEADER_IF_MATCH, currentETag)
+                .agent("martclient")
+                .send();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response = httpClient.newRequest(location)
+                .method(HttpMethod.GET)
+                .accept("application/json")
+                .header(Constants.HEADER_IF_NONE_MATCH, currentETag)
+                .send();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+
+        // If-None-Match: * on PUT creates the entity only if it doesn't exist.
+        System.out.println("PUT Request with If-None-Match: *");
+        response = httpClient.newRequest("localhost", 9090)
+                .accept("application/json")
+                .method(HttpMethod.PUT)
+                .content(new StringContentProvider(update), "application/json")
+                .header(Constants.HEADER_IF_NONE_MATCH, "*")
+                .agent("martclient")
+                .send();
+        assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+        String create = update.replace("f88486b7-0632-482d-a184-a9195733ddd0", "c3d1e7a2-51f4-4b8e-9a6d-2f0b8e4c7d15");
+        response = httpClient.newRequest("localhost", 9090)
+                .accept("application/json")
+                .method(HttpMethod.PUT)
+                .content(new StringContentProvider(create), "application/json")
+                .header(Constants.HEADER_IF_NONE_MATCH, "*")
+                .agent("martclient")
+                .send();
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        assertNotNull(response.getHeaders().get(HttpHeader.ETAG));
+    }
+
+    private ContentResponse postWithIfMatch(final String content, final String eTag) throws Exception {
+        return httpClient.newRequest("localhost", 9090)
+                .accept("application/json")
+                .method(HttpMethod.POST)
+                .content(new StringContentProvider(content), "application/json")
+                .header(Constants.HEADER_IF_MATCH, eTag)
+                .agent("martclient")
+                .send();
+    }
+
     private void testUpdateResources() throws Exception {
 
         System.out.println("POST Request on resource location : /f88486b7-0632-482d-a184-a9195733ddd0");
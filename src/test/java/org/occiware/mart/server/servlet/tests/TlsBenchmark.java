@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.servlet.tests;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.servlet.ServletContainer;
+import org.occiware.mart.server.servlet.model.ConfigurationManager;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark of the https connector, with a keystore generated by keytool :
+ * requests on kept alive connections, then one connection by request
+ * (handshake heavy) with TLS session resumption, then with full handshakes
+ * (session caching disabled on the client side).
+ * This is not a unit test, launch it with the test classpath :
+ * mvn test-compile exec:java -Dexec.mainClass=org.occiware.mart.server.servlet.tests.TlsBenchmark -Dexec.classpathScope=test
+ */
+public class TlsBenchmark {
+
+    private static final int PORT = 9094;
+    private static final int CLIENTS = 16;
+    private static final int REQUESTS = 2000;
+    private static final String PASSWORD = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        ConfigurationManager.getConfigurationForOwner(ConfigurationManager.DEFAULT_OWNER);
+        File keystore = generateKeystore();
+
+        ResourceConfig config = new ResourceConfig();
+        config.packages("org.occiware.mart.server.servlet");
+        ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        servlet.setAsyncSupported(true);
+        Server server = new Server();
+        // As MartServer with server.protocol=https.
+        SslContextFactory sslContextFactory = new SslContextFactory();
+        sslContextFactory.setKeyStorePath(keystore.getAbsolutePath());
+        sslContextFactory.setKeyStorePassword(PASSWORD);
+        sslContextFactory.setKeyStoreType("PKCS12");
+        sslContextFactory.setSessionCachingEnabled(true);
+        // Default of server.ssl.protocols, another list can be given in argument, ex: TLSv1.2,TLSv1.3
+        sslContextFactory.setIncludeProtocols(args.length > 0 ? args[0].split(",") : new String[]{"TLSv1.2"});
+        HttpConfiguration httpsConfig = new HttpConfiguration();
+        httpsConfig.addCustomizer(new SecureRequestCustomizer());
+        ServerConnector connector = new ServerConnector(server,
+                new SslConnectionFactory(sslContextFactory, "http/1.1"), new HttpConnectionFactory(httpsConfig));
+        connector.setPort(PORT);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler(server, "/*");
+        context.addServlet(servlet, "/*");
+        server.start();
+
+        System.out.println("Java " + System.getProperty("java.version") + ", clients: " + CLIENTS + ", requests: " + REQUESTS
+                + ", protocols: " + Arrays.toString(sslContextFactory.getSelectedProtocols()));
+        try {
+            run("warmup", true, true, REQUESTS / 4);
+            run("keep-alive", true, true, REQUESTS);
+            run("warmup", true, false, REQUESTS / 4);
+            run("resumed handshakes", true, false, REQUESTS);
+            run("warmup", false, false, REQUESTS / 4);
+            run("full handshakes", false, false, REQUESTS);
+        } finally {
+            server.stop();
+            Files.deleteIfExists(keystore.toPath());
+        }
+    }
+
+    /**
+     * @param label
+     * @param sessionCaching false to disable the TLS session resumption on the client side.
+     * @param keepAlive      false to open a connection by request.
+     * @param requests
+     */
+    private static void run(final String label, final boolean sessionCaching, final boolean keepAlive, final int requests) throws Exception {
+        SslContextFactory clientSslContextFactory = new SslContextFactory(true);
+        clientSslContextFactory.setSessionCachingEnabled(sessionCaching);
+        HttpClient httpClient = new HttpClient(clientSslContextFactory);
+        httpClient.setMaxConnectionsPerDestination(CLIENTS);
+        httpClient.setMaxRequestsQueuedPerDestination(requests);
+        httpClient.start();
+
+        final Semaphore clients = new Semaphore(CLIENTS);
+        final CountDownLatch done = new CountDownLatch(requests);
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            clients.acquire();
+            final long sent = System.nanoTime();
+            Request request = httpClient.newRequest("https://localhost:" + PORT + "/-/metrics/")
+                    .timeout(60, TimeUnit.SECONDS);
+            if (!keepAlive) {
+                request.header(HttpHeader.CONNECTION, "close");
+            }
+            request.send(new Response.CompleteListener() {
+                @Override
+                public void onComplete(Result result) {
+                    if (result.isFailed() || result.getResponse().getStatus() != 200) {
+                        errors.incrementAndGet();
+                    }
+                    latencies.add(System.nanoTime() - sent);
+                    clients.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        httpClient.stop();
+
+        Collections.sort(latencies);
+        System.out.println(String.format("%-18s errors: %d, %.1f s, %.0f requests/s, latency p50: %.1f ms, p99: %.1f ms",
+                label, errors.get(), seconds, requests / seconds, percentile(latencies, 50), percentile(latencies, 99)));
+    }
+
+    private static File generateKeystore() throws Exception {
+        File keystore = File.createTempFile("mart-benchmark", ".p12");
+        Files.delete(keystore.toPath());
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "mart", "-keyalg", "RSA", "-keysize", "2048",
+                "-validity", "2", "-dname", "CN=localhost", "-storetype", "PKCS12", "-keystore", keystore.getAbsolutePath(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool has failed");
+        }
+        return keystore;
+    }
+
+    /**
+     * @param sortedNanos
+     * @param percent
+     * @return the percentile in milliseconds.
+     */
+    private static double percentile(final List<Long> sortedNanos, final int percent) {
+        if (sortedNanos.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100.0 * sortedNanos.size()) - 1;
+        return sortedNanos.get(Math.max(0, index)) / 1e6;
+    }
+}
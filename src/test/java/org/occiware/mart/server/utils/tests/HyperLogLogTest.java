@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015-2017 Inria
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.occiware.mart.server.utils.tests;
+
+import org.junit.Test;
+import org.occiware.mart.server.servlet.utils.HyperLogLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Estimates of the number of distinct values.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void estimateTest() {
+        HyperLogLog hll = new HyperLogLog();
+        assertEquals(0, hll.estimate());
+
+        for (int i = 0; i < 100; i++) {
+            hll.add("value" + (i % 10));
+        }
+        assertEquals(10, hll.estimate());
+
+        for (int i = 0; i < 100000; i++) {
+            hll.add("host-" + i);
+        }
+        long estimate = hll.estimate();
+        // Standard error is around 1.6% with 4096 registers.
+        assertTrue("estimate : " + estimate, Math.abs(estimate - 100010) < 100010 * 0.05);
+    }
+}
@@ -19,13 +19,20 @@
 package org.occiware.mart.server.utils.tests;
 
 import org.junit.Test;
+import org.occiware.mart.server.servlet.utils.CursorToken;
 import org.occiware.mart.server.servlet.utils.Utils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Created by Christophe Gourdin on 19/11/2016.
@@ -65,5 +72,59 @@ public class UtilsTest {
         assertNull(uuidResult);
     }
 
+    @Test
+    public void cursorTokenTest() {
+        assertEquals(0, CursorToken.decode(""));
+        assertEquals(0, CursorToken.decode(null));
+        assertEquals(42, CursorToken.decode(CursorToken.encode(42)));
+        assertEquals(Long.MAX_VALUE, CursorToken.decode(CursorToken.encode(Long.MAX_VALUE)));
+        for (String invalid : new String[]{"42", "not a token", CursorToken.encode(-3)}) {
+            try {
+                CursorToken.decode(invalid);
+                fail("Token should be invalid : " + invalid);
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void shutdownExecutorTest() throws InterruptedException {
+        assertEquals(0, Utils.shutdownExecutor(null, 100));
+
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                sleep(50);
+            }
+        });
+        // Completed before the timeout.
+        assertEquals(0, Utils.shutdownExecutor(executor, 5000));
+
+        executor = Executors.newFixedThreadPool(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    sleep(60000);
+                }
+            });
+        }
+        started.await();
+        // One task running and two never started at the timeout.
+        assertEquals(3, Utils.shutdownExecutor(executor, 100));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
 }